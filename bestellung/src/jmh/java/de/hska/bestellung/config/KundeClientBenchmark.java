@@ -0,0 +1,154 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.bestellung.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.hska.bestellung.entity.Kunde;
+import feign.Response;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.HttpMessageConverters;
+import org.springframework.cloud.netflix.feign.support.SpringDecoder;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json
+       .MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile
+       .MappingJackson2SmileHttpMessageConverter;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.logging.log4j.LogManager.getLogger;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+
+/**
+ * Decodierung der Antwort von kunde durch SpringDecoder wie beim Aufruf von
+ * KundeClient: JSON, Smile und CBOR im Vergleich. Die Gr&ouml;&szlig;e der
+ * Antwort in Bytes wird beim Setup protokolliert, die allokierten Bytes liefert
+ * der Profiler "gc". Aufruf: <code>gradlew jmh</code>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KundeClientBenchmark {
+    private static final Logger LOG = getLogger(KundeClientBenchmark.class);
+
+    private static final String BASE_URI =
+        "https://localhost:8444/kunde/000000000000000000000001";
+
+    @Param({"application/json", "application/x-jackson-smile",
+            "application/cbor"})
+    private String mediaType;
+
+    private SpringDecoder decoder;
+    private Map<String, Collection<String>> headers;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        final List<HttpMessageConverter<?>> converters = Arrays.asList(
+            new MappingJackson2HttpMessageConverter(),
+            new MappingJackson2SmileHttpMessageConverter(),
+            new CborHttpMessageConverter());
+        final HttpMessageConverters messageConverters =
+            new HttpMessageConverters(false, converters);
+        decoder = new SpringDecoder(() -> messageConverters);
+
+        headers = Collections.singletonMap(
+            CONTENT_TYPE, Collections.singletonList(mediaType));
+        body = mapper().writeValueAsBytes(kunde());
+        LOG.info("{}: {} Bytes", mediaType, body.length);
+    }
+
+    private ObjectMapper mapper() {
+        switch (mediaType) {
+            case "application/x-jackson-smile":
+                return Jackson2ObjectMapperBuilder.smile().build();
+            case "application/cbor":
+                return Jackson2ObjectMapperBuilder.cbor().build();
+            default:
+                return Jackson2ObjectMapperBuilder.json().build();
+        }
+    }
+
+    // Ein Kunde, wie er von GET /kunde/{id} geliefert wird
+    private static Map<String, Object> kunde() {
+        final Map<String, Object> kunde = new LinkedHashMap<>();
+        kunde.put("nachname", "Benchmark");
+        kunde.put("email", "benchmark@hska.de");
+        kunde.put("newsletter", true);
+        kunde.put("geburtsdatum", Arrays.asList(1990, 1, 31));
+        final Map<String, Object> umsatz = new LinkedHashMap<>();
+        umsatz.put("betrag", 123.45);
+        umsatz.put("waehrung", "EUR");
+        kunde.put("umsatz", umsatz);
+        kunde.put("homepage", "https://www.hska.de");
+        kunde.put("geschlecht", "W");
+        kunde.put("familienstand", "L");
+        kunde.put("interessen", Arrays.asList("L", "R"));
+        final Map<String, Object> adresse = new LinkedHashMap<>();
+        adresse.put("plz", "76133");
+        adresse.put("ort", "Karlsruhe");
+        kunde.put("adresse", adresse);
+        kunde.put("username", "benchmark");
+
+        final Map<String, Object> links = new LinkedHashMap<>();
+        links.put("self", Collections.singletonMap("href", BASE_URI));
+        links.put("list", Collections.singletonMap(
+            "href", "https://localhost:8444/kunde"));
+        links.put("add", Collections.singletonMap(
+            "href", "https://localhost:8444/kunde"));
+        links.put("update", Collections.singletonMap("href", BASE_URI));
+        links.put("remove", Collections.singletonMap("href", BASE_URI));
+        kunde.put("_links", links);
+        return kunde;
+    }
+
+    /**
+     * Decodierung der Antwort in ein Objekt von Kunde
+     * @return Der decodierte Kunde
+     * @throws IOException nicht bei einer Antwort im Hauptspeicher
+     */
+    @Benchmark
+    public Object decode() throws IOException {
+        final Response response =
+            Response.create(200, "OK", headers, body);
+        return decoder.decode(response, Kunde.class);
+    }
+}
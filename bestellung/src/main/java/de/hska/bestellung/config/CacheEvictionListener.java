@@ -0,0 +1,63 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.bestellung.config;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.val;
+
+/**
+ * Listener f&uuml;r die Caches, der die verdr&auml;ngten und die
+ * abgelaufenen Eintr&auml;ge z&auml;hlt. Der Listener ist lokal registriert,
+ * d.h. gez&auml;hlt werden die Eintr&auml;ge, die dieser Instanz des
+ * Microservice geh&ouml;ren.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class CacheEvictionListener
+        implements EntryEvictedListener<Object, Object>,
+                   EntryExpiredListener<Object, Object> {
+    private final Map<String, LongAdder> evictions = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> expirations =
+        new ConcurrentHashMap<>();
+
+    @Override
+    public void entryEvicted(EntryEvent<Object, Object> event) {
+        evictions.computeIfAbsent(event.getName(), name -> new LongAdder())
+                 .increment();
+    }
+
+    @Override
+    public void entryExpired(EntryEvent<Object, Object> event) {
+        expirations.computeIfAbsent(event.getName(), name -> new LongAdder())
+                   .increment();
+    }
+
+    long getEvictions(String cacheName) {
+        final val count = evictions.get(cacheName);
+        return count == null ? 0 : count.sum();
+    }
+
+    long getExpirations(String cacheName) {
+        final val count = expirations.get(cacheName);
+        return count == null ? 0 : count.sum();
+    }
+}
@@ -37,6 +37,7 @@ import springfox.documentation.swagger2.annotations.EnableSwagger2;
 @EnableSwagger2
 class CommonConfig implements EmbeddedServletContainerConfig,
                               FeignConfig,
+                              HazelcastConfig,
                               KundeClientBeispiel,
                               LogAlleBestellungen,
                               LogConfig,
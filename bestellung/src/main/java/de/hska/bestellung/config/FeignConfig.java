@@ -21,11 +21,17 @@ import feign.Request.Options;
 import feign.RequestInterceptor;
 import feign.auth.BasicAuthRequestInterceptor;
 import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Description;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.smile
+       .MappingJackson2SmileHttpMessageConverter;
 
 import static feign.Logger.Level.FULL;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 /**
  * Konfiguration des Feign-Clients.
@@ -56,4 +62,29 @@ interface FeignConfig {
 
         return new Options(connectTimeoutMillis, readTimeoutMillis);
     }
+
+    @Bean
+    @Description("Bevorzugtes Format fuer die Antworten von kunde")
+    default RequestInterceptor acceptRequestInterceptor(
+            @Value("${kunde.client.mediaType:application/x-jackson-smile}")
+            String mediaType) {
+        // JSON als Fallback, falls eine Instanz von kunde das Binaerformat
+        // noch nicht unterstuetzt
+        final val accept = mediaType + ", " + APPLICATION_JSON_VALUE + ";q=0.5";
+        return template -> template.header(ACCEPT, accept);
+    }
+
+    // Spring Boot uebernimmt die Converter in HttpMessageConverters, die auch
+    // SpringDecoder von Feign gemaess "Content-Type" der Antwort verwendet
+    @Bean
+    @Description("Decodierung von Smile")
+    default HttpMessageConverter<Object> smileHttpMessageConverter() {
+        return new MappingJackson2SmileHttpMessageConverter();
+    }
+
+    @Bean
+    @Description("Decodierung von CBOR")
+    default HttpMessageConverter<Object> cborHttpMessageConverter() {
+        return new CborHttpMessageConverter();
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.bestellung.config;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EntryListenerConfig;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Description;
+
+import static com.hazelcast.config.EvictionConfig.MaxSizePolicy.ENTRY_COUNT;
+import static com.hazelcast.config.EvictionPolicy.LRU;
+import static com.hazelcast.config.InMemoryFormat.BINARY;
+import static com.hazelcast.config.MaxSizeConfig.MaxSizePolicy.PER_NODE;
+import static java.util.Arrays.asList;
+
+/**
+ * Spring-Konfiguration f&uuml;r einen verteilten Cache mit Hazelcast. Alle
+ * Instanzen des Microservice bilden einen Cluster, dessen Mitglieder per TCP
+ * gefunden werden, so dass die Instanzen einen gemeinsamen, koh&auml;renten
+ * Cache haben. Spring Boot erstellt dazu die HazelcastInstance und den
+ * HazelcastCacheManager f&uuml;r die Annotationen wie z.B. &#64;Cacheable.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+interface HazelcastConfig {
+    /**
+     * Name des Cache f&uuml;r Bestellungen mit der ID als Schl&uuml;ssel.
+     */
+    String BESTELLUNG_ID = "bestellung_id";
+
+    /**
+     * Spring-Bean f&uuml;r die Konfiguration von Hazelcast
+     * @param appName Name des Microservice als Name des Clusters
+     * @param members Kommaseparierte Liste mit den Rechnern des Clusters
+     * @param port Erster Port, der bei Bedarf hochgez&auml;hlt wird
+     * @param maxSize Maximale Anzahl an Eintr&auml;gen pro Instanz
+     * @param ttl Lebensdauer eines Eintrags in Sekunden
+     * @param listener Listener, um verdr&auml;ngte Eintr&auml;ge zu
+     *                 z&auml;hlen
+     * @return Die Konfiguration f&uuml;r Hazelcast
+     */
+    @Bean
+    @Description("Konfiguration fuer Hazelcast")
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    default Config hazelcastConfig(
+            @Value("${spring.application.name}") String appName,
+            @Value("${cache.members:127.0.0.1}") String members,
+            @Value("${cache.port:5801}") int port,
+            @Value("${cache.maxSize:10000}") int maxSize,
+            @Value("${cache.ttl:600}") int ttl,
+            CacheEvictionListener listener) {
+        final val config = new Config();
+        config.setProperty("hazelcast.logging.type", "log4j2");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.getGroupConfig().setName(appName);
+        // Mit DevTools werden die Entity-Klassen durch den Restart-ClassLoader
+        // geladen und muessen auch durch ihn deserialisiert werden
+        config.setClassLoader(HazelcastConfig.class.getClassLoader());
+
+        // Keine Multicast-Pakete, sondern eine feste Liste mit Rechnern
+        final val network = config.getNetworkConfig();
+        network.setPort(port).setPortAutoIncrement(true);
+        final val join = network.getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig()
+            .setEnabled(true)
+            .setMembers(asList(members.split(",")));
+
+        config.addMapConfig(mapConfig(BESTELLUNG_ID, maxSize, ttl,
+                                      listener));
+        return config;
+    }
+
+    /**
+     * Konfiguration f&uuml;r einen Cache: LRU bei mehr als maxSize
+     * Eintr&auml;gen pro Instanz, eine Lebensdauer f&uuml;r die Eintr&auml;ge
+     * und ein Near Cache, damit wiederholte Zugriffe keinen Netzwerkzugriff
+     * erfordern.
+     * @param name Name des Cache
+     * @param maxSize Maximale Anzahl an Eintr&auml;gen pro Instanz
+     * @param ttl Lebensdauer eines Eintrags in Sekunden
+     * @param listener Listener, um verdr&auml;ngte Eintr&auml;ge zu
+     *                 z&auml;hlen
+     * @return Die Konfiguration f&uuml;r den Cache
+     */
+    // FIXME Java 9: private statt default
+    default MapConfig mapConfig(String name, int maxSize, int ttl,
+                                CacheEvictionListener listener) {
+        // BINARY: jeder Aufruf erhaelt eine eigene Kopie, die er aendern darf
+        final val nearCache = new NearCacheConfig(name)
+            .setInMemoryFormat(BINARY)
+            .setInvalidateOnChange(true)
+            .setTimeToLiveSeconds(ttl)
+            .setEvictionConfig(new EvictionConfig(maxSize, ENTRY_COUNT, LRU));
+        return new MapConfig(name)
+            .setEvictionPolicy(LRU)
+            .setMaxSizeConfig(new MaxSizeConfig(maxSize, PER_NODE))
+            .setTimeToLiveSeconds(ttl)
+            .setStatisticsEnabled(true)
+            .setNearCacheConfig(nearCache)
+            .addEntryListenerConfig(new EntryListenerConfig(listener, true,
+                                                            false));
+    }
+
+    /**
+     * Spring-Bean, um verdr&auml;ngte und abgelaufene Eintr&auml;ge zu
+     * z&auml;hlen
+     * @return Der Listener f&uuml;r die Caches
+     */
+    @Bean
+    default CacheEvictionListener cacheEvictionListener() {
+        return new CacheEvictionListener();
+    }
+
+    /**
+     * Spring-Bean f&uuml;r den Endpoint <code>/admin/caches</code> mit den
+     * Statistiken der Caches
+     * @param hazelcastInstance Die Instanz von Hazelcast
+     * @param listener Listener mit den verdr&auml;ngten Eintr&auml;gen
+     * @return Der Endpoint
+     */
+    @Bean
+    default CacheStatisticsEndpoint cacheStatisticsEndpoint(
+            HazelcastInstance hazelcastInstance,
+            CacheEvictionListener listener) {
+        return new CacheStatisticsEndpoint(hazelcastInstance, listener);
+    }
+}
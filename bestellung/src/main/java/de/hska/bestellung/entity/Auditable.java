@@ -16,6 +16,7 @@
  */
 package de.hska.bestellung.entity;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import lombok.Getter;
 import lombok.ToString;
@@ -30,7 +31,9 @@ import org.springframework.data.annotation.Version;
 @Getter
 @ToString
 @SuppressWarnings({"unused", "WeakerAccess"})
-public class Auditable {
+public class Auditable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     @Version
     private Integer version;
     
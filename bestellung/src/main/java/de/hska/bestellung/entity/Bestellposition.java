@@ -16,6 +16,7 @@
  */
 package de.hska.bestellung.entity;
 
+import java.io.Serializable;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -35,7 +36,9 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class Bestellposition {
+public class Bestellposition implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     @NotNull(message = "{bestellposition.artikelId.notNull}")
     private String artikelId;
 
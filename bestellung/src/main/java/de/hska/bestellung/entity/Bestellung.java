@@ -54,6 +54,8 @@ import static lombok.AccessLevel.NONE;
 @Builder
 @SuppressWarnings("DefaultAnnotationParam")
 public class Bestellung extends Auditable implements Identifiable<ObjectId> {
+    private static final long serialVersionUID = 1L;
+
     @Id
     @Setter(NONE)
     private ObjectId id;
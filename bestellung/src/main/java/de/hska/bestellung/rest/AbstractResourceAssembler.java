@@ -18,15 +18,18 @@ package de.hska.bestellung.rest;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import lombok.val;
 import org.bson.types.ObjectId;
 import org.springframework.hateoas.Identifiable;
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.ResourceSupport;
 import org.springframework.hateoas.mvc.ResourceAssemblerSupport;
 
 import static java.util.stream.Collectors.toList;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 
 /**
  * Basisklasse f&uum;r Atom-Links mit Spring HATEOAS
@@ -37,6 +40,9 @@ import static java.util.stream.Collectors.toList;
  */
 abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
                extends ResourceAssemblerSupport<E, R> {
+    // in ResourceAssemblerSupport private
+    private final Class<?> controllerClass;
+
     /**
      * Basis-Konstruktor f&uuml;r spezifische "ResourceAssembler"
      * gem&auml;&szig; Spring HATEOAS
@@ -45,6 +51,7 @@ abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
      */
     AbstractResourceAssembler(Class<?> controllerClass, Class<R> resourceType) {
         super(controllerClass, resourceType);
+        this.controllerClass = controllerClass;
     }
     
     /**
@@ -95,10 +102,46 @@ abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
      */
     List<R> toResources(Stream<E> stream) {
         // collect() ist eine finale Operation auf einem Stream
-        final val list = stream.map(this::toResource).collect(toList());
+        // close() schliesst ggf. den zugrundeliegenden Cursor von MongoDB
+        final List<R> list;
+        try (Stream<E> s = stream) {
+            list = s.map(this::toResource).collect(toList());
+        }
         if (list.isEmpty()) {
             throw new NotFoundException();
         }
         return list;
     }
+
+    /**
+     * Funktion zur Konvertierung von Objekten in Resources, die auch
+     * au&szlig;erhalb des Request-Threads benutzt werden kann, z.B. beim
+     * Streaming mit StreamingResponseBody. Der Basis-URI f&uuml;r die
+     * Self-Links wird dazu einmalig im aufrufenden Request-Thread ermittelt.
+     * @return Funktion zur Konvertierung in eine HATEOAS-Resource
+     */
+    Function<E, R> resourceMapper() {
+        final val baseUri = linkTo(controllerClass).toUri().toString();
+        final val prefix = baseUri.endsWith("/") ? baseUri : baseUri + '/';
+        return entity -> {
+            final val resource = instantiateResource(entity);
+            if (entity instanceof Identifiable) {
+                final val id = ((Identifiable<?>) entity).getId();
+                resource.add(new Link(prefix + id));
+            }
+            return resource;
+        };
+    }
+
+    /**
+     * Funktion, die zu einem Objekt den URI f&uuml;r den Link "self"
+     * liefert, z.B. f&uuml;r die direkte Serialisierung ohne Resource-Objekt.
+     * Der Basis-URI wird einmalig im aufrufenden Request-Thread ermittelt.
+     * @return Funktion, die den URI f&uuml;r den Link "self" liefert
+     */
+    Function<E, String> selfHrefMapper() {
+        final val baseUri = linkTo(controllerClass).toUri().toString();
+        final val prefix = baseUri.endsWith("/") ? baseUri : baseUri + '/';
+        return entity -> prefix + ((Identifiable<?>) entity).getId();
+    }
 }
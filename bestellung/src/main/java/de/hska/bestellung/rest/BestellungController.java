@@ -17,16 +17,23 @@
 
 package de.hska.bestellung.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.hska.bestellung.entity.Bestellung;
+import de.hska.bestellung.service.BestellungChangeCounter;
 import de.hska.bestellung.service.BestellungService;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 import javax.validation.Valid;
 import javax.validation.constraints.Pattern;
 
 import lombok.val;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.hateoas.Link;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -38,11 +45,25 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation
+       .StreamingResponseBody;
 
+import static de.hska.bestellung.rest.StreamingResources.APPLICATION_NDJSON;
+import static de.hska.bestellung.rest.StreamingResources
+              .APPLICATION_NDJSON_VALUE;
+import static de.hska.bestellung.rest.StreamingResources.jsonArray;
+import static de.hska.bestellung.rest.StreamingResources.ndjson;
 import static de.hska.bestellung.util.Strings.isBlank;
+import static java.util.stream.Collectors.joining;
+import static org.springframework.hateoas.MediaTypes.HAL_JSON;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.VARY;
 import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.http.ResponseEntity.created;
 import static org.springframework.http.ResponseEntity.ok;
 import static org.springframework.http.ResponseEntity.status;
@@ -70,6 +91,9 @@ import static org.springframework.web.servlet.support
 class BestellungController {
     // Die ObjectID von MongoDB ist eine 24-stellige HEX-Zahl bzw. 12-Byte-Zahl
     private static final String OBJECT_ID_PATTERN = "[0-9a-fA-F]{24}";
+
+    // Request-Parameter fuer ein gestreamtes JSON-Array
+    private static final String STREAM_PARAM = "stream";
     
     private static final Method SAVE;
     static {
@@ -82,12 +106,19 @@ class BestellungController {
     }
     
     private final BestellungService service;
+    private final BestellungChangeCounter changeCounter;
     private final BestellungResourceAssembler assembler;
+    private final ObjectMapper objectMapper;
     
     BestellungController(BestellungService service,
-                         BestellungResourceAssembler assembler) {
+                         BestellungChangeCounter changeCounter,
+                         BestellungResourceAssembler assembler,
+                         @Qualifier("_halObjectMapper")
+                         ObjectMapper objectMapper) {
         this.service = service;
+        this.changeCounter = changeCounter;
         this.assembler = assembler;
+        this.objectMapper = objectMapper;
     }
     
     /**
@@ -95,41 +126,62 @@ class BestellungController {
      * Statuscodes:
      * <ul>
      * <li>200 falls es eine Bestellung zur gesuchten ID gibt
+     * <li>304 falls die Version laut If-None-Match unver&auml;ndert ist. Dazu
+     *     wird nur die Versionsnummer aus MongoDB gelesen, d.h. ohne Zugriff
+     *     auf den Microservice kunde.
      * <li>404 falls es keine Bestellung zur gesuchten ID gibt.
      * </ul>
      * @param id ID zur gesuchten Bestellung.
      * @return Gefundene Bestellung mit Atom-Links
      */
     @GetMapping("/{id:" + OBJECT_ID_PATTERN + '}')
-    public ResponseEntity<BestellungResource> findById(
+    public ResponseEntity<BestellungJson> findById(
                          @PathVariable
                          ObjectId id,
                          @RequestHeader(value = IF_NONE_MATCH)
                          @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
                          Optional<String> versionHeader) {
-        final val bestellung = service.findById(id)
-                                      .orElseThrow(NotFoundException::new);
-        
         // Versionsnr bei If-None-Match ueberpruefen, ggf. Statuscode 304
         // http://docs.spring.io/spring-data/rest/docs/current/reference/html...
         // .../#headers.better-client-architecture
-        final val version = bestellung.getVersion().toString();
-        @SuppressWarnings("squid:S2159")
-        final val tmpVersion = versionHeader.filter(v -> v.equals(version));
-        if (tmpVersion.isPresent()) {
-            return status(NOT_MODIFIED).build();
+        // Beim Polling ist die Version meistens unveraendert: deshalb wird
+        // zuerst nur die Versionsnr gelesen, noch ohne Aufruf von kunde
+        if (versionHeader.isPresent()) {
+            final val aktuell = service.findVersionById(id)
+                                       .orElseThrow(NotFoundException::new);
+            if (isVersion(versionHeader.get(), aktuell)) {
+                return status(NOT_MODIFIED).build();
+            }
         }
+
+        final val bestellung = service.findById(id)
+                                      .orElseThrow(NotFoundException::new);
+        final val version = bestellung.getVersion().toString();
         
-        final val resource = assembler.toResource(bestellung);
-        
+        // Bestellung mit Atom-Links ohne Kopie in ein BestellungResource-Objekt
         final val addLink =
             linkTo(BestellungController.class, SAVE).withRel("add");
-        resource.add(addLink);
+        final val json = new BestellungJson(
+            bestellung, assembler.selfHrefMapper().apply(bestellung),
+            new Link[] {addLink});
 
         // Entity Tag: Aenderungen an der angeforderten Ressource erkennen
         // Client: Spaetere GET-Requests mit Header Feld "If-None-Match"
         //         ggf. Response mit Statuscode NOT MODIFIED (s.o.)
-        return ok().eTag("\"" + version + "\"").body(resource);
+        // BestellungJson ist keine ResourceSupport: HAL explizit als Media Type
+        return ok().eTag("\"" + version + "\"")
+                   .contentType(HAL_JSON)
+                   .body(json);
+    }
+
+    // If-None-Match mit der Versionsnr, wahlweise als ETag in Anfuehrungs-
+    // zeichen wie in der Response
+    private static boolean isVersion(String ifNoneMatch, Integer version) {
+        final val tag = ifNoneMatch.startsWith("W/")
+                        ? ifNoneMatch.substring(2)
+                        : ifNoneMatch;
+        final val versionStr = version.toString();
+        return tag.equals(versionStr) || tag.equals('"' + versionStr + '"');
     }
 
     /**
@@ -139,20 +191,109 @@ class BestellungController {
      * <li>200 falls es mindestens eine Bestellung gibt
      * <li>404 falls es keine Bestellung gibt.
      * </ul>
+     * Solange sich keine Bestellung ge&auml;ndert hat, wird ein bedingter
+     * Request mit 304 beantwortet.
      * @param kundeId ID eines gegebenen Kunden (oder null)
+     * @param request Der Request mit If-None-Match
      * @return Die gefundenen Bestellungen.
      */
     @GetMapping
     public List<BestellungResource> findBy(@RequestParam(required = false)
                                            @Pattern(regexp = OBJECT_ID_PATTERN)
-                                           String kundeId) {
-        final val bestellungen = isBlank(kundeId)
-                                 ? service.findAll()
-                                 : service.findByKundeId(kundeId);
-
-        return assembler.toResources(bestellungen);
+                                           String kundeId,
+                                           WebRequest request) {
+        if (checkNotModified(request)) {
+            return null;
+        }
+        return assembler.toResources(find(kundeId));
     }
     
+    /**
+     * REST-Schnittstelle, um Bestellungen als NDJSON zu streamen, d.h. jede
+     * Bestellung wird als eigene Zeile gesendet, sobald sie aus MongoDB
+     * gelesen wurde.
+     * Statuscodes:
+     * <ul>
+     * <li>200 falls es mindestens eine Bestellung gibt
+     * <li>404 falls es keine Bestellung gibt.
+     * </ul>
+     * @param kundeId ID eines gegebenen Kunden (oder null)
+     * @param request Der Request mit If-None-Match
+     * @return Die gefundenen Bestellungen als NDJSON.
+     */
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> findByNdjson(
+                         @RequestParam(required = false)
+                         @Pattern(regexp = OBJECT_ID_PATTERN)
+                         String kundeId,
+                         WebRequest request) {
+        if (checkNotModified(request)) {
+            return null;
+        }
+        final val body = ndjson(find(kundeId), assembler.jsonMapper(),
+                                objectMapper);
+        return ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * REST-Schnittstelle, um Bestellungen als JSON-Array zu streamen, das in
+     * Chunks gesendet wird, z.B. <code>GET /?stream</code>.
+     * Statuscodes:
+     * <ul>
+     * <li>200 falls es mindestens eine Bestellung gibt
+     * <li>404 falls es keine Bestellung gibt.
+     * </ul>
+     * @param kundeId ID eines gegebenen Kunden (oder null)
+     * @param request Der Request mit If-None-Match
+     * @return Die gefundenen Bestellungen als JSON-Array.
+     */
+    @GetMapping(params = STREAM_PARAM)
+    public ResponseEntity<StreamingResponseBody> findByStreaming(
+                         @RequestParam(required = false)
+                         @Pattern(regexp = OBJECT_ID_PATTERN)
+                         String kundeId,
+                         WebRequest request) {
+        if (checkNotModified(request)) {
+            return null;
+        }
+        final val body = jsonArray(find(kundeId), assembler.jsonMapper(),
+                                   objectMapper);
+        return ok().contentType(APPLICATION_JSON_UTF8).body(body);
+    }
+
+    // Schwaches ETag fuer eine Suche aus dem Aenderungszaehler, den
+    // sortierten Request-Parametern und dem Header Accept, dazu
+    // "Vary: Accept". checkNotModified() setzt das ETag bzw. den Statuscode
+    // 304, ohne dass Bestellungen gelesen werden.
+    private boolean checkNotModified(WebRequest request) {
+        final val query = new TreeMap<String, String[]>(
+            request.getParameterMap())
+            .entrySet()
+            .stream()
+            .map(param -> param.getKey() + '='
+                          + String.join(",", param.getValue()))
+            .collect(joining("&"));
+        // Die Darstellung, z.B. HAL oder NDJSON, waehlt der Client mit Accept
+        final val accept = Objects.toString(request.getHeader(ACCEPT), "");
+        final val etag = "W/\"" + Long.toHexString(changeCounter.get()) + '-'
+                         + Integer.toHexString(query.hashCode()) + '-'
+                         + Integer.toHexString(accept.hashCode()) + '"';
+        if (request instanceof ServletWebRequest) {
+            // Auch beim Statuscode 304
+            final val response = ((ServletWebRequest) request).getResponse();
+            if (response != null) {
+                response.addHeader(VARY, ACCEPT);
+            }
+        }
+        return request.checkNotModified(etag);
+    }
+
+    private Stream<Bestellung> find(String kundeId) {
+        return isBlank(kundeId)
+               ? service.findAll()
+               : service.findByKundeId(kundeId);
+    }
+
     /**
      * REST-Schnittstelle, um eine neue Bestellung mittels HTTP POST anzulegen
      * @param bestellung die neu anzulegende Bestellung
@@ -0,0 +1,46 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.bestellung.rest;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import de.hska.bestellung.entity.Bestellung;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.hateoas.Link;
+
+/**
+ * Eine Bestellung zzgl. ihrer Atom-Links f&uuml;r die direkte Serialisierung
+ * durch BestellungSerializer. Im Gegensatz zu BestellungResource werden die
+ * Daten der Bestellung nicht kopiert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@JsonSerialize(using = BestellungSerializer.class)
+@Getter
+@AllArgsConstructor
+@ToString
+@SuppressFBWarnings({"EI_EXPOSE_REP", "EI_EXPOSE_REP2"})
+final class BestellungJson {
+    static final Link[] NO_LINKS = {};
+
+    private final Bestellung bestellung;
+    private final String selfHref;
+    // Weitere Links, z.B. "add" bei der Suche anhand der ID
+    private final Link[] links;
+}
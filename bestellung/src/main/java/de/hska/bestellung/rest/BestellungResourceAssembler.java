@@ -18,6 +18,8 @@
 package de.hska.bestellung.rest;
 
 import de.hska.bestellung.entity.Bestellung;
+import java.util.function.Function;
+import lombok.val;
 import org.springframework.stereotype.Component;
 
 import static de.hska.bestellung.rest.BestellungResource.of;
@@ -33,4 +35,18 @@ class BestellungResourceAssembler
     protected BestellungResource instantiateResource(Bestellung bestellung) {
         return of(bestellung);
     }
+
+    /**
+     * Funktion zur Konvertierung von Bestellungen f&uuml;r die direkte
+     * Serialisierung durch BestellungSerializer. Sie kann auch
+     * au&szlig;erhalb des Request-Threads benutzt werden, z.B. beim Streaming.
+     * @return Funktion, die zu einer Bestellung ein BestellungJson-Objekt
+     *         liefert
+     */
+    Function<Bestellung, BestellungJson> jsonMapper() {
+        final val selfHref = selfHrefMapper();
+        return bestellung -> new BestellungJson(bestellung,
+                                                selfHref.apply(bestellung),
+                                                BestellungJson.NO_LINKS);
+    }
 }
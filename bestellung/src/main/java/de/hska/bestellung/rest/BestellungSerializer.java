@@ -0,0 +1,111 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.bestellung.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import lombok.val;
+import org.springframework.hateoas.Link;
+
+import static org.springframework.hateoas.Link.REL_SELF;
+
+/**
+ * Serialisierung einer Bestellung mit ihren Atom-Links im Format HAL direkt
+ * aus der Entity, d.h. ohne Kopie in ein BestellungResource-Objekt. Die
+ * Feldnamen sind vorab kodiert; Datum und Bestellpositionen werden durch die
+ * Serializer des jeweiligen ObjectMapper geschrieben.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class BestellungSerializer extends StdSerializer<BestellungJson> {
+    private static final long serialVersionUID = 1L;
+
+    private static final SerializedString DATUM =
+        new SerializedString("datum");
+    private static final SerializedString KUNDE_ID =
+        new SerializedString("kundeId");
+    private static final SerializedString KUNDE_NACHNAME =
+        new SerializedString("kundeNachname");
+    private static final SerializedString BESTELLPOSITIONEN =
+        new SerializedString("bestellpositionen");
+    private static final SerializedString LINKS =
+        new SerializedString("_links");
+    private static final SerializedString SELF =
+        new SerializedString(REL_SELF);
+    private static final SerializedString HREF =
+        new SerializedString("href");
+    private static final SerializedString TEMPLATED =
+        new SerializedString("templated");
+
+    BestellungSerializer() {
+        super(BestellungJson.class);
+    }
+
+    @Override
+    public void serialize(BestellungJson json, JsonGenerator gen,
+                          SerializerProvider provider) throws IOException {
+        final val bestellung = json.getBestellung();
+        gen.writeStartObject();
+
+        gen.writeFieldName(DATUM);
+        provider.defaultSerializeValue(bestellung.getDatum(), gen);
+        gen.writeFieldName(KUNDE_ID);
+        gen.writeString(bestellung.getKundeId());
+        gen.writeFieldName(KUNDE_NACHNAME);
+        gen.writeString(bestellung.getKundeNachname());
+        gen.writeFieldName(BESTELLPOSITIONEN);
+        provider.defaultSerializeValue(bestellung.getBestellpositionen(), gen);
+
+        writeLinks(gen, json);
+        gen.writeEndObject();
+    }
+
+    // Links inline im Format HAL: "_links": { "self": { "href": "..." }, ...}
+    private static void writeLinks(JsonGenerator gen, BestellungJson json)
+            throws IOException {
+        final val selfHref = json.getSelfHref();
+        final val links = json.getLinks();
+        if (selfHref == null && links.length == 0) {
+            return;
+        }
+
+        gen.writeFieldName(LINKS);
+        gen.writeStartObject();
+        if (selfHref != null) {
+            gen.writeFieldName(SELF);
+            gen.writeStartObject();
+            gen.writeFieldName(HREF);
+            gen.writeString(selfHref);
+            gen.writeEndObject();
+        }
+        for (Link link : links) {
+            gen.writeFieldName(link.getRel());
+            gen.writeStartObject();
+            gen.writeFieldName(HREF);
+            gen.writeString(link.getHref());
+            if (link.isTemplated()) {
+                gen.writeFieldName(TEMPLATED);
+                gen.writeBoolean(true);
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+}
@@ -23,6 +23,11 @@ import org.bson.types.ObjectId;
 import org.springframework.data.repository.CrudRepository;
 
 interface BestellungRepository extends CrudRepository<Bestellung, ObjectId> {
+    @FunctionalInterface
+    interface VersionProjection {
+        Integer getVersion();
+    }
+
     /**
      * Suche nach einer Bestellung mit der gegebenen ID.
      * @param id Die ID der gesuchten Bestellung
@@ -30,6 +35,14 @@ interface BestellungRepository extends CrudRepository<Bestellung, ObjectId> {
      */
     Optional<Bestellung> findById(ObjectId id);
 
+    /**
+     * Die Versionsnummer einer Bestellung mit der gegebenen ID. Aus MongoDB
+     * wird nur dieses Feld gelesen.
+     * @param id Die ID der gesuchten Bestellung
+     * @return Die Versionsnummer oder empty
+     */
+    Optional<VersionProjection> findVersionById(ObjectId id);
+
     /**
      * Suche nach allen Bestellungen, d.h. ohne Suchkriterium.
      * @return Alle Bestellungen als Stream
@@ -86,6 +86,18 @@ public class BestellungService {
         return bestellungOpt;
     }
 
+    /**
+     * Die Versionsnummer einer Bestellung anhand ihrer ID ermitteln, ohne
+     * die Bestellung zu laden und ohne Zugriff auf den Microservice kunde,
+     * z.B. f&uuml;r bedingte GET-Requests beim Polling
+     * @param id Die Id der gesuchten Bestellung
+     * @return Die Versionsnummer oder ein leeres Optional-Objekt
+     */
+    public Optional<Integer> findVersionById(ObjectId id) {
+        return repo.findVersionById(id)
+                   .map(BestellungRepository.VersionProjection::getVersion);
+    }
+
     /**
      * Eine Bestellung anhand seiner ID suchen
      * @param kundeId Die Id des gegebenenKunden
@@ -95,6 +95,22 @@ public class BestellungRepositoryTest {
             // Then
             assertThat(bestellung).isNotPresent();
         }
+
+        @Test
+        public void findVersionById() {
+            // Given
+            @SuppressWarnings("UnnecessaryLocalVariable")
+            final val id = ID_VORHANDEN;
+
+            // When
+            final val version = repo.findVersionById(id);
+
+            // Then
+            assertSoftly(softly -> {
+                softly.assertThat(version).isPresent();
+                softly.assertThat(version.get().getVersion()).isNotNull();
+            });
+        }
     
     // -------------------------------------------------------------------------
     // S C H R E I B E N
@@ -0,0 +1,111 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import javax.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMailMessage;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Durchsatz in Emails pro Sekunde mit JavaMailSenderImpl (eine neue
+ * SMTP-Verbindung pro Aufruf von send()) und mit PooledMailSender. Vorher
+ * muss der Mailserver aus dem Projekt <code>mailserver</code> auf Port 25000
+ * gestartet werden. Aufruf: <code>gradlew jmh</code>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MailSenderBenchmark {
+    private static final String HOST = "localhost";
+    private static final int PORT = 25000;
+    private static final int BATCH = 20;
+
+    @Param({"false", "true"})
+    private boolean pooled;
+
+    private JavaMailSenderImpl sender;
+    private MimeMessage message;
+    private MimeMessage[] batch;
+
+    @Setup
+    public void setup() {
+        sender = pooled
+                 ? new PooledMailSender(4, 10_000, 60_000, 5_000)
+                 : new JavaMailSenderImpl();
+        sender.setHost(HOST);
+        sender.setPort(PORT);
+        message = createMessage();
+        batch = new MimeMessage[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            batch[i] = createMessage();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sender instanceof PooledMailSender) {
+            ((PooledMailSender) sender).destroy();
+        }
+    }
+
+    /**
+     * Einzelne Emails, z.B. beim Neuanlegen eines Kunden
+     */
+    @Benchmark
+    public void sendSingle() {
+        sender.send(message);
+    }
+
+    /**
+     * Emails im Block, z.B. aus dem Postausgang
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void sendBatch() {
+        sender.send(batch);
+    }
+
+    private MimeMessage createMessage() {
+        final MimeMailMessage msg =
+            new MimeMailMessage(sender.createMimeMessage());
+        msg.setFrom("benchmark@hska.de");
+        msg.setTo("sales@hska.de");
+        msg.setSubject("Neuer Kunde");
+        msg.setText("<b>Neuer Kunde:</b> \"Benchmark\"");
+        return msg.getMimeMessage();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.hska.kunde.entity.Adresse;
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.entity.Umsatz;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.Currency;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+
+import static de.hska.kunde.entity.FamilienstandType.LEDIG;
+import static de.hska.kunde.entity.GeschlechtType.WEIBLICH;
+import static de.hska.kunde.entity.InteresseType.LESEN;
+import static de.hska.kunde.entity.InteresseType.REISEN;
+import static java.util.Locale.GERMANY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Serialisierung eines Kunden im Format HAL: bisher mit einer Kopie in
+ * KundeResource und Reflection durch Jackson, jetzt direkt durch
+ * KundeSerializer. Die allokierten Bytes pro Response liefert der Profiler
+ * "gc" als <code>gc.alloc.rate.norm</code>. Aufruf: <code>gradlew jmh</code>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KundeSerializerBenchmark {
+    private static final String BASE_URI = "https://localhost:8444/kunde/";
+
+    // Die Bytes werden verworfen, damit nur die Serialisierung zaehlt
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+            // verwerfen
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // verwerfen
+        }
+    };
+
+    private ObjectWriter writer;
+    private KundeResourceAssembler assembler;
+    private Kunde kunde;
+    private String selfHref;
+
+    @Setup
+    public void setup() throws MalformedURLException {
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jackson2HalModule());
+        mapper.registerModule(new JavaTimeModule());
+        mapper.setHandlerInstantiator(
+            new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultRelProvider(), null, null));
+        writer = mapper.writer();
+        assembler = new KundeResourceAssembler();
+
+        kunde = Kunde.builder()
+                     .id(new ObjectId())
+                     .nachname("Benchmark")
+                     .email("benchmark@hska.de")
+                     .newsletter(true)
+                     .geburtsdatum(LocalDate.of(1990, 1, 31))
+                     .umsatz(new Umsatz(new BigDecimal("123.45"),
+                                        Currency.getInstance(GERMANY)))
+                     .homepage(new URL("https://www.hska.de"))
+                     .geschlecht(WEIBLICH)
+                     .familienstand(LEDIG)
+                     .interesse(LESEN)
+                     .interesse(REISEN)
+                     .adresse(new Adresse("76133", "Karlsruhe"))
+                     .username("benchmark")
+                     .build();
+        selfHref = BASE_URI + kunde.getId();
+    }
+
+    /**
+     * Bisher: Kopie in KundeResource mit Link-Liste, Serialisierung durch
+     * Reflection
+     * @throws IOException nicht bei NULL_OUTPUT
+     */
+    @Benchmark
+    public void resource() throws IOException {
+        final KundeResource resource = assembler.instantiateResource(kunde);
+        resource.add(new Link(selfHref));
+        writer.writeValue(NULL_OUTPUT, resource);
+    }
+
+    /**
+     * Jetzt: KundeSerializer direkt aus der Entity
+     * @throws IOException nicht bei NULL_OUTPUT
+     */
+    @Benchmark
+    public void direct() throws IOException {
+        writer.writeValue(NULL_OUTPUT,
+                          new KundeJson(kunde, selfHref, KundeJson.NO_LINKS));
+    }
+}
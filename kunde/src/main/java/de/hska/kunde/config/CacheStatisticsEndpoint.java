@@ -0,0 +1,82 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.val;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * Endpoint <code>/admin/caches</code> mit den Statistiken der Caches dieser
+ * Instanz des Microservice: Anzahl der eigenen Eintr&auml;ge, Treffer,
+ * Fehlzugriffe und verdr&auml;ngte Eintr&auml;ge sowie die Treffer im Near
+ * Cache.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class CacheStatisticsEndpoint
+        extends AbstractEndpoint<Map<String, Map<String, Long>>> {
+    private final HazelcastInstance hazelcastInstance;
+    private final CacheEvictionListener listener;
+
+    CacheStatisticsEndpoint(HazelcastInstance hazelcastInstance,
+                            CacheEvictionListener listener) {
+        super("caches");
+        this.hazelcastInstance = hazelcastInstance;
+        this.listener = listener;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> invoke() {
+        final Map<String, Map<String, Long>> result = new TreeMap<>();
+        hazelcastInstance.getDistributedObjects()
+                         .stream()
+                         .filter(obj -> obj instanceof IMap)
+                         .map(obj -> (IMap<?, ?>) obj)
+                         .forEach(map -> result.put(map.getName(),
+                                                    statistics(map)));
+        return result;
+    }
+
+    private Map<String, Long> statistics(IMap<?, ?> map) {
+        final val name = map.getName();
+        final val stats = map.getLocalMapStats();
+        final Map<String, Long> result = new LinkedHashMap<>();
+        result.put("entries", stats.getOwnedEntryCount());
+        result.put("gets", stats.getGetOperationCount());
+        result.put("hits", stats.getHits());
+        // Fehlzugriffe werden von Hazelcast nicht direkt gezaehlt
+        result.put("misses",
+                   Math.max(0, stats.getGetOperationCount() - stats.getHits()));
+        result.put("puts", stats.getPutOperationCount());
+        result.put("removes", stats.getRemoveOperationCount());
+        result.put("evictions", listener.getEvictions(name));
+        result.put("expirations", listener.getExpirations(name));
+
+        final val nearCache = stats.getNearCacheStats();
+        if (nearCache != null) {
+            result.put("nearCacheEntries", nearCache.getOwnedEntryCount());
+            result.put("nearCacheHits", nearCache.getHits());
+            result.put("nearCacheMisses", nearCache.getMisses());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json
+       .AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Jackson-Converter f&uuml;r das Bin&auml;rformat CBOR (RFC 7049). Spring 4.3
+ * bietet nur einen Converter f&uuml;r Smile, aber noch keinen f&uuml;r CBOR.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class CborHttpMessageConverter
+            extends AbstractJackson2HttpMessageConverter {
+    /**
+     * Media Type f&uuml;r CBOR.
+     */
+    static final MediaType APPLICATION_CBOR =
+        MediaType.valueOf("application/cbor");
+
+    CborHttpMessageConverter() {
+        super(Jackson2ObjectMapperBuilder.cbor().build(), APPLICATION_CBOR);
+    }
+}
@@ -21,10 +21,12 @@ import de.hska.kunde.config.dev.LogBasicAuth;
 import de.hska.kunde.config.dev.MongoMappingEventsListener;
 import de.hska.kunde.config.dev.RepositoryPopulator;
 import de.hska.kunde.config.security.PasswordEncoder;
+import de.hska.kunde.config.security.UsernameFilterConfig;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cloud.client.circuitbreaker.EnableCircuitBreaker;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 // * Mehrfachvererbung durch Interfaces mit default-Methoden
@@ -34,7 +36,9 @@ import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 @Configuration
 //@EnableAspectJAutoProxy
-//@EnableScheduling
+// @Scheduled u.a. fuer den Postausgang von KundeMailDispatcher; Thread-Pool
+// siehe ExecutorConfig.taskScheduler und SchedulerConfigurer
+@EnableScheduling
 // https://spring.io/blog/2015/06/15/cache-auto-configuration-in-spring-boot-1-3
 @EnableCaching
 @EnableDiscoveryClient
@@ -42,6 +46,9 @@ import springfox.documentation.swagger2.annotations.EnableSwagger2;
 @EnableSwagger2
 @SuppressWarnings("SpringFacetCodeInspection")
 class CommonConfig implements EmbeddedServletContainerConfig,
+                              ExecutorConfig,
+                              FilterConfig,
+                              HazelcastConfig,
                               LazyInit,
                               LogAlleKunden,
                               LogBasicAuth,
@@ -50,5 +57,6 @@ class CommonConfig implements EmbeddedServletContainerConfig,
                               MongoMappingEventsListener,
                               PasswordEncoder,
                               RepositoryPopulator,
-                              SwaggerConfig {
+                              SwaggerConfig,
+                              UsernameFilterConfig {
 }
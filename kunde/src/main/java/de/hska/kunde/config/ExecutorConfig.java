@@ -0,0 +1,97 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Description;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Spring-Konfiguration f&uuml;r Thread-Pools mit einer festen Anzahl an
+ * Threads, damit rechenintensive Aufgaben den Microservice nicht
+ * &uuml;berlasten.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+interface ExecutorConfig {
+    /**
+     * Spring-Bean f&uuml;r Massenimporte, z.B. f&uuml;r die Validierung und
+     * das Verschl&uuml;sseln der Passw&ouml;rter mit bcrypt.
+     * @param threads Anzahl der Threads; bei 0 die Anzahl der Prozessoren
+     * @return Der Thread-Pool
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Description("Thread-Pool fuer Massenimporte")
+    default ExecutorService batchExecutor(
+        @Value("${kunde.batch.threads:0}") int threads) {
+        final val poolSize = threads > 0
+                             ? threads
+                             : Runtime.getRuntime().availableProcessors();
+        return newFixedThreadPool(poolSize,
+                                  new CustomizableThreadFactory("batch-"));
+    }
+
+    /**
+     * Spring-Bean f&uuml;r das Erzeugen verkleinerter Bilder im Hintergrund.
+     * Die Warteschlange ist begrenzt: ist sie voll, wird ein Auftrag
+     * abgelehnt und beim n&auml;chsten Request erneut erteilt.
+     * @param threads Anzahl der Threads
+     * @param queueSize Maximale Anzahl wartender Auftr&auml;ge
+     * @return Der Thread-Pool
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Description("Thread-Pool fuer verkleinerte Bilder")
+    default ExecutorService derivativeExecutor(
+        @Value("${media.derivative.threads:2}") int threads,
+        @Value("${media.derivative.queueSize:100}") int queueSize) {
+        return new ThreadPoolExecutor(
+            threads, threads, 0L, MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new CustomizableThreadFactory("derivative-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Spring-Bean f&uuml;r die Methoden mit <code>@Scheduled</code>, damit
+     * eine lang laufende Aufgabe wie der Postausgang die anderen Aufgaben
+     * nicht blockiert.
+     * @param threads Anzahl der Threads
+     * @return Der Thread-Pool
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Description("Thread-Pool fuer @Scheduled")
+    default ThreadPoolTaskScheduler taskScheduler(
+        @Value("${scheduler.threads:4}") int threads) {
+        final val scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(threads);
+        scheduler.setThreadNamePrefix("scheduler-");
+        scheduler.setErrorHandler(
+            t -> getLogger(ExecutorConfig.class)
+                .error("Fehler in einer @Scheduled-Methode", t));
+        return scheduler;
+    }
+}
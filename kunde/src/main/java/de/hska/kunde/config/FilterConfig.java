@@ -0,0 +1,55 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import de.hska.kunde.service.KundeRepository;
+import de.hska.kunde.util.UniqueValueFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Description;
+
+/**
+ * Spring-Konfiguration f&uuml;r den Bloom-Filter &uuml;ber die Emailadressen
+ * der Kunden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+interface FilterConfig {
+    /**
+     * Spring-Bean f&uuml;r den Bloom-Filter &uuml;ber die Emailadressen aller
+     * Kunden, damit beim Neuanlegen eine neue Emailadresse ohne Zugriff auf
+     * MongoDB erkannt wird.
+     * @param repo Repository, aus dem der Filter aufgebaut wird
+     * @param expectedInsertions Erwartete Anzahl an Emailadressen
+     * @param fpp Gew&uuml;nschte Falsch-Positiv-Rate, z.B. 0.01
+     * @return Der Filter, der beim Start aus MongoDB aufgebaut wird
+     */
+    @Bean
+    @Description("Bloom-Filter ueber die Emailadressen aller Kunden")
+    default UniqueValueFilter kundeEmailFilter(
+            KundeRepository repo,
+            @Value("${filter.expectedInsertions:1000000}")
+            long expectedInsertions,
+            @Value("${filter.fpp:0.01}") double fpp) {
+        // Aus MongoDB werden nur Nachname und Email gelesen
+        return new UniqueValueFilter(
+            "filter.kunde.email",
+            () -> repo.readAllBy()
+                      .map(KundeRepository.EmailProjection::getEmail),
+            expectedInsertions, fpp);
+    }
+}
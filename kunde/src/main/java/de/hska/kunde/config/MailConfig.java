@@ -24,7 +24,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Description;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.JavaMailSenderImpl;
 
 import static java.lang.Boolean.FALSE;
 
@@ -35,18 +34,36 @@ import static java.lang.Boolean.FALSE;
  */
 interface MailConfig {
     /**
-     * Spring-Bean f&uuml;r das Verschicken von Emails.
+     * Spring-Bean f&uuml;r das Verschicken von Emails &uuml;ber einen Pool
+     * mit SMTP-Verbindungen.
      * @param host Hostname des Mailservers
      * @param port Port des Mailservers
+     * @param maxTotal Maximale Anzahl gleichzeitiger SMTP-Verbindungen
+     * @param maxWait Maximale Wartezeit in Millisekunden auf eine Verbindung
+     * @param maxIdle Maximale Zeit in Millisekunden, die eine Verbindung
+     *                unbenutzt im Pool bleibt
+     * @param validateAfter Zeit in Millisekunden, nach der eine unbenutzte
+     *                      Verbindung mit NOOP gepr&uuml;ft wird
+     * @param timeout Timeout in Millisekunden f&uuml;r Verbindungsaufbau,
+     *                Lesen und Schreiben; muss deutlich k&uuml;rzer als
+     *                <code>mail.outbox.lease</code> sein
      * @return Das konfigurierte Objekt, um Emails zu verschicken.
      */
     @Bean
     @Description("JavaMailSender")
+    @SuppressWarnings("checkstyle:ParameterNumber")
     default JavaMailSender javaMailSender(
         @Value("${mail.host:localhost}") String host,
-        @Value("${mail.port:25000}") int port) {
+        @Value("${mail.port:25000}") int port,
+        @Value("${mail.pool.maxTotal:4}") int maxTotal,
+        @Value("${mail.pool.maxWait:10000}") long maxWait,
+        @Value("${mail.pool.maxIdle:60000}") long maxIdle,
+        @Value("${mail.pool.validateAfter:5000}") long validateAfter,
+        @Value("${mail.timeout:10000}") long timeout) {
         // set-Methoden sind im Interface JavaMailSender nicht deklariert
-        final val javaMailSender = new JavaMailSenderImpl();
+        final val javaMailSender = new PooledMailSender(maxTotal, maxWait,
+                                                        maxIdle,
+                                                        validateAfter);
         javaMailSender.setHost(host);
         javaMailSender.setPort(port);
 
@@ -58,6 +75,12 @@ interface MailConfig {
         properties.setProperty("mail.smtp.auth", falseStr);
         properties.setProperty("mail.smtp.starttls.enable", falseStr);
         properties.setProperty("mail.debug", falseStr);
+        // Ohne Timeouts blockiert ein haengender Mailserver den Postausgang
+        // laenger als dessen Sperre (mail.outbox.lease)
+        final val timeoutStr = String.valueOf(timeout);
+        properties.setProperty("mail.smtp.connectiontimeout", timeoutStr);
+        properties.setProperty("mail.smtp.timeout", timeoutStr);
+        properties.setProperty("mail.smtp.writetimeout", timeoutStr);
         javaMailSender.setJavaMailProperties(properties);
 
         return javaMailSender;
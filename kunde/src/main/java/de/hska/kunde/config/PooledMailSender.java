@@ -0,0 +1,214 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+import lombok.val;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * JavaMailSender mit einem Pool aus bereits verbundenen SMTP-Verbindungen.
+ * JavaMailSenderImpl baut bei jedem Aufruf von send() eine neue Verbindung
+ * zum Mailserver auf und schlie&szlig;t sie danach wieder. Hier wird die
+ * Verbindung stattdessen in den Pool zur&uuml;ckgegeben. Alle Emails eines
+ * Aufrufs von send(MimeMessage...) werden &uuml;ber dieselbe Verbindung
+ * versendet. Eine Verbindung, die l&auml;nger als validateAfter unbenutzt
+ * war, wird vor der Wiederverwendung mit NOOP gepr&uuml;ft. Verbindungen,
+ * die l&auml;nger als maxIdle unbenutzt sind, werden geschlossen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+class PooledMailSender extends JavaMailSenderImpl implements DisposableBean {
+    // Zuletzt benutzte Verbindungen vorne, am laengsten unbenutzte hinten
+    private final LinkedBlockingDeque<Idle> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final long maxWait;
+    private final long maxIdle;
+    private final long validateAfter;
+
+    /**
+     * Konstruktor mit den Grenzwerten f&uuml;r den Pool
+     * @param maxTotal Maximale Anzahl gleichzeitiger Verbindungen
+     * @param maxWait Maximale Wartezeit in Millisekunden auf eine Verbindung
+     * @param maxIdle Maximale Zeit in Millisekunden, die eine Verbindung
+     *                unbenutzt im Pool bleibt
+     * @param validateAfter Zeit in Millisekunden, nach der eine unbenutzte
+     *                      Verbindung mit NOOP gepr&uuml;ft wird
+     */
+    PooledMailSender(int maxTotal, long maxWait, long maxIdle,
+                     long validateAfter) {
+        permits = new Semaphore(maxTotal, true);
+        this.maxWait = maxWait;
+        this.maxIdle = maxIdle;
+        this.validateAfter = validateAfter;
+    }
+
+    /**
+     * Eine Verbindung aus dem Pool holen bzw. eine neue Verbindung aufbauen.
+     * JavaMailSenderImpl ruft am Ende von send() close() auf, wodurch die
+     * Verbindung in den Pool zur&uuml;ckgegeben wird.
+     * @return Die Verbindung zum Mailserver
+     * @throws MessagingException falls keine Verbindung aufgebaut werden
+     *         kann
+     */
+    @Override
+    protected Transport connectTransport() throws MessagingException {
+        try {
+            if (!permits.tryAcquire(maxWait, MILLISECONDS)) {
+                throw new MessagingException(
+                    "Keine SMTP-Verbindung innerhalb von " + maxWait + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Warten auf SMTP-Verbindung", e);
+        }
+
+        try {
+            evictIdle();
+            Idle entry;
+            while ((entry = idle.pollFirst()) != null) {
+                final val unbenutzt = System.currentTimeMillis() - entry.since;
+                // isConnected() von SMTPTransport sendet NOOP
+                if (unbenutzt < validateAfter
+                    || entry.transport.isConnected()) {
+                    return new PooledTransport(entry.transport);
+                }
+                closeQuietly(entry.transport);
+            }
+            return new PooledTransport(super.connectTransport());
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Alle Verbindungen im Pool schlie&szlig;en, wenn der
+     * ApplicationContext heruntergefahren wird.
+     */
+    @Override
+    public void destroy() {
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            closeQuietly(entry.transport);
+        }
+    }
+
+    /**
+     * Anzahl der unbenutzten Verbindungen im Pool
+     * @return Die Anzahl
+     */
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    private void release(Transport transport, boolean broken) {
+        if (broken) {
+            closeQuietly(transport);
+        } else {
+            idle.offerFirst(new Idle(transport, System.currentTimeMillis()));
+        }
+        permits.release();
+    }
+
+    private void evictIdle() {
+        final val grenze = System.currentTimeMillis() - maxIdle;
+        Idle entry;
+        while ((entry = idle.peekLast()) != null && entry.since < grenze) {
+            if (idle.removeLastOccurrence(entry)) {
+                closeQuietly(entry.transport);
+            }
+        }
+    }
+
+    @SuppressWarnings({"checkstyle:IllegalCatch",
+                       "PMD.AvoidCatchingGenericException"})
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (Exception ignored) {
+            // Die Verbindung wird ohnehin verworfen
+        }
+    }
+
+    /**
+     * Unbenutzte Verbindung im Pool mit dem Zeitpunkt der letzten Benutzung.
+     */
+    private static final class Idle {
+        private final Transport transport;
+        private final long since;
+
+        Idle(Transport transport, long since) {
+            this.transport = transport;
+            this.since = since;
+        }
+    }
+
+    /**
+     * Verbindung, die beim Schlie&szlig;en in den Pool zur&uuml;ckgegeben
+     * wird. Nach einem Fehler beim Versenden gilt die Verbindung als
+     * unbrauchbar, so dass JavaMailSenderImpl f&uuml;r die restlichen Emails
+     * eine neue Verbindung anfordert.
+     */
+    private final class PooledTransport extends Transport {
+        private final Transport delegate;
+        private boolean broken;
+        private boolean released;
+
+        PooledTransport(Transport delegate) {
+            super(getSession(), null);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void sendMessage(Message msg, Address[] addresses)
+                throws MessagingException {
+            try {
+                delegate.sendMessage(msg, addresses);
+            } catch (SendFailedException e) {
+                // Ungueltige Empfaenger: die Verbindung ist weiterhin gueltig
+                throw e;
+            } catch (MessagingException | RuntimeException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            // Kein NOOP pro Email: die Verbindung wurde beim Holen geprueft
+            return !broken && !released;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                release(delegate, broken);
+            }
+        }
+    }
+}
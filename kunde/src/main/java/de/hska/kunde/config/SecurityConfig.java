@@ -16,7 +16,6 @@
  */
 package de.hska.kunde.config;
 
-import de.hska.kunde.config.security.AuthService;
 import de.hska.kunde.config.security.AuthenticationProvider;
 import lombok.val;
 import org.springframework.context.annotation.Configuration;
@@ -61,20 +60,15 @@ class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .toUpperCase(Locale.getDefault());
     }
     
-    @SuppressWarnings({"checkstyle:IllegalCatch",
-            "PMD.AvoidCatchingGenericException", "WeakerAccess"})
-    SecurityConfig(AuthService authService,
-                   AuthenticationManagerBuilder auth,
+    @SuppressWarnings("WeakerAccess")
+    SecurityConfig(AuthenticationManagerBuilder auth,
                    AuthenticationProvider authenticationProvider) {
         // Authentifizierung durch den injizierten Provider mittels einer
         // MongoDB. Fuer die Produktion ein Profil ergaenzen fuer SSO
         // (mit Keycloak oder Stormpath) oder OAuth2 oder ...
         // http://www.baeldung.com/spring-security-oauth-jwt
-        try {
-            auth.userDetailsService(authService);
-        } catch (Exception e) {
-            throw new IllegalStateException(e);
-        }
+        // Kein zusaetzlicher DaoAuthenticationProvider mit AuthService, der
+        // bei einem falschen Passwort MongoDB ein zweites Mal abfragen wuerde
         auth.authenticationProvider(authenticationProvider);
     }
     
@@ -88,10 +82,13 @@ class SecurityConfig extends WebSecurityConfigurerAdapter {
             // .portMapper().http(HTTP_PORT).mapsTo(httpsPort)
             // .and()
             .authorizeRequests()
+                .antMatchers(POST, KUNDE_PATH + "/batch").hasRole(ADMIN)
                 .antMatchers(POST, KUNDE_PATH).permitAll()
                 .antMatchers(GET, KUNDE_PATH).hasRole(ADMIN)
                 .antMatchers(GET, KUNDE_PATH + "/*").hasRole(ADMIN)
                 .antMatchers(PATCH, KUNDE_PATH).hasRole(KUNDE)
+                // Download sowie Hochladen mit .../media/uploads
+                .antMatchers(KUNDE_PATH + "/*/media/**").authenticated()
                 .antMatchers(DELETE, KUNDE_PATH + "/*")
                     .access("hasRole('" + ADMIN + "') and "
                             + "hasRole('" + KUNDE + "')")
@@ -40,6 +40,7 @@ public final class Settings {
 
     private static final String VERSION = "1.0";
     private static final int EUREKA_PORT = 8761;
+    private static final long ASYNC_REQUEST_TIMEOUT = 10 * 60 * 1000L;
 
     public static final Map<String, Object> PROPS;
     static {
@@ -99,6 +100,10 @@ public final class Settings {
         map.put("feign.compression.response.enabled", true);
         map.put("feign.compression.response.mime-types", applicationJson);
 
+        // Gestreamte Responses (StreamingResponseBody) laufen asynchron und
+        // koennen bei grossen Datenmengen laenger als der Default dauern
+        map.put("spring.mvc.async.request-timeout", ASYNC_REQUEST_TIMEOUT);
+
         map.put("spring.devtools.restart.trigger-file=", "/restart.txt");
         PROPS = unmodifiableMap(map);
     }
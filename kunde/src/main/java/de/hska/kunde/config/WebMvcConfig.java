@@ -30,6 +30,8 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json
        .MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile
+       .MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation
@@ -39,7 +41,8 @@ import static com.fasterxml.jackson.core.Version.unknownVersion;
 import static java.util.Collections.singletonList;
 
 /**
- * Jackson-Converter, der einen Stream in eine List konvertiert.
+ * Jackson-Converter, der einen Stream in eine List konvertiert, sowie
+ * Converter f&uuml;r die Bin&auml;rformate Smile und CBOR.
  * https://www.airpair.com/java/posts/spring-streams-memory-efficiency
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
  *         J&uuml;rgen Zimmermann</a>
@@ -50,6 +53,10 @@ class WebMvcConfig extends WebMvcConfigurerAdapter {
     public void configureMessageConverters(List<HttpMessageConverter<?>>
                                            converters) {
         converters.add(jackson2HttpMessageConverter());
+        // Binaerformate fuer interne Aufrufe, z.B. durch den Microservice
+        // bestellung: Auswahl durch den Header "Accept"
+        converters.add(new MappingJackson2SmileHttpMessageConverter());
+        converters.add(new CborHttpMessageConverter());
     }
 
     // Stream als JSON-Datensatz
@@ -23,6 +23,7 @@ import org.bson.types.ObjectId;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.data.convert.ReadingConverter;
 import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -36,6 +37,8 @@ import org.springframework.security.core.userdetails.User;
  *         J&uuml;rgen Zimmermann</a>
  */
 @Document
+// Das Feld username ist in der Basisklasse User deklariert
+@CompoundIndex(name = "username", def = "{'username': 1}", unique = true)
 @SuppressWarnings("squid:S2160")
 @SuppressFBWarnings("EQ_DOESNT_OVERRIDE_EQUALS")
 public class Account extends User {
@@ -0,0 +1,68 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config.security;
+
+import lombok.val;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Verteilter Cache f&uuml;r Accounts mit dem Benutzernamen als
+ * Schl&uuml;ssel, damit eine Authentifizierung im Normalfall keine Abfrage an
+ * MongoDB erfordert. AuthenticationProvider liest und bef&uuml;llt den Cache
+ * gem&auml;&szlig; der Vorgehensweise von Spring Security: scheitert die
+ * Pr&uuml;fung des Passworts mit einem Account aus dem Cache, wird der Account
+ * erneut aus MongoDB gelesen. AuthService entfernt einen Account bei jeder
+ * &Auml;nderung aus dem Cache, und zwar in allen Instanzen des Clusters.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+public class AccountCache implements UserCache {
+    /**
+     * Name des Cache.
+     */
+    static final String NAME = "account_username";
+
+    private final Cache cache;
+
+    AccountCache(CacheManager cacheManager) {
+        cache = cacheManager.getCache(NAME);
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        // Jeder Aufruf erhaelt eine eigene deserialisierte Kopie, so dass
+        // das Loeschen des Passworts nach der Authentifizierung durch
+        // ProviderManager den Eintrag im Cache nicht veraendert
+        final val wrapper = cache.get(username);
+        return wrapper == null ? null : (UserDetails) wrapper.get();
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        cache.put(user.getUsername(), user);
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        cache.evict(username);
+    }
+}
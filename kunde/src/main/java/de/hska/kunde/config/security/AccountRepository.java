@@ -17,6 +17,7 @@
 package de.hska.kunde.config.security;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
 import org.springframework.data.repository.CrudRepository;
 
@@ -27,10 +28,29 @@ import org.springframework.data.repository.CrudRepository;
  *         J&uuml;rgen Zimmermann</a>
  */
 interface AccountRepository extends CrudRepository<Account, ObjectId> {
+    @FunctionalInterface
+    interface UsernameProjection {
+        String getUsername();
+    }
+
     /**
      * Suche nach Benutzerkennungen anhand des Benutzernamens.
      * @param username Der Benutzer- bzw. Loginname
      * @return Der zugeh&ouml;rige Acccount oder ein leeres Optional-Objekt
      */
     Optional<Account> findByUsername(String username);
+
+    /**
+     * Die Benutzernamen aller Accounts, z.B. f&uuml;r den Aufbau eines
+     * Bloom-Filters. Aus MongoDB wird nur dieses Feld gelesen.
+     * @return Die Benutzernamen als Stream
+     */
+    Stream<UsernameProjection> readAllBy();
+
+    /**
+     * Einen Account anhand des Benutzernamens l&ouml;schen.
+     * @param username Der Benutzername
+     * @return Anzahl der gel&ouml;schten Accounts
+     */
+    Long deleteByUsername(String username);
 }
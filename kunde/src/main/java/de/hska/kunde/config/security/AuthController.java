@@ -18,7 +18,6 @@ package de.hska.kunde.config.security;
 
 import java.util.Collection;
 
-import lombok.val;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -35,21 +34,14 @@ import static java.util.stream.Collectors.toList;
 @RestController
 @RequestMapping("/auth")
 class AuthController {
-    private final AuthService authService;
-
-    AuthController(AuthService authService) {
-        this.authService = authService;
-    }
-
     @GetMapping("/rollen")
     @SuppressWarnings("unused")
     Collection<String> findEigeneRollen(Authentication authentication) {
-        final Account account = (Account) authentication.getPrincipal();
-        final val username = account.getUsername();
-        return authService.loadUserByUsername(username)
-                          .getAuthorities()
-                          .stream()
-                          .map(GrantedAuthority::getAuthority)
-                          .collect(toList());
+        // Die Rollen sind bereits bei der Authentifizierung ermittelt
+        // worden, deshalb ist kein erneuter Zugriff auf MongoDB notwendig
+        return authentication.getAuthorities()
+                             .stream()
+                             .map(GrantedAuthority::getAuthority)
+                             .collect(toList());
     }
 }
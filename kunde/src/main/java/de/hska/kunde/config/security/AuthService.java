@@ -16,7 +16,10 @@
  */
 package de.hska.kunde.config.security;
 
+import de.hska.kunde.util.UniqueValueFilter;
 import lombok.val;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -38,11 +41,21 @@ import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 public class AuthService implements UserDetailsService {
     private final AccountRepository repo;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final UniqueValueFilter usernameFilter;
+    private final CredentialsCache credentialsCache;
+    private final AccountCache accountCache;
     
     AuthService(AccountRepository repo,
-                BCryptPasswordEncoder passwordEncoder) {
+                BCryptPasswordEncoder passwordEncoder,
+                @Qualifier("usernameFilter")
+                UniqueValueFilter usernameFilter,
+                CredentialsCache credentialsCache,
+                AccountCache accountCache) {
         this.repo = repo;
         this.passwordEncoder = passwordEncoder;
+        this.usernameFilter = usernameFilter;
+        this.credentialsCache = credentialsCache;
+        this.accountCache = accountCache;
     }
     
     /**
@@ -61,10 +74,14 @@ public class AuthService implements UserDetailsService {
      * @param kundeAccount Der neue Account
      */    
     public void save(de.hska.kunde.entity.Account kundeAccount) {
-        repo.findByUsername(kundeAccount.getUsername())
-            .ifPresent(account -> {
-            throw new UsernameExistsException(kundeAccount.getUsername());
-        });
+        final val username = kundeAccount.getUsername();
+        // Laut Bloom-Filter sicher nicht vorhanden: kein Zugriff auf MongoDB
+        if (usernameFilter.mightContain(username)) {
+            if (repo.findByUsername(username).isPresent()) {
+                throw new UsernameExistsException(username);
+            }
+            usernameFilter.falsePositive();
+        }
 
         // Die Account-Informationen des Kunden in Account-Informationen
         // fuer die Security-Komponente transformieren
@@ -74,10 +91,36 @@ public class AuthService implements UserDetailsService {
                                        .stream()
                                        .map(SimpleGrantedAuthority::new)
                                        .collect(toList());
-        final val account = new Account(null, kundeAccount.getUsername(),
-                                        passwordEncoded, rollen);
+        final val account = new Account(null, username, passwordEncoded,
+                                        rollen);
+
+        try {
+            repo.save(account);
+        } catch (DuplicateKeyException e) {
+            // Der eindeutige Index ist das letzte Sicherheitsnetz, z.B. bei
+            // einem Benutzernamen, den eine andere Instanz angelegt hat
+            throw new UsernameExistsException(username);
+        }
+        usernameFilter.add(username);
+        evict(username);
+    }
+
+    /**
+     * Einen Account l&ouml;schen, z.B. falls der zugeh&ouml;rige Kunde nicht
+     * angelegt werden konnte
+     * @param username Der Benutzername des zu l&ouml;schenden Accounts
+     */
+    public void delete(String username) {
+        // Der Benutzername bleibt bis zum naechsten Neuaufbau im Bloom-Filter
+        repo.deleteByUsername(username);
+        evict(username);
+    }
 
-        repo.save(account);
+    // Nach jeder Aenderung an einem Account, d.h. auch an Passwort oder
+    // Rollen, muss der Account aus beiden Caches entfernt werden
+    private void evict(String username) {
+        accountCache.removeUserFromCache(username);
+        credentialsCache.evict(username);
     }
     
     /**
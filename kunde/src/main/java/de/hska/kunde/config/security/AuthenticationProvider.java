@@ -17,6 +17,7 @@
 package de.hska.kunde.config.security;
 
 import de.hska.kunde.config.security.AuthService.NotAuthenticatedException;
+import lombok.val;
 import org.springframework.security.authentication
        .UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao
@@ -38,17 +39,27 @@ public class AuthenticationProvider
              extends AbstractUserDetailsAuthenticationProvider {
     private final AuthService service;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final CredentialsCache credentialsCache;
 
     /**
      * Konstruktor mit injizierten Objekten
      * @param service Der AccountService, um Accounts zu verwalten.
      * @param passwordEncoder Injiziertes Objekt, um mit bcrypt zu
      *                        verschl&uuml;sseln
+     * @param credentialsCache Cache f&uuml;r erfolgreich &uuml;berpr&uuml;fte
+     *                         Passw&ouml;rter
+     * @param accountCache Verteilter Cache f&uuml;r Accounts
      */
     public AuthenticationProvider(AuthService service,
-                                  BCryptPasswordEncoder passwordEncoder) {
+                                  BCryptPasswordEncoder passwordEncoder,
+                                  CredentialsCache credentialsCache,
+                                  AccountCache accountCache) {
         this.service = service;
         this.passwordEncoder = passwordEncoder;
+        this.credentialsCache = credentialsCache;
+        // retrieveUser() wird nur aufgerufen, falls der Account nicht im
+        // Cache ist oder das Passwort nicht zum Account im Cache passt
+        setUserCache(accountCache);
     }
     
     /**
@@ -74,8 +85,23 @@ public class AuthenticationProvider
                            UsernamePasswordAuthenticationToken authentication) {
         final CharSequence credentials = (CharSequence)
                                          authentication.getCredentials();
-        if (!passwordEncoder.matches(credentials, userDetails.getPassword())) {
+        if (credentials == null) {
             throw new NotAuthenticatedException();
         }
+        final val username = userDetails.getUsername();
+        final val passwordEncoded = userDetails.getPassword();
+        if (credentialsCache.isVerified(username, credentials,
+                                        passwordEncoded)) {
+            return;
+        }
+
+        final val start = System.nanoTime();
+        final val matches = passwordEncoder.matches(credentials,
+                                                    passwordEncoded);
+        credentialsCache.recordBcrypt(System.nanoTime() - start);
+        if (!matches) {
+            throw new NotAuthenticatedException();
+        }
+        credentialsCache.put(username, credentials, passwordEncoded);
     }
 }
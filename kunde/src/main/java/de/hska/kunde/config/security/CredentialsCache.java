@@ -0,0 +1,184 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config.security;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.AllArgsConstructor;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Cache f&uuml;r erfolgreich mit bcrypt &uuml;berpr&uuml;fte Passw&ouml;rter,
+ * damit nicht jeder Request mit BASIC-Authentifizierung die Rechenzeit von
+ * bcrypt kostet. Pro Benutzername wird nur ein HMAC des eingegebenen
+ * Passworts und des gespeicherten bcrypt-Hashwerts gespeichert, d.h. weder
+ * das Passwort noch ein schneller Hashwert davon. Der Schl&uuml;ssel f&uuml;r
+ * den HMAC wird beim Start zuf&auml;llig erzeugt und verl&auml;sst nie den
+ * Hauptspeicher. Nach einer &Auml;nderung des Passworts passt der HMAC nicht
+ * mehr, zus&auml;tzlich werden Eintr&auml;ge bei &Auml;nderungen am Account
+ * explizit entfernt. Die Kennzahlen sind unter <code>/admin/metrics</code>
+ * abrufbar.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+public class CredentialsCache implements PublicMetrics {
+    private static final String METRIC_PREFIX = "auth.";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+    private static final char SEPARATOR = '\u0000';
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final Map<String, Eintrag> eintraege = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> mac;
+    private final long ttlNanos;
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bcryptCount = new LongAdder();
+    private final LongAdder bcryptNanos = new LongAdder();
+
+    CredentialsCache(@Value("${auth.cache.ttl:300}") long ttl,
+                     @Value("${auth.cache.maxSize:10000}") int maxSize) {
+        final val key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        final val keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                final Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+                instance.init(keySpec);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        ttlNanos = SECONDS.toNanos(ttl);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Abfrage, ob ein Passwort f&uuml;r einen Benutzernamen k&uuml;rzlich
+     * erfolgreich &uuml;berpr&uuml;ft wurde
+     * @param username Der Benutzername
+     * @param password Das eingegebene Passwort
+     * @param passwordEncoded Der gespeicherte bcrypt-Hashwert
+     * @return true, falls bcrypt nicht erneut aufgerufen werden muss
+     */
+    boolean isVerified(String username, CharSequence password,
+                       String passwordEncoded) {
+        final val eintrag = eintraege.get(username);
+        if (eintrag == null || eintrag.expires - System.nanoTime() < 0
+            || !MessageDigest.isEqual(eintrag.hmac,
+                                      hmac(password, passwordEncoded))) {
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Ein erfolgreich &uuml;berpr&uuml;ftes Passwort eintragen. Bei vollem
+     * Cache werden zuerst die abgelaufenen Eintr&auml;ge entfernt; gibt es
+     * danach keinen Platz, wird nicht eingetragen.
+     * @param username Der Benutzername
+     * @param password Das eingegebene Passwort
+     * @param passwordEncoded Der gespeicherte bcrypt-Hashwert
+     */
+    void put(String username, CharSequence password, String passwordEncoded) {
+        if (eintraege.size() >= maxSize && !eintraege.containsKey(username)) {
+            final val now = System.nanoTime();
+            eintraege.values().removeIf(e -> e.expires - now < 0);
+            if (eintraege.size() >= maxSize) {
+                return;
+            }
+        }
+        eintraege.put(username,
+                      new Eintrag(hmac(password, passwordEncoded),
+                                  System.nanoTime() + ttlNanos));
+    }
+
+    /**
+     * Den Eintrag zu einem Benutzernamen entfernen, z.B. nach einer
+     * &Auml;nderung des Passworts oder der Rollen
+     * @param username Der Benutzername
+     */
+    public void evict(String username) {
+        eintraege.remove(username);
+    }
+
+    /**
+     * Die Rechenzeit eines Aufrufs von bcrypt registrieren
+     * @param nanos Die Rechenzeit in Nanosekunden
+     */
+    void recordBcrypt(long nanos) {
+        bcryptCount.increment();
+        bcryptNanos.add(nanos);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final val hitCount = hits.sum();
+        final val total = hitCount + misses.sum();
+        final val count = bcryptCount.sum();
+        final val nanos = bcryptNanos.sum();
+        return asList(
+            new Metric<>(METRIC_PREFIX + "cache.size", eintraege.size()),
+            new Metric<>(METRIC_PREFIX + "cache.hits", hitCount),
+            new Metric<>(METRIC_PREFIX + "cache.misses", total - hitCount),
+            new Metric<>(METRIC_PREFIX + "cache.hitRatio",
+                         total == 0 ? 0 : (double) hitCount / total),
+            new Metric<>(METRIC_PREFIX + "bcrypt.count", count),
+            new Metric<>(METRIC_PREFIX + "bcrypt.time.total",
+                         NANOSECONDS.toMillis(nanos)),
+            new Metric<>(METRIC_PREFIX + "bcrypt.time.mean",
+                         count == 0 ? 0 : nanos / NANOS_PER_MILLI / count));
+    }
+
+    private byte[] hmac(CharSequence password, String passwordEncoded) {
+        final val input = new StringBuilder(password.length()
+                                            + passwordEncoded.length() + 1)
+            .append(password)
+            .append(SEPARATOR)
+            .append(passwordEncoded)
+            .toString();
+        return mac.get().doFinal(input.getBytes(UTF_8));
+    }
+
+    @AllArgsConstructor
+    private static final class Eintrag {
+        private final byte[] hmac;
+        private final long expires;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config.security;
+
+import de.hska.kunde.util.UniqueValueFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Description;
+
+/**
+ * Spring-Konfiguration f&uuml;r den Bloom-Filter &uuml;ber die Benutzernamen
+ * der Accounts.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public interface UsernameFilterConfig {
+    /**
+     * Spring-Bean f&uuml;r den Bloom-Filter &uuml;ber die Benutzernamen aller
+     * Accounts, damit beim Neuanlegen ein neuer Benutzername ohne Zugriff
+     * auf MongoDB erkannt wird.
+     * @param repo Repository, aus dem der Filter aufgebaut wird
+     * @param expectedInsertions Erwartete Anzahl an Benutzernamen
+     * @param fpp Gew&uuml;nschte Falsch-Positiv-Rate, z.B. 0.01
+     * @return Der Filter, der beim Start aus MongoDB aufgebaut wird
+     */
+    @Bean
+    @Description("Bloom-Filter ueber die Benutzernamen aller Accounts")
+    default UniqueValueFilter usernameFilter(
+            AccountRepository repo,
+            @Value("${filter.expectedInsertions:1000000}")
+            long expectedInsertions,
+            @Value("${filter.fpp:0.01}") double fpp) {
+        return new UniqueValueFilter(
+            "filter.account.username",
+            () -> repo.readAllBy()
+                      .map(AccountRepository.UsernameProjection::getUsername),
+            expectedInsertions, fpp);
+    }
+}
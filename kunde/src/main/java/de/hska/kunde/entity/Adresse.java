@@ -16,6 +16,7 @@
  */
 package de.hska.kunde.entity;
 
+import java.io.Serializable;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import lombok.AllArgsConstructor;
@@ -33,7 +34,9 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class Adresse {
+public class Adresse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     public static final String PLZ_PATTERN = "\\d{5}";
     public static final String PLZ_MSG = "{adresse.plz}";
 
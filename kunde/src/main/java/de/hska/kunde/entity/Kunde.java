@@ -56,6 +56,8 @@ import static lombok.AccessLevel.NONE;
 @AllArgsConstructor
 @Builder
 public class Kunde extends Auditable implements Identifiable<ObjectId> {
+    private static final long serialVersionUID = 1L;
+
     public static final String EMAIL_MSG = "{kunde.email.pattern}";
 
     @Id
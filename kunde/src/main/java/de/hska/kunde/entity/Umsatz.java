@@ -16,6 +16,7 @@
  */
 package de.hska.kunde.entity;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.Currency;
 import lombok.AllArgsConstructor;
@@ -31,7 +32,9 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class Umsatz {
+public class Umsatz implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private BigDecimal betrag;
     private Currency waehrung;
 }
@@ -18,14 +18,16 @@ package de.hska.kunde.rest;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import lombok.val;
-import org.bson.types.ObjectId;
 import org.springframework.hateoas.Identifiable;
 import org.springframework.hateoas.ResourceSupport;
+import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.mvc.ResourceAssemblerSupport;
 
 import static java.util.stream.Collectors.toList;
+import static org.springframework.hateoas.Link.REL_SELF;
 
 // ResourceAssemblerSupport aus Spring HATEOAS
 
@@ -39,6 +41,9 @@ import static java.util.stream.Collectors.toList;
  */
 abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
                extends ResourceAssemblerSupport<E, R> {
+    // Template fuer den Link "self" zu einem Objekt, z.B. /kunde/{id}
+    private final LinkTemplate selfTemplate;
+
     /**
      * Basis-Konstruktor f&uuml;r spezifische "ResourceAssembler"
      * gem&auml;&szig; Spring HATEOAS
@@ -47,8 +52,12 @@ abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
      */
     AbstractResourceAssembler(Class<?> controllerClass, Class<R> resourceType) {
         super(controllerClass, resourceType);
+        // Die Annotationen werden nur einmal ausgewertet und nicht wie bei
+        // createResourceWithId() fuer jedes Objekt
+        selfTemplate = new LinkTemplate(controllerClass, REL_SELF)
+                       .slash("{id}");
     }
-    
+
     /**
      * Konvertierung eines (gefundenen) Objektes in eine Resource
      * gem&auml;&szlig; Spring MVC oder Ausl&ouml;sen eines Response mit
@@ -62,12 +71,7 @@ abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
             throw new NotFoundException();
         }
         // Resource-Objekt zzgl. Self-Link mit der id erzeugen
-        if (entity instanceof Identifiable) {
-            @SuppressWarnings("unchecked")
-            final Identifiable<ObjectId> identifiable = (Identifiable) entity;
-            return createResourceWithId(identifiable.getId(), entity);
-        }
-        return instantiateResource(entity);
+        return resourceMapper().apply(entity);
     }
 
     /**
@@ -97,10 +101,77 @@ abstract class AbstractResourceAssembler<E, R extends ResourceSupport>
      */
     List<R> toResources(Stream<E> stream) {
         // collect() ist eine finale Operation auf einem Stream
-        final val list = stream.map(this::toResource).collect(toList());
+        // close() schliesst ggf. den zugrundeliegenden Cursor von MongoDB
+        // Der Basis-URI wird nur einmal fuer die ganze Liste ermittelt
+        final val mapper = resourceMapper();
+        final List<R> list;
+        try (Stream<E> s = stream) {
+            list = s.map(mapper).collect(toList());
+        }
         if (list.isEmpty()) {
             throw new NotFoundException();
         }
         return list;
     }
+
+    /**
+     * Funktion zur Konvertierung von Objekten in Resources, die auch
+     * au&szlig;erhalb des Request-Threads benutzt werden kann, z.B. beim
+     * Streaming mit StreamingResponseBody. Der Basis-URI f&uuml;r die
+     * Self-Links wird dazu einmalig im aufrufenden Request-Thread ermittelt.
+     * @return Funktion zur Konvertierung in eine HATEOAS-Resource
+     */
+    Function<E, R> resourceMapper() {
+        final val baseUri = LinkTemplate.baseUri();
+        return entity -> {
+            final val resource = instantiateResource(entity);
+            if (entity instanceof Identifiable) {
+                final val id = ((Identifiable<?>) entity).getId();
+                resource.add(selfTemplate.expand(baseUri, id));
+            }
+            return resource;
+        };
+    }
+
+    /**
+     * Funktion, die zu einem Objekt den URI f&uuml;r den Link "self"
+     * liefert, z.B. f&uuml;r die direkte Serialisierung ohne Resource-Objekt.
+     * Der Basis-URI wird einmalig im aufrufenden Request-Thread ermittelt.
+     * @return Funktion, die den URI f&uuml;r den Link "self" liefert
+     */
+    Function<E, String> selfHrefMapper() {
+        final val baseUri = LinkTemplate.baseUri();
+        return entity -> selfTemplate.expandHref(
+            baseUri, ((Identifiable<?>) entity).getId());
+    }
+
+    /**
+     * Konvertierung von einem Stream mit (gefundenen) Objekten in eine
+     * kompakte Liste: statt eines Links "self" pro Objekt gibt es nur einen
+     * Link "self" als URI-Template f&uuml;r die ganze Liste, z.B.
+     * <code>.../kunde/{id}</code>, und jedes Objekt enth&auml;lt seine ID.
+     * Der Stream wird dabei <b>geschlossen</b>.
+     * @param stream Das Stream-Objekt
+     * @return Liste von HATEOAS-Resourcen ohne eigene Links
+     */
+    Resources<R> toCompactResources(Stream<E> stream) {
+        final List<R> list;
+        try (Stream<E> s = stream) {
+            list = s.map(this::instantiateCompactResource).collect(toList());
+        }
+        if (list.isEmpty()) {
+            throw new NotFoundException();
+        }
+        return new Resources<>(list,
+                               selfTemplate.toTemplatedLink(
+                                   LinkTemplate.baseUri()));
+    }
+
+    /**
+     * Resource-Objekt ohne Links, aber mit der ID f&uuml;r
+     * toCompactResources() erzeugen
+     * @param entity Gefundenes Objekt
+     * @return HATEOAS-Resource mit ID
+     */
+    protected abstract R instantiateCompactResource(E entity);
 }
@@ -16,29 +16,51 @@
  */
 package de.hska.kunde.rest;
 
-import de.hska.kunde.service.KundeRepository.EmailProjection;
-import de.hska.kunde.service.KundeRepository.NachnameProjection;
 import lombok.val;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.gridfs.GridFSDBFile;
 import com.querydsl.core.types.Predicate;
 import de.hska.kunde.entity.InteresseType;
 import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.service.BatchReport;
+import de.hska.kunde.service.ExportFormat;
+import de.hska.kunde.service.GridFsChunkReader;
+import de.hska.kunde.service.KeysetCursor;
+import de.hska.kunde.service.KeysetSort;
+import de.hska.kunde.service.KundeBatchService;
+import de.hska.kunde.service.KundeChangeCounter;
+import de.hska.kunde.service.KundeExportService;
+import de.hska.kunde.service.KundeFeld;
 import de.hska.kunde.service.KundeService;
+import de.hska.kunde.service.MediaDerivativeService;
 import de.hska.kunde.util.PatchOperation;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
 import javax.validation.Validator;
 import org.apache.logging.log4j.Logger;
 import org.bson.types.ObjectId;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.querydsl.binding.QuerydslPredicate;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -52,22 +74,43 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation
+       .StreamingResponseBody;
 
+import static de.hska.kunde.rest.StreamingResources.APPLICATION_NDJSON;
+import static de.hska.kunde.rest.StreamingResources.APPLICATION_NDJSON_VALUE;
+import static de.hska.kunde.rest.StreamingResources.jsonArray;
+import static de.hska.kunde.rest.StreamingResources.ndjson;
 import static de.hska.kunde.util.Strings.isBlank;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.String.join;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.Link.REL_NEXT;
+import static org.springframework.hateoas.Link.REL_PREVIOUS;
+import static org.springframework.hateoas.MediaTypes.HAL_JSON_VALUE;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
 import static org.springframework.http.HttpHeaders.IF_MATCH;
 import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.VARY;
 import static org.springframework.http.HttpStatus.NOT_MODIFIED;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
-import static org.springframework.http.MediaType.parseMediaType;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.ResponseEntity.created;
 import static org.springframework.http.ResponseEntity.noContent;
 import static org.springframework.http.ResponseEntity.ok;
 import static org.springframework.http.ResponseEntity.status;
+import static org.springframework.web.servlet.support
+              .ServletUriComponentsBuilder.fromCurrentRequest;
 import static org.springframework.web.servlet.support
               .ServletUriComponentsBuilder.fromCurrentRequestUri;
 
@@ -95,14 +138,60 @@ class KundeController {
                                                   + '}';
     private static final String NEWLINE = System.getProperty("line.separator");
 
+    // Request-Parameter fuer die Keyset-Pagination
+    private static final String LIMIT_PARAM = "limit";
+    private static final String CURSOR_PARAM = "cursor";
+    private static final String SORT_PARAM = "sort";
+
+    // Default fuer die Anzahl der Vorschlaege bei der Autovervollstaendigung
+    private static final String PREFIX_LIMIT = "10";
+
+    // Request-Parameter fuer ein gestreamtes JSON-Array
+    private static final String STREAM_PARAM = "stream";
+
+    // Request-Parameter und Media Type fuer den Export
+    private static final String FORMAT_PARAM = "format";
+    private static final String FIELDS_PARAM = "fields";
+    private static final String AFTER_PARAM = "after";
+    private static final MediaType APPLICATION_GZIP =
+        MediaType.valueOf("application/gzip");
+
+    // Binaerformate fuer interne Aufrufe, z.B. durch bestellung
+    private static final String APPLICATION_SMILE_VALUE =
+        "application/x-jackson-smile";
+    private static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+    // Request-Parameter fuer verkleinerte Bilder
+    private static final String SIZE_PARAM = "size";
+
+    // Request-Parameter fuer eine Liste mit einem templated Link "self"
+    private static final String COMPACT_PARAM = "compact";
+
+    // Die Request-Parameter fields, compact, stream und limit waehlen jeweils
+    // eine eigene Methode fuer die Suche und schliessen sich gegenseitig aus.
+    // Sonst waere die Zuordnung bei zwei Parametern mehrdeutig (500).
+    private static final String NO_FIELDS = "!" + FIELDS_PARAM;
+    private static final String NO_COMPACT = "!" + COMPACT_PARAM;
+    private static final String NO_STREAM = "!" + STREAM_PARAM;
+    private static final String NO_LIMIT = "!" + LIMIT_PARAM;
+    private static final List<String> LIST_PARAMS =
+        asList(FIELDS_PARAM, COMPACT_PARAM, STREAM_PARAM, LIMIT_PARAM);
+
     private static final Method FIND;
     private static final Method SAVE;
     private static final Method UPDATE;
     private static final Method DELETE_METHOD;
+
+    // Die Pfade fuer die Atom-Links werden nur einmal ermittelt
+    private static final LinkTemplate LIST_LINK;
+    private static final LinkTemplate ADD_LINK;
+    private static final LinkTemplate UPDATE_LINK;
+    private static final LinkTemplate REMOVE_LINK;
     static {
         try {
             FIND = KundeController.class.getDeclaredMethod("find",
-                                                           Predicate.class);
+                                                           Predicate.class,
+                                                           WebRequest.class);
             SAVE = KundeController.class.getDeclaredMethod("save", Kunde.class);
             UPDATE = KundeController.class.getDeclaredMethod("update",
                                                              ObjectId.class,
@@ -113,22 +202,55 @@ class KundeController {
         } catch (NoSuchMethodException e) {
             throw new IllegalStateException(e);
         }
+        LIST_LINK = new LinkTemplate(KundeController.class, FIND, "list");
+        ADD_LINK = new LinkTemplate(KundeController.class, SAVE, "add");
+        UPDATE_LINK = new LinkTemplate(KundeController.class, UPDATE,
+                                       "update");
+        REMOVE_LINK = new LinkTemplate(KundeController.class, DELETE_METHOD,
+                                       "remove");
     }
 
     private final KundeService service;
+    private final KundeBatchService batchService;
+    private final KundeExportService exportService;
+    private final GridFsChunkReader chunkReader;
+    private final MediaDerivativeService derivatives;
+    private final KundeChangeCounter changeCounter;
     private final KundeResourceAssembler assembler;
     private final Validator validator;
+    private final ObjectMapper objectMapper;
     private final Logger log;
+    private final int maxLimit;
+    private final CacheControl mediaCacheControl;
 
     // Constructor Injection
     KundeController(KundeService service,
+                    KundeBatchService batchService,
+                    KundeExportService exportService,
+                    GridFsChunkReader chunkReader,
+                    MediaDerivativeService derivatives,
+                    KundeChangeCounter changeCounter,
                     KundeResourceAssembler assembler,
                     Validator validator,
-                    Logger log) {
+                    @Qualifier("_halObjectMapper") ObjectMapper objectMapper,
+                    Logger log,
+                    @Value("${kunde.page.maxLimit:100}") int maxLimit,
+                    @Value("${media.cache.maxAge:60}") long mediaMaxAge) {
         this.service = service;
+        this.batchService = batchService;
+        this.exportService = exportService;
+        this.chunkReader = chunkReader;
+        this.derivatives = derivatives;
+        this.changeCounter = changeCounter;
         this.assembler = assembler;
         this.validator = validator;
+        this.objectMapper = objectMapper;
         this.log = log;
+        this.maxLimit = maxLimit;
+        // Die Dateien erfordern eine Authentifizierung, d.h. kein Caching
+        // durch das Gateway oder andere Proxies
+        mediaCacheControl = CacheControl.maxAge(mediaMaxAge, SECONDS)
+                                        .cachePrivate();
     }
 
     /**
@@ -136,106 +258,472 @@ class KundeController {
      * Statuscodes:
      * <ul>
      * <li>200 falls es einen Kunden zur gesuchten ID gibt
+     * <li>304 falls die Version laut If-None-Match unver&auml;ndert ist. Dazu
+     *     wird nur die Versionsnummer aus MongoDB gelesen.
+     * <li>400 bei einem unzul&auml;ssigen Feld in "fields"
      * <li>404 falls es keinen Kunden zur gesuchten ID gibt.
      * </ul>
      * @param id ID zum gesuchten Kunden.
+     * @param fields Optionale kommaseparierte Liste der zu sendenden Felder,
+     *               z.B. "nachname,email"
      * @param versionHeader If-none-match im Request-Header
-     * @return Gefundener Kunde mit Atom-Links
+     * @return Gefundener Kunde mit Atom-Links und der Version als ETag
      */
-    @GetMapping(ID_URI_TEMPLATE)
+    // KundeJson ist keine ResourceSupport: HAL als erster Media Type, falls
+    // der Client kein bestimmtes Format verlangt
+    @GetMapping(path = ID_URI_TEMPLATE,
+                produces = {HAL_JSON_VALUE, APPLICATION_JSON_VALUE,
+                            APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE})
     // Eine der beiden Rollen ist erforderlich
     // @Secured({"ROLE_ADMIN", "ROLE_KUNDE"})
-    HttpEntity<KundeResource> findById(@PathVariable ObjectId id,
-                                       @RequestHeader(value = IF_NONE_MATCH)
-                                       @SuppressWarnings(
-                                           "OptionalUsedAsFieldOrParameterType")
-                                       Optional<String> versionHeader) {
-        final val kunde = service.findById(id)
-                                 .orElseThrow(NotFoundException::new);
-
+    HttpEntity<KundeJson> findById(@PathVariable ObjectId id,
+                                   @RequestParam(value = FIELDS_PARAM,
+                                                 required = false)
+                                   String fields,
+                                   @RequestHeader(value = IF_NONE_MATCH)
+                                   @SuppressWarnings(
+                                       "OptionalUsedAsFieldOrParameterType")
+                                   Optional<String> versionHeader) {
+        final val felder = felder(fields);
         // Versionsnr bei If-None-Match ueberpruefen, ggf. Statuscode 304
         // http://docs.spring.io/spring-data/rest/docs/current/reference/html...
         // .../#headers.better-client-architecture
-        final val version = kunde.getVersion().toString();
-        final val tmpVersion = versionHeader.filter(v -> v.equals(version));
-        if (tmpVersion.isPresent()) {
-            return status(NOT_MODIFIED).build();
-        }
-
-        // Ressource mit Atom-Links
-        final val resource = assembler.toResource(kunde);
-        final val listLink = linkTo(KundeController.class, FIND)
-                             .withRel("list");
-        final val addLink = linkTo(KundeController.class, SAVE)
-                            .withRel("add");
-        final val updateLink =
-            linkTo(KundeController.class, UPDATE, id, null).withRel("update");
-        final val removeLink =
-            linkTo(KundeController.class, DELETE_METHOD, id, null)
-            .withRel("remove");
-        resource.add(listLink, addLink, updateLink, removeLink);
+        // Beim Polling ist die Version meistens unveraendert: deshalb wird
+        // zuerst nur die Versionsnr gelesen
+        if (versionHeader.isPresent()) {
+            final val aktuell = service.findVersionById(id)
+                                       .orElseThrow(NotFoundException::new);
+            if (isVersion(versionHeader.get(), aktuell)) {
+                return status(NOT_MODIFIED).eTag(etag(aktuell))
+                                           .varyBy(ACCEPT)
+                                           .build();
+            }
+        }
+
+        final val kunde = service.findById(id)
+                                 .orElseThrow(NotFoundException::new);
+
+        // Kunde mit Atom-Links ohne Kopie in ein KundeResource-Objekt
+        final val baseUri = LinkTemplate.baseUri();
+        final Link[] links = {
+            LIST_LINK.expand(baseUri), ADD_LINK.expand(baseUri),
+            UPDATE_LINK.expand(baseUri, id), REMOVE_LINK.expand(baseUri, id)
+        };
+        // Der Kunde kommt i.d.R. aus dem Cache: "fields" reduziert deshalb
+        // nur die Daten fuer den Client, aber nicht die Abfrage in MongoDB
+        final val json = new KundeJson(kunde,
+                                       assembler.selfHrefMapper().apply(kunde),
+                                       links, felder);
 
         // Entity Tag: Aenderungen an der angeforderten Ressource erkennen
         // Client: Spaetere GET-Requests mit Header Feld "If-None-Match"
         //         ggf. Response mit Statuscode NOT MODIFIED (s.o.)
-        return ok().eTag("\"" + version + "\"").body(resource);
+        return ok().eTag(etag(kunde.getVersion()))
+                   .varyBy(ACCEPT)
+                   .body(json);
+    }
+
+    // ETag aus der Versionsnr fuer GET, PUT und PATCH, damit ein Client das
+    // ETag unveraendert bei If-Match zuruecksenden kann. JSON, Smile und
+    // CBOR werden durch "Vary: Accept" unterschieden, eine Auswahl mit
+    // "fields" durch die URI.
+    private static String etag(Integer version) {
+        return "\"" + version + '"';
+    }
+
+    // Felder gemaess "fields" oder null fuer alle Felder
+    private Set<KundeFeld> felder(String fields) {
+        if (isBlank(fields)) {
+            return null;
+        }
+        try {
+            return KundeFeld.parse(fields);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ungueltige Felder: {}", fields);
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    // If-None-Match mit der Versionsnr, wahlweise als ETag in Anfuehrungs-
+    // zeichen wie in der Response
+    private static boolean isVersion(String ifNoneMatch, Integer version) {
+        final val tag = ifNoneMatch.startsWith("W/")
+                        ? ifNoneMatch.substring(2)
+                        : ifNoneMatch;
+        final val versionStr = version.toString();
+        return tag.equals(versionStr) || tag.equals('"' + versionStr + '"');
     }
 
     /**
-     * Kunden anhand von Suchkriterien ermitteln
+     * Kunden anhand von Suchkriterien ermitteln. Solange sich kein Kunde
+     * ge&auml;ndert hat, wird ein bedingter Request mit 304 beantwortet.
+     * Statuscodes:
+     * <ul>
+     * <li>200 falls es mindestens einen Kunden gibt
+     * <li>400 bei einer Kombination von "fields", "compact", "stream" und
+     *     "limit"
+     * <li>404 falls es keinen Kunden zu den Suchkriterien gibt
+     * </ul>
      * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param request Der Request mit If-None-Match
      * @return Gefundene Kunden
      */
+    // Auch bei mehreren Parametern fuer die Liste, weil dann keine der
+    // spezifischen Methoden passt
     @GetMapping
     List<KundeResource> find(@QuerydslPredicate(root = Kunde.class)
-                             Predicate predicate) {
+                             Predicate predicate,
+                             WebRequest request) {
+        checkListParams(request);
+        if (checkNotModified(request)) {
+            return null;
+        }
         final val kunden = service.find(predicate);
         return assembler.toResources(kunden);
     }
 
+    /**
+     * Kunden anhand von Suchkriterien ermitteln, wobei nur die
+     * ausgew&auml;hlten Felder aus MongoDB gelesen und gesendet werden, z.B.
+     * <code>GET /kunde?fields=nachname,email</code>. Die ID ist durch den
+     * Link "self" immer enthalten.
+     * Statuscodes:
+     * <ul>
+     * <li>200 falls es mindestens einen Kunden gibt
+     * <li>400 bei einem unzul&auml;ssigen Feld
+     * <li>404 falls es keinen Kunden zu den Suchkriterien gibt
+     * </ul>
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param fields Kommaseparierte Liste der Felder, z.B. "nachname,email"
+     * @param request Der Request mit If-None-Match
+     * @return Gefundene Kunden mit den ausgew&auml;hlten Feldern
+     */
+    @GetMapping(params = {FIELDS_PARAM, NO_COMPACT, NO_STREAM, NO_LIMIT})
+    List<KundeJson> findFields(@QuerydslPredicate(root = Kunde.class)
+                               Predicate predicate,
+                               @RequestParam(FIELDS_PARAM) String fields,
+                               WebRequest request) {
+        final val felder = felder(fields);
+        if (checkNotModified(request)) {
+            return null;
+        }
+
+        final List<KundeJson> list;
+        try (Stream<Kunde> kunden = felder == null
+                                    ? service.find(predicate)
+                                    : service.find(predicate, felder)) {
+            list = kunden.map(assembler.jsonMapper(felder)).collect(toList());
+        }
+        if (list.isEmpty()) {
+            throw new NotFoundException();
+        }
+        return list;
+    }
+
+    /**
+     * Kunden anhand von Suchkriterien als kompakte Liste ermitteln: statt
+     * eines Links "self" pro Kunde gibt es nur einen Link "self" als
+     * URI-Template <code>.../kunde/{id}</code> und jeder Kunde enth&auml;lt
+     * seine ID.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param request Der Request mit If-None-Match
+     * @return Gefundene Kunden mit einem templated Link "self"
+     */
+    @GetMapping(params = {COMPACT_PARAM, NO_FIELDS, NO_STREAM, NO_LIMIT})
+    HttpEntity<Resources<KundeResource>> findCompact(
+        @QuerydslPredicate(root = Kunde.class) Predicate predicate,
+        WebRequest request) {
+        if (checkNotModified(request)) {
+            return null;
+        }
+        final val kunden = service.find(predicate);
+        return ok(assembler.toCompactResources(kunden));
+    }
+
+    /**
+     * Kunden anhand von Suchkriterien als NDJSON streamen, d.h. jeder Kunde
+     * wird als eigene Zeile gesendet, sobald er aus MongoDB gelesen wurde.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param request Der Request mit If-None-Match
+     * @return Gefundene Kunden als NDJSON
+     */
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> findNdjson(
+        @QuerydslPredicate(root = Kunde.class) Predicate predicate,
+        WebRequest request) {
+        checkListParams(request);
+        if (checkNotModified(request)) {
+            return null;
+        }
+        final val body = ndjson(service.find(predicate),
+                                assembler.jsonMapper(), objectMapper);
+        return ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Kunden anhand von Suchkriterien als JSON-Array streamen, das in Chunks
+     * gesendet wird, z.B. <code>GET /kunde?stream</code>.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param request Der Request mit If-None-Match
+     * @return Gefundene Kunden als JSON-Array
+     */
+    @GetMapping(params = {STREAM_PARAM, NO_FIELDS, NO_COMPACT, NO_LIMIT})
+    ResponseEntity<StreamingResponseBody> findStreaming(
+        @QuerydslPredicate(root = Kunde.class) Predicate predicate,
+        WebRequest request) {
+        if (checkNotModified(request)) {
+            return null;
+        }
+        final val body = jsonArray(service.find(predicate),
+                                   assembler.jsonMapper(), objectMapper);
+        return ok().contentType(APPLICATION_JSON_UTF8).body(body);
+    }
+
+    /**
+     * Kunden anhand von Suchkriterien als GZIP-komprimiertes NDJSON oder CSV
+     * exportieren, z.B. <code>GET /kunde/export?format=csv&amp;fields=
+     * nachname,email,adresse</code>. Die Kunden sind nach der ID sortiert und
+     * die ID ist immer das erste Feld. Ein abgebrochener Export wird mit der
+     * zuletzt empfangenen ID im Request-Parameter "after" fortgesetzt.
+     * Statuscodes:
+     * <ul>
+     * <li>200 mit der komprimierten Datei, ggf. ohne Kunden
+     * <li>400 bei einem unzul&auml;ssigen Format oder Feld
+     * </ul>
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param format "ndjson" (Default) oder "csv"
+     * @param fields Kommaseparierte Liste mit Feldern; Default: alle Felder
+     * @param after ID des zuletzt empfangenen Kunden
+     * @return Die Kunden als GZIP-Datei
+     */
+    @GetMapping("/export")
+    ResponseEntity<StreamingResponseBody> export(
+        @QuerydslPredicate(root = Kunde.class) Predicate predicate,
+        @RequestParam(value = FORMAT_PARAM, defaultValue = "ndjson")
+        String format,
+        @RequestParam(value = FIELDS_PARAM, required = false) String fields,
+        @RequestParam(value = AFTER_PARAM, required = false) ObjectId after) {
+        final ExportFormat exportFormat;
+        final Set<KundeFeld> felder;
+        try {
+            exportFormat = ExportFormat.build(format);
+            felder = KundeFeld.parse(fields);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ungueltiger Export: format={}, fields={}", format,
+                      fields);
+            throw new BadRequestException(e.getMessage());
+        }
+
+        final val filename = "kunden." + exportFormat.getExtension() + ".gz";
+        final StreamingResponseBody body = out ->
+            exportService.export(predicate, exportFormat, felder, after, out);
+        return ok().contentType(APPLICATION_GZIP)
+                   .header(CONTENT_DISPOSITION,
+                           "attachment; filename=\"" + filename + '"')
+                   .body(body);
+    }
+
+    /**
+     * Eine Seite mit Kunden anhand von Suchkriterien ermitteln
+     * (Keyset-Pagination). Die Links "next" und "prev" enthalten jeweils
+     * einen undurchsichtigen Cursor f&uuml;r die n&auml;chste bzw. vorherige
+     * Seite.
+     * Statuscodes:
+     * <ul>
+     * <li>200 falls es auf der Seite mindestens einen Kunden gibt
+     * <li>400 bei einem ung&uuml;ltigen Cursor oder Sortierkriterium
+     * <li>404 falls es keinen Kunden zu den Suchkriterien gibt
+     * </ul>
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @param limit Maximale Anzahl an Kunden pro Seite; nach oben begrenzt
+     *              durch die Property kunde.page.maxLimit
+     * @param cursor Cursor aus einem Link "next" oder "prev"
+     * @param sort Sortierkriterium: "id" (Default) oder "nachname"
+     * @param request Der Request mit If-None-Match
+     * @return Gefundene Kunden mit Links zum Bl&auml;ttern
+     */
+    @GetMapping(params = {LIMIT_PARAM, NO_FIELDS, NO_COMPACT, NO_STREAM})
+    HttpEntity<Resources<KundeResource>> findPage(
+        @QuerydslPredicate(root = Kunde.class) Predicate predicate,
+        @RequestParam(LIMIT_PARAM) int limit,
+        @RequestParam(value = CURSOR_PARAM, required = false) String cursor,
+        @RequestParam(value = SORT_PARAM, defaultValue = "id") String sort,
+        WebRequest request) {
+        final KeysetSort keysetSort;
+        final KeysetCursor keysetCursor;
+        try {
+            keysetSort = KeysetSort.build(sort);
+            keysetCursor = isBlank(cursor) ? null : KeysetCursor.decode(cursor);
+            if (keysetCursor != null && keysetCursor.getSort() != keysetSort) {
+                throw new IllegalArgumentException(
+                    "Der Cursor passt nicht zum Sortierkriterium " + sort);
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Ungueltige Pagination: sort={}, cursor={}", sort,
+                      cursor);
+            throw new BadRequestException(e.getMessage());
+        }
+        final val pageSize = max(1, min(limit, maxLimit));
+        if (checkNotModified(request)) {
+            return null;
+        }
+
+        final val page = service.find(predicate, keysetSort, keysetCursor,
+                                      pageSize);
+        if (page.getContent().isEmpty() && keysetCursor == null) {
+            throw new NotFoundException();
+        }
+
+        final val content = page.getContent()
+                                .stream()
+                                .map(assembler.resourceMapper())
+                                .collect(toList());
+        final val resources = new Resources<KundeResource>(content);
+        resources.add(new Link(fromCurrentRequest().build().toUriString()));
+        page.getNext().ifPresent(next ->
+            resources.add(pageLink(next, pageSize, REL_NEXT)));
+        page.getPrev().ifPresent(prev ->
+            resources.add(pageLink(prev, pageSize, REL_PREVIOUS)));
+        return ok(resources);
+    }
+
+    // Hoechstens einer der Request-Parameter, die eine eigene Darstellung
+    // der Liste waehlen
+    private static void checkListParams(WebRequest request) {
+        final val params = LIST_PARAMS.stream()
+                                      .filter(p ->
+                                          request.getParameter(p) != null)
+                                      .collect(toList());
+        if (params.size() > 1) {
+            throw new BadRequestException(
+                "Nicht kombinierbare Parameter: " + join(", ", params));
+        }
+    }
+
+    // Schwaches ETag fuer eine Suche aus dem Aenderungszaehler, den
+    // sortierten Request-Parametern, d.h. dem normalisierten Praedikat, und
+    // dem Header Accept. Dazu "Vary: Accept" wie bei findById().
+    // checkNotModified() setzt das ETag bzw. den Statuscode 304, ohne dass
+    // Kunden gelesen werden.
+    private boolean checkNotModified(WebRequest request) {
+        final val query = new TreeMap<String, String[]>(
+            request.getParameterMap())
+            .entrySet()
+            .stream()
+            .map(param -> param.getKey() + '=' + join(",", param.getValue()))
+            .collect(joining("&"));
+        // Die Darstellung, z.B. HAL oder NDJSON, waehlt der Client mit Accept
+        final val accept = Objects.toString(request.getHeader(ACCEPT), "");
+        final val etag = "W/\"" + Long.toHexString(changeCounter.get()) + '-'
+                         + Integer.toHexString(query.hashCode()) + '-'
+                         + Integer.toHexString(accept.hashCode()) + '"';
+        if (request instanceof ServletWebRequest) {
+            // Auch beim Statuscode 304
+            final val response = ((ServletWebRequest) request).getResponse();
+            if (response != null) {
+                response.addHeader(VARY, ACCEPT);
+            }
+        }
+        return request.checkNotModified(etag);
+    }
+
+    private static Link pageLink(KeysetCursor cursor, int limit, String rel) {
+        // Die Suchkriterien und das Sortierkriterium bleiben erhalten
+        final val href = fromCurrentRequest()
+                         .replaceQueryParam(CURSOR_PARAM, cursor.encode())
+                         .replaceQueryParam(LIMIT_PARAM, limit)
+                         .build()
+                         .toUriString();
+        return new Link(href, rel);
+    }
+
     /**
      * Nachnamen (ohne Duplikate) anhand eines Pr&auml;fix ermitteln
      * @param prefix Pr&auml;fix f&uuml;r Nachnamen
+     * @param limit Maximale Anzahl an Nachnamen
      * @return Gefundene Nachnamen
      */
     @GetMapping("/prefix/nachname/{prefix}")
-    List<String> findNachnamen(@PathVariable String prefix) {
-        final val nachnamen = new ArrayList<String>();
-        service.findNachnamenByPrefix(prefix)
-               .map(NachnameProjection::getNachname)
-               .filter(n -> !nachnamen.contains(n))
-               .forEach(nachnamen::add);
-        return nachnamen;
+    List<String> findNachnamen(@PathVariable String prefix,
+                               @RequestParam(value = LIMIT_PARAM,
+                                             defaultValue = PREFIX_LIMIT)
+                               int limit) {
+        return service.findNachnamenByPrefix(prefix, prefixLimit(limit));
     }
 
     /**
-     * Nachnamen anhand eines Pr&auml;fix ermitteln
-     * @param prefix Pr&auml;fix f&uuml;r Nachnamen
-     * @return Gefundene Nachnamen
+     * Emailadressen anhand eines Pr&auml;fix ermitteln
+     * @param prefix Pr&auml;fix f&uuml;r Emailadressen
+     * @param limit Maximale Anzahl an Emailadressen
+     * @return Gefundene Emailadressen
      */
     @GetMapping("/prefix/email/{prefix}")
-    List<String> findEmails(@PathVariable String prefix) {
-        return service.findEmailsByPrefix(prefix)
-                      .map(EmailProjection::getEmail)
-                      .collect(toList());
+    List<String> findEmails(@PathVariable String prefix,
+                            @RequestParam(value = LIMIT_PARAM,
+                                          defaultValue = PREFIX_LIMIT)
+                            int limit) {
+        return service.findEmailsByPrefix(prefix, prefixLimit(limit));
+    }
+
+    // Wie bei der Pagination begrenzt durch kunde.page.maxLimit
+    private int prefixLimit(int limit) {
+        return max(1, min(limit, maxLimit));
     }
 
     /**
      * REST-Schnittstelle, um multimediale Daten zu einem Kunden mit gegebener
-     * Kunde-ID herunterzuladen
+     * Kunde-ID herunterzuladen. Mit dem Header "Range" k&ouml;nnen ein oder
+     * mehrere Bytebereiche angefordert werden, z.B. beim Positionieren in
+     * einem Video oder beim Fortsetzen eines abgebrochenen Downloads.
+     * Bedingte Requests f&uuml;r das Original werden anhand der Metadaten im
+     * Cache beantwortet, d.h. ohne Zugriff auf MongoDB.
+     * Statuscodes:
+     * <ul>
+     * <li>200 mit der ganzen Datei
+     * <li>206 mit den angeforderten Bereichen
+     * <li>304 falls die Datei laut "If-None-Match" bzw.
+     *     "If-Modified-Since" unver&auml;ndert ist
+     * <li>400 bei einer nicht konfigurierten Gr&ouml;&szlig;e
+     * <li>404 falls es keinen Kunden oder keine Datei gibt
+     * <li>416 falls kein Bereich innerhalb der Datei liegt
+     * </ul>
      * @param id Kunde-ID
-     * @return Das Medium als Bytestrom
+     * @param size Maximale Breite und H&ouml;he eines Bildes in Pixel, z.B.
+     *             64 f&uuml;r einen Avatar. Solange die verkleinerte Variante
+     *             noch nicht erzeugt ist, wird das Original geliefert.
+     * @param headers Die Header des Requests, z.B. "Range", "If-Range" und
+     *                "If-None-Match"
+     * @return Das Medium bzw. die Bereiche als Bytestrom
      */
     @GetMapping(ID_URI_TEMPLATE + "/media")
-    HttpEntity<InputStreamResource> download(@PathVariable ObjectId id)
-                                    throws IOException {
-        final val gridFsResource = service.findMedia(id)
-                                          .orElseThrow(NotFoundException::new);
-        final val length = gridFsResource.contentLength();
-        final val mediaType = parseMediaType(gridFsResource.getContentType());
-        return ok().contentLength(length)
-                   .contentType(mediaType)
-                   .body(gridFsResource);
+    ResponseEntity<StreamingResponseBody> download(
+            @PathVariable ObjectId id,
+            @RequestParam(value = SIZE_PARAM, required = false) Integer size,
+            @RequestHeader HttpHeaders headers) {
+        if (size == null && MediaResponses.isConditional(headers)) {
+            final val notModified = service.findMediaMetadata(id).flatMap(
+                metadata -> MediaResponses.notModified(metadata, headers,
+                                                       mediaCacheControl));
+            if (notModified.isPresent()) {
+                return notModified.get();
+            }
+        }
+
+        final val original = service.findMedia(id)
+                                    .orElseThrow(NotFoundException::new);
+        if (size == null) {
+            return MediaResponses.of(original, headers, mediaCacheControl,
+                                     chunkReader);
+        }
+
+        final GridFSDBFile file;
+        try {
+            file = derivatives.find(original, size).orElse(original);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        return MediaResponses.of(file, headers, mediaCacheControl,
+                                 chunkReader);
     }
 
     /**
@@ -260,6 +748,26 @@ class KundeController {
         return created(uri).build();
     }
 
+    /**
+     * REST-Schnittstelle f&uuml;r den Massenimport von Kunden, z.B. beim
+     * Onboarding eines Partners. Die Kunden werden als JSON-Array oder als
+     * NDJSON gesendet und in Chunks verarbeitet. Es werden keine
+     * Begr&uuml;&szlig;ungsmails verschickt.
+     * Statuscodes:
+     * <ul>
+     * <li>200 mit einem Bericht, der f&uuml;r jeden Datensatz die neue ID
+     *     oder die Fehlermeldungen enth&auml;lt
+     * </ul>
+     * @param body JSON-Array oder NDJSON mit den neuen Kunden
+     * @return Bericht &uuml;ber den Massenimport
+     * @throws IOException falls der Request-Body nicht gelesen werden kann
+     */
+    @PostMapping(path = "/batch",
+                 consumes = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    BatchReport saveBatch(InputStream body) throws IOException {
+        return batchService.save(body);
+    }
+
     /**
      * REST-Schnittstelle, um einen Kunden durch HTTP PUT zu aktualisieren.
      * Statuscodes:
@@ -296,7 +804,7 @@ class KundeController {
         // Entity Tag: Aenderungen an der angeforderten Ressource erkennen
         // Client: Spaetere GET-Requests mit Header Feld "If-None-Match"
         //         ggf. Response mit Statuscode NOT MODIFIED (s.o.)
-        return noContent().eTag("\"" + aktualisierterKunde.getVersion() + "\"")
+        return noContent().eTag(etag(aktualisierterKunde.getVersion()))
                           .build();
     }
 
@@ -350,7 +858,7 @@ class KundeController {
         // Entity Tag: Aenderungen an der angeforderten Ressource erkennen
         // Client: Spaetere GET-Requests mit Header Feld "If-None-Match"
         //         ggf. Response mit Statuscode NOT MODIFIED (s.o.)
-        return noContent().eTag("\"" + aktualisierterKunde.getVersion() + "\"")
+        return noContent().eTag(etag(aktualisierterKunde.getVersion()))
                           .build();
     }
 
@@ -0,0 +1,55 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.service.KundeFeld;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.hateoas.Link;
+
+/**
+ * Ein Kunde zzgl. seiner Atom-Links f&uuml;r die direkte Serialisierung
+ * durch KundeSerializer. Im Gegensatz zu KundeResource werden die Daten des
+ * Kunden nicht kopiert und f&uuml;r den Link "self" gen&uuml;gt der URI.
+ * Optional werden nur ausgew&auml;hlte Felder serialisiert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@JsonSerialize(using = KundeSerializer.class)
+@Getter
+@AllArgsConstructor
+@ToString
+@SuppressFBWarnings({"EI_EXPOSE_REP", "EI_EXPOSE_REP2"})
+final class KundeJson {
+    static final Link[] NO_LINKS = {};
+
+    private final Kunde kunde;
+    private final String selfHref;
+    // Weitere Links, z.B. "update" und "remove" bei der Suche anhand der ID
+    private final Link[] links;
+    // Ausgewaehlte Felder oder null fuer alle Felder
+    private final Set<KundeFeld> felder;
+
+    KundeJson(Kunde kunde, String selfHref, Link[] links) {
+        this(kunde, selfHref, links, null);
+    }
+}
@@ -16,6 +16,8 @@
  */
 package de.hska.kunde.rest;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import de.hska.kunde.entity.Adresse;
 import de.hska.kunde.entity.FamilienstandType;
 import de.hska.kunde.entity.GeschlechtType;
@@ -35,6 +37,8 @@ import lombok.Setter;
 import lombok.ToString;
 import org.springframework.hateoas.ResourceSupport;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
  * Resource-Objekt f&uuml;r ein Kunden-Objekt gem&auml;&szlig; Spring HATEOS.
  * <img src="../../../../../images/KundeResource.png" alt="Klassendiagramm">
@@ -51,8 +55,12 @@ import org.springframework.hateoas.ResourceSupport;
 @Builder
 @SuppressFBWarnings("EQ_DOESNT_OVERRIDE_EQUALS")
 class KundeResource extends ResourceSupport {
-    // id wird durch den Link "self" bereitgestellt
-    // private ObjectId id
+    // id wird durch den Link "self" bereitgestellt, nur bei einer kompakten
+    // Liste mit dem URI-Template .../kunde/{id} als eigenes Attribut.
+    // getId() ist in ResourceSupport bereits fuer den Link "self" definiert.
+    @JsonProperty("id")
+    @JsonInclude(NON_NULL)
+    private String kundeId;
 
     private String nachname;
     private String email;
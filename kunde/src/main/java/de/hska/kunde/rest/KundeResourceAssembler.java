@@ -17,6 +17,10 @@
 package de.hska.kunde.rest;
 
 import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.service.KundeFeld;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.val;
 import org.springframework.stereotype.Component;
 
 import static de.hska.kunde.rest.KundeResource.of;
@@ -32,4 +36,33 @@ import static de.hska.kunde.rest.KundeResource.of;
     protected KundeResource instantiateResource(Kunde kunde) {
         return of(kunde);
     }
+
+    @Override
+    protected KundeResource instantiateCompactResource(Kunde kunde) {
+        final val resource = of(kunde);
+        resource.setKundeId(kunde.getId().toHexString());
+        return resource;
+    }
+
+    /**
+     * Funktion zur Konvertierung von Kunden f&uuml;r die direkte
+     * Serialisierung durch KundeSerializer. Sie kann auch au&szlig;erhalb
+     * des Request-Threads benutzt werden, z.B. beim Streaming.
+     * @return Funktion, die zu einem Kunden ein KundeJson-Objekt liefert
+     */
+    Function<Kunde, KundeJson> jsonMapper() {
+        return jsonMapper(null);
+    }
+
+    /**
+     * Funktion zur Konvertierung von Kunden f&uuml;r die direkte
+     * Serialisierung durch KundeSerializer mit ausgew&auml;hlten Feldern.
+     * @param felder Die zu serialisierenden Felder oder null f&uuml;r alle
+     * @return Funktion, die zu einem Kunden ein KundeJson-Objekt liefert
+     */
+    Function<Kunde, KundeJson> jsonMapper(Set<KundeFeld> felder) {
+        final val selfHref = selfHrefMapper();
+        return kunde -> new KundeJson(kunde, selfHref.apply(kunde),
+                                      KundeJson.NO_LINKS, felder);
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import de.hska.kunde.entity.Adresse;
+import de.hska.kunde.entity.FamilienstandType;
+import de.hska.kunde.entity.GeschlechtType;
+import de.hska.kunde.entity.InteresseType;
+import de.hska.kunde.entity.Umsatz;
+import de.hska.kunde.service.KundeFeld;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.val;
+import org.springframework.hateoas.Link;
+
+import static java.util.Collections.unmodifiableMap;
+import static org.springframework.hateoas.Link.REL_SELF;
+
+/**
+ * Serialisierung eines Kunden mit seinen Atom-Links im Format HAL direkt aus
+ * der Entity, d.h. ohne Kopie in ein KundeResource-Objekt und ohne
+ * Reflection. Die Feldnamen und die Werte der Enums sind vorab kodiert.
+ * Bei einer Auswahl von Feldern werden nur diese geschrieben, bei Adresse
+ * und Umsatz ggf. nur die ausgew&auml;hlten Unterfelder.
+ * Datum, Umsatz, Homepage und Adresse werden wie bisher durch die
+ * Serializer des jeweiligen ObjectMapper geschrieben, damit das Format
+ * unver&auml;ndert bleibt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class KundeSerializer extends StdSerializer<KundeJson> {
+    private static final long serialVersionUID = 1L;
+
+    private static final SerializedString NACHNAME =
+        new SerializedString("nachname");
+    private static final SerializedString EMAIL =
+        new SerializedString("email");
+    private static final SerializedString NEWSLETTER =
+        new SerializedString("newsletter");
+    private static final SerializedString GEBURTSDATUM =
+        new SerializedString("geburtsdatum");
+    private static final SerializedString UMSATZ =
+        new SerializedString("umsatz");
+    private static final SerializedString HOMEPAGE =
+        new SerializedString("homepage");
+    private static final SerializedString GESCHLECHT =
+        new SerializedString("geschlecht");
+    private static final SerializedString FAMILIENSTAND =
+        new SerializedString("familienstand");
+    private static final SerializedString INTERESSEN =
+        new SerializedString("interessen");
+    private static final SerializedString BETRAG =
+        new SerializedString("betrag");
+    private static final SerializedString WAEHRUNG =
+        new SerializedString("waehrung");
+    private static final SerializedString ADRESSE =
+        new SerializedString("adresse");
+    private static final SerializedString PLZ =
+        new SerializedString("plz");
+    private static final SerializedString ORT =
+        new SerializedString("ort");
+    private static final SerializedString USERNAME =
+        new SerializedString("username");
+    private static final SerializedString LINKS =
+        new SerializedString("_links");
+    private static final SerializedString SELF =
+        new SerializedString(REL_SELF);
+    private static final SerializedString HREF =
+        new SerializedString("href");
+    private static final SerializedString TEMPLATED =
+        new SerializedString("templated");
+
+    private static final Map<GeschlechtType, SerializedString>
+        GESCHLECHT_VALUES =
+            values(GeschlechtType.class, GeschlechtType::getValue);
+    private static final Map<FamilienstandType, SerializedString>
+        FAMILIENSTAND_VALUES =
+            values(FamilienstandType.class, FamilienstandType::getValue);
+    private static final Map<InteresseType, SerializedString>
+        INTERESSE_VALUES =
+            values(InteresseType.class, InteresseType::getValue);
+
+    KundeSerializer() {
+        super(KundeJson.class);
+    }
+
+    private static <T extends Enum<T>> Map<T, SerializedString> values(
+        Class<T> enumType, Function<T, String> value) {
+        final Map<T, SerializedString> map = new EnumMap<>(enumType);
+        for (T constant : enumType.getEnumConstants()) {
+            map.put(constant, new SerializedString(value.apply(constant)));
+        }
+        return unmodifiableMap(map);
+    }
+
+    @Override
+    public void serialize(KundeJson json, JsonGenerator gen,
+                          SerializerProvider provider) throws IOException {
+        final val kunde = json.getKunde();
+        final val felder = json.getFelder();
+        gen.writeStartObject();
+
+        if (isSelected(felder, KundeFeld.NACHNAME)) {
+            gen.writeFieldName(NACHNAME);
+            gen.writeString(kunde.getNachname());
+        }
+        if (isSelected(felder, KundeFeld.EMAIL)) {
+            gen.writeFieldName(EMAIL);
+            gen.writeString(kunde.getEmail());
+        }
+        if (isSelected(felder, KundeFeld.NEWSLETTER)) {
+            gen.writeFieldName(NEWSLETTER);
+            gen.writeBoolean(kunde.isNewsletter());
+        }
+        if (isSelected(felder, KundeFeld.GEBURTSDATUM)) {
+            gen.writeFieldName(GEBURTSDATUM);
+            provider.defaultSerializeValue(kunde.getGeburtsdatum(), gen);
+        }
+        final val betrag = isSelected(felder, KundeFeld.UMSATZ_BETRAG);
+        final val waehrung = isSelected(felder, KundeFeld.UMSATZ_WAEHRUNG);
+        if (betrag && waehrung) {
+            gen.writeFieldName(UMSATZ);
+            provider.defaultSerializeValue(kunde.getUmsatz(), gen);
+        } else if (betrag) {
+            gen.writeFieldName(UMSATZ);
+            writeUnterfeld(gen, provider, kunde.getUmsatz(), BETRAG,
+                           Umsatz::getBetrag);
+        } else if (waehrung) {
+            gen.writeFieldName(UMSATZ);
+            writeUnterfeld(gen, provider, kunde.getUmsatz(), WAEHRUNG,
+                           Umsatz::getWaehrung);
+        }
+        if (isSelected(felder, KundeFeld.HOMEPAGE)) {
+            gen.writeFieldName(HOMEPAGE);
+            provider.defaultSerializeValue(kunde.getHomepage(), gen);
+        }
+        if (isSelected(felder, KundeFeld.GESCHLECHT)) {
+            gen.writeFieldName(GESCHLECHT);
+            writeEnum(gen, GESCHLECHT_VALUES, kunde.getGeschlecht());
+        }
+        if (isSelected(felder, KundeFeld.FAMILIENSTAND)) {
+            gen.writeFieldName(FAMILIENSTAND);
+            writeEnum(gen, FAMILIENSTAND_VALUES, kunde.getFamilienstand());
+        }
+        if (isSelected(felder, KundeFeld.INTERESSEN)) {
+            gen.writeFieldName(INTERESSEN);
+            writeInteressen(gen, kunde.getInteressen());
+        }
+        final val plz = isSelected(felder, KundeFeld.ADRESSE_PLZ);
+        final val ort = isSelected(felder, KundeFeld.ADRESSE_ORT);
+        if (plz && ort) {
+            gen.writeFieldName(ADRESSE);
+            provider.defaultSerializeValue(kunde.getAdresse(), gen);
+        } else if (plz) {
+            gen.writeFieldName(ADRESSE);
+            writeUnterfeld(gen, provider, kunde.getAdresse(), PLZ,
+                           Adresse::getPlz);
+        } else if (ort) {
+            gen.writeFieldName(ADRESSE);
+            writeUnterfeld(gen, provider, kunde.getAdresse(), ORT,
+                           Adresse::getOrt);
+        }
+        if (isSelected(felder, KundeFeld.USERNAME)) {
+            gen.writeFieldName(USERNAME);
+            gen.writeString(kunde.getUsername());
+        }
+
+        writeLinks(gen, json);
+        gen.writeEndObject();
+    }
+
+    // null bedeutet: alle Felder
+    private static boolean isSelected(Set<KundeFeld> felder, KundeFeld feld) {
+        return felder == null || felder.contains(feld);
+    }
+
+    // Nur das ausgewaehlte Feld eines eingebetteten Objekts, z.B.
+    // "adresse": { "plz": "12345" } bei fields=adresse.plz
+    private static <T> void writeUnterfeld(JsonGenerator gen,
+                                           SerializerProvider provider,
+                                           T objekt, SerializedString name,
+                                           Function<T, ?> wert)
+            throws IOException {
+        if (objekt == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeFieldName(name);
+        provider.defaultSerializeValue(wert.apply(objekt), gen);
+        gen.writeEndObject();
+    }
+
+    private static void writeInteressen(JsonGenerator gen,
+                                        Set<InteresseType> interessen)
+            throws IOException {
+        if (interessen == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartArray();
+        for (InteresseType interesse : interessen) {
+            writeEnum(gen, INTERESSE_VALUES, interesse);
+        }
+        gen.writeEndArray();
+    }
+
+    private static <T extends Enum<T>> void writeEnum(
+        JsonGenerator gen, Map<T, SerializedString> values, T value)
+        throws IOException {
+        if (value == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeString(values.get(value));
+    }
+
+    // Links inline im Format HAL: "_links": { "self": { "href": "..." }, ...}
+    private static void writeLinks(JsonGenerator gen, KundeJson json)
+            throws IOException {
+        final val selfHref = json.getSelfHref();
+        final val links = json.getLinks();
+        if (selfHref == null && links.length == 0) {
+            return;
+        }
+
+        gen.writeFieldName(LINKS);
+        gen.writeStartObject();
+        if (selfHref != null) {
+            gen.writeFieldName(SELF);
+            gen.writeStartObject();
+            gen.writeFieldName(HREF);
+            gen.writeString(selfHref);
+            gen.writeEndObject();
+        }
+        for (Link link : links) {
+            gen.writeFieldName(link.getRel());
+            gen.writeStartObject();
+            gen.writeFieldName(HREF);
+            gen.writeString(link.getHref());
+            if (link.isTemplated()) {
+                gen.writeFieldName(TEMPLATED);
+                gen.writeBoolean(true);
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import lombok.val;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.core.AnnotationMappingDiscoverer;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import static org.springframework.web.servlet.support
+              .ServletUriComponentsBuilder.fromCurrentServletMapping;
+
+/**
+ * Vorab ermittelter Pfad einer Controller-Methode f&uuml;r Atom-Links.
+ * Im Gegensatz zu ControllerLinkBuilder.linkTo() werden die Annotationen nur
+ * einmal ausgewertet; pro Request wird der Basis-URI einmal ermittelt und pro
+ * Link nur noch mit den Werten der Pfadvariablen verkettet.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class LinkTemplate {
+    private static final AnnotationMappingDiscoverer DISCOVERER =
+        new AnnotationMappingDiscoverer(RequestMapping.class);
+
+    private final String mapping;
+    // Abschnitte zwischen den Pfadvariablen, d.h. eine Variable mehr
+    private final String[] literals;
+    private final String[] variables;
+    private final String rel;
+
+    /**
+     * Template zum Pfad einer Controller-Klasse
+     * @param controllerClass Die Controller-Klasse
+     * @param rel Die Relation des Links
+     */
+    LinkTemplate(Class<?> controllerClass, String rel) {
+        this(DISCOVERER.getMapping(controllerClass), rel);
+    }
+
+    /**
+     * Template zum Pfad einer Controller-Methode
+     * @param controllerClass Die Controller-Klasse
+     * @param method Die Methode mit z.B. @GetMapping
+     * @param rel Die Relation des Links
+     */
+    LinkTemplate(Class<?> controllerClass, Method method, String rel) {
+        this(DISCOVERER.getMapping(controllerClass, method), rel);
+    }
+
+    private LinkTemplate(String mapping, String rel) {
+        this.mapping = mapping == null ? "" : mapping;
+        final val literalList = new ArrayList<String>();
+        final val variableList = new ArrayList<String>();
+        final val literal = new StringBuilder();
+        final val variable = new StringBuilder();
+        // Regulaere Ausdruecke wie bei {id:[0-9a-fA-F]{24}} werden ignoriert
+        int depth = 0;
+        boolean regex = false;
+        for (char c : this.mapping.toCharArray()) {
+            if (c == '{') {
+                depth++;
+                if (depth == 1) {
+                    literalList.add(literal.toString());
+                    literal.setLength(0);
+                    continue;
+                }
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    variableList.add(variable.toString());
+                    variable.setLength(0);
+                    regex = false;
+                    continue;
+                }
+            } else if (c == ':' && depth == 1) {
+                regex = true;
+            }
+
+            if (depth == 0) {
+                literal.append(c);
+            } else if (!regex) {
+                variable.append(c);
+            }
+        }
+        literalList.add(literal.toString());
+
+        literals = literalList.toArray(new String[literalList.size()]);
+        variables = variableList.toArray(new String[variableList.size()]);
+        this.rel = rel;
+    }
+
+    /**
+     * Template mit einem zus&auml;tzlichen Pfadsegment, z.B.
+     * <code>slash("{id}")</code> f&uuml;r den Link "self" zu einem Objekt
+     * @param segment Das Pfadsegment ggf. mit einer Pfadvariablen
+     * @return Neues Template mit derselben Relation
+     */
+    LinkTemplate slash(String segment) {
+        return new LinkTemplate(mapping + '/' + segment, rel);
+    }
+
+    /**
+     * Den Basis-URI zum aktuellen Request ermitteln, d.h. Schema, Rechner,
+     * Port und Context-Path ggf. gem&auml;&szlig; "Forwarded" bzw.
+     * "X-Forwarded-*". Er muss im Request-Thread ermittelt werden.
+     * @return Basis-URI ohne abschlie&szlig;endes "/"
+     */
+    static String baseUri() {
+        return fromCurrentServletMapping().build().toUriString();
+    }
+
+    /**
+     * Link mit den Werten f&uuml;r die Pfadvariablen erzeugen
+     * @param baseUri Basis-URI gem&auml;&szlig; baseUri()
+     * @param params Werte der Pfadvariablen in der Reihenfolge des Pfads
+     * @return Link mit der Relation des Templates
+     */
+    Link expand(String baseUri, Object... params) {
+        return new Link(expandHref(baseUri, params), rel);
+    }
+
+    /**
+     * URI mit den Werten f&uuml;r die Pfadvariablen erzeugen, ohne ein
+     * Link-Objekt, dessen Konstruktor den URI nochmals als Template parst
+     * @param baseUri Basis-URI gem&auml;&szlig; baseUri()
+     * @param params Werte der Pfadvariablen in der Reihenfolge des Pfads
+     * @return Der URI als String
+     */
+    String expandHref(String baseUri, Object... params) {
+        if (params.length != variables.length) {
+            throw new IllegalArgumentException(
+                "Anzahl Pfadvariable: " + variables.length);
+        }
+        final val href = new StringBuilder(baseUri).append(literals[0]);
+        for (int i = 0; i < params.length; i++) {
+            href.append(params[i]).append(literals[i + 1]);
+        }
+        return href.toString();
+    }
+
+    /**
+     * Link mit den Pfadvariablen als URI-Template, z.B.
+     * <code>.../kunde/{id}</code>
+     * @param baseUri Basis-URI gem&auml;&szlig; baseUri()
+     * @return Link mit templated=true, falls es Pfadvariable gibt
+     */
+    Link toTemplatedLink(String baseUri) {
+        final val href = new StringBuilder(baseUri).append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            href.append('{')
+                .append(variables[i])
+                .append('}')
+                .append(literals[i + 1]);
+        }
+        return new Link(href.toString(), rel);
+    }
+}
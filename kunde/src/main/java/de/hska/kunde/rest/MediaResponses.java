@@ -0,0 +1,288 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.mongodb.gridfs.GridFSDBFile;
+import de.hska.kunde.service.GridFsChunkReader;
+import de.hska.kunde.service.MediaMetadata;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import lombok.val;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation
+       .StreamingResponseBody;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
+import static org.springframework.http.HttpHeaders.IF_MODIFIED_SINCE;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.IF_RANGE;
+import static org.springframework.http.HttpHeaders.RANGE;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.PARTIAL_CONTENT;
+import static org.springframework.http.HttpStatus
+              .REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.springframework.http.MediaType.parseMediaType;
+import static org.springframework.util.MimeTypeUtils
+              .generateMultipartBoundaryString;
+
+/**
+ * Responses f&uuml;r multimediale Dateien aus GridFS mit Unterst&uuml;tzung
+ * f&uuml;r HTTP Range Requests gem&auml;&szlig; RFC 7233: ein oder mehrere
+ * Bytebereiche im Header "Range", bedingt durch "If-Range". Die Bereiche
+ * werden mit GridFsChunkReader direkt aus den betroffenen Chunks gelesen.
+ * Bedingte Requests mit "If-None-Match" bzw. "If-Modified-Since" werden
+ * gem&auml;&szlig; RFC 7232 mit 304 beantwortet; das starke ETag ist die
+ * MD5-Pr&uuml;fsumme von GridFS.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class MediaResponses {
+    private static final String BYTES = "bytes";
+    private static final String CRLF = "\r\n";
+    private static final String MULTIPART_BYTERANGES =
+        "multipart/byteranges; boundary=";
+
+    // Mehr Bereiche werden ignoriert, d.h. die ganze Datei wird gesendet
+    private static final int MAX_RANGES = 16;
+
+    private MediaResponses() {
+    }
+
+    /**
+     * Response mit der ganzen Datei (200) oder mit den angeforderten
+     * Bereichen (206) bzw. 416, falls kein Bereich innerhalb der Datei
+     * liegt, oder 304, falls die Datei beim Client unver&auml;ndert ist.
+     * @param file Die Datei in GridFS
+     * @param request Die Header des Requests
+     * @param cacheControl Der Header "Cache-Control" der Response
+     * @param reader Objekt, um Bereiche aus GridFS zu lesen
+     * @return Die Response mit dem Inhalt als Bytestrom
+     */
+    static ResponseEntity<StreamingResponseBody> of(GridFSDBFile file,
+                                                    HttpHeaders request,
+                                                    CacheControl cacheControl,
+                                                    GridFsChunkReader reader) {
+        final val length = file.getLength();
+        final val etag = etag(file.getMD5());
+        final val lastModified = file.getUploadDate().getTime();
+        if (isNotModified(request, etag, lastModified)) {
+            return notModified(etag, lastModified, cacheControl);
+        }
+        final val mediaType = parseMediaType(file.getContentType());
+
+        final val ranges = ranges(request, etag, lastModified);
+        if (ranges.isEmpty()) {
+            final StreamingResponseBody body =
+                out -> reader.copy(file, 0, length - 1, out);
+            return ResponseEntity.ok()
+                                 .header(ACCEPT_RANGES, BYTES)
+                                 .eTag(etag)
+                                 .lastModified(lastModified)
+                                 .cacheControl(cacheControl)
+                                 .contentLength(length)
+                                 .contentType(mediaType)
+                                 .body(body);
+        }
+
+        // Bereiche ausserhalb der Datei werden ignoriert
+        final val satisfiable = new ArrayList<HttpRange>(ranges.size());
+        ranges.stream()
+              .filter(range -> range.getRangeStart(length) < length)
+              .forEach(satisfiable::add);
+        if (satisfiable.isEmpty()) {
+            return ResponseEntity.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                                 .header(ACCEPT_RANGES, BYTES)
+                                 .header(CONTENT_RANGE,
+                                         BYTES + " */" + length)
+                                 .build();
+        }
+
+        final val partial = ResponseEntity.status(PARTIAL_CONTENT)
+                                          .header(ACCEPT_RANGES, BYTES)
+                                          .eTag(etag)
+                                          .lastModified(lastModified)
+                                          .cacheControl(cacheControl);
+        if (satisfiable.size() == 1) {
+            final val range = satisfiable.get(0);
+            final val start = range.getRangeStart(length);
+            final val end = range.getRangeEnd(length);
+            final StreamingResponseBody body =
+                out -> reader.copy(file, start, end, out);
+            return partial.header(CONTENT_RANGE,
+                                  contentRange(start, end, length))
+                          .contentLength(end - start + 1)
+                          .contentType(mediaType)
+                          .body(body);
+        }
+
+        return multipart(file, satisfiable, mediaType, partial, reader);
+    }
+
+    /**
+     * Pr&uuml;fen, ob ein Request bedingt ist, d.h. "If-None-Match" oder
+     * "If-Modified-Since" enth&auml;lt
+     * @param request Die Header des Requests
+     * @return true, falls der Request bedingt ist
+     */
+    static boolean isConditional(HttpHeaders request) {
+        return request.containsKey(IF_NONE_MATCH)
+               || request.containsKey(IF_MODIFIED_SINCE);
+    }
+
+    /**
+     * Response 304 anhand der Metadaten, d.h. ohne die Datei in GridFS zu
+     * suchen
+     * @param metadata Die Metadaten der Datei, z.B. aus dem Cache
+     * @param request Die Header des Requests
+     * @param cacheControl Der Header "Cache-Control" der Response
+     * @return Die Response 304 oder ein leeres Optional-Objekt, falls die
+     *         Datei beim Client ver&auml;ndert ist
+     */
+    static Optional<ResponseEntity<StreamingResponseBody>> notModified(
+            MediaMetadata metadata, HttpHeaders request,
+            CacheControl cacheControl) {
+        final val etag = etag(metadata.getMd5());
+        final val lastModified = metadata.getUploadDate();
+        return isNotModified(request, etag, lastModified)
+               ? Optional.of(notModified(etag, lastModified, cacheControl))
+               : Optional.empty();
+    }
+
+    private static String etag(String md5) {
+        return '"' + md5 + '"';
+    }
+
+    private static ResponseEntity<StreamingResponseBody> notModified(
+            String etag, long lastModified, CacheControl cacheControl) {
+        return ResponseEntity.status(NOT_MODIFIED)
+                             .eTag(etag)
+                             .lastModified(lastModified)
+                             .cacheControl(cacheControl)
+                             .build();
+    }
+
+    // RFC 7232: If-None-Match mit schwachem Vergleich hat Vorrang vor
+    // If-Modified-Since
+    private static boolean isNotModified(HttpHeaders request, String etag,
+                                         long lastModified) {
+        if (request.containsKey(IF_NONE_MATCH)) {
+            return request.getIfNoneMatch()
+                          .stream()
+                          .map(tag -> tag.startsWith("W/")
+                                      ? tag.substring(2)
+                                      : tag)
+                          .anyMatch(tag -> "*".equals(tag)
+                                           || tag.equals(etag));
+        }
+        if (!request.containsKey(IF_MODIFIED_SINCE)) {
+            return false;
+        }
+        try {
+            final val ifModifiedSince = request.getIfModifiedSince();
+            return ifModifiedSince != -1
+                   && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            // Ein ungueltiges Datum wird ignoriert
+            return false;
+        }
+    }
+
+    // Leere Liste: die ganze Datei senden
+    private static List<HttpRange> ranges(HttpHeaders request, String etag,
+                                          long lastModified) {
+        final val range = request.getFirst(RANGE);
+        if (range == null || !ifRange(request, etag, lastModified)) {
+            return Collections.emptyList();
+        }
+        try {
+            final val ranges = HttpRange.parseRanges(range);
+            return ranges.size() > MAX_RANGES
+                   ? Collections.emptyList()
+                   : ranges;
+        } catch (IllegalArgumentException e) {
+            // Ein syntaktisch falscher Header "Range" wird ignoriert
+            return Collections.emptyList();
+        }
+    }
+
+    // If-Range: nur bei unveraenderter Datei werden Bereiche gesendet
+    private static boolean ifRange(HttpHeaders request, String etag,
+                                   long lastModified) {
+        final val ifRange = request.getFirst(IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Schwache ETags sind fuer If-Range nie gleich
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getFirstDate(IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static ResponseEntity<StreamingResponseBody> multipart(
+            GridFSDBFile file, List<HttpRange> ranges, MediaType mediaType,
+            ResponseEntity.BodyBuilder partial, GridFsChunkReader reader) {
+        final val length = file.getLength();
+        final val boundary = generateMultipartBoundaryString();
+        final int anzahl = ranges.size();
+        final val starts = new long[anzahl];
+        final val ends = new long[anzahl];
+        final val headers = new byte[anzahl][];
+        long contentLength = 0;
+        for (int i = 0; i < anzahl; i++) {
+            starts[i] = ranges.get(i).getRangeStart(length);
+            ends[i] = ranges.get(i).getRangeEnd(length);
+            headers[i] = (CRLF + "--" + boundary + CRLF
+                          + HttpHeaders.CONTENT_TYPE + ": " + mediaType + CRLF
+                          + CONTENT_RANGE + ": "
+                          + contentRange(starts[i], ends[i], length)
+                          + CRLF + CRLF).getBytes(US_ASCII);
+            contentLength += headers[i].length + ends[i] - starts[i] + 1;
+        }
+        final val ende = (CRLF + "--" + boundary + "--" + CRLF)
+                         .getBytes(US_ASCII);
+        contentLength += ende.length;
+
+        final StreamingResponseBody body = out -> {
+            for (int i = 0; i < anzahl; i++) {
+                out.write(headers[i]);
+                reader.copy(file, starts[i], ends[i], out);
+            }
+            out.write(ende);
+        };
+        return partial.contentLength(contentLength)
+                      .contentType(parseMediaType(MULTIPART_BYTERANGES
+                                                  + boundary))
+                      .body(body);
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return BYTES + ' ' + start + '-' + end + '/' + length;
+    }
+}
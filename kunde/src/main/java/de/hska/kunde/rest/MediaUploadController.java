@@ -0,0 +1,230 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import de.hska.kunde.service.MediaUpload;
+import de.hska.kunde.service.MediaUploadService;
+import de.hska.kunde.service.UploadOffsetException;
+import java.io.IOException;
+import java.io.InputStream;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.ResponseEntity.noContent;
+import static org.springframework.http.ResponseEntity.status;
+import static org.springframework.web.bind.annotation.RequestMethod.HEAD;
+import static org.springframework.web.servlet.support
+              .ServletUriComponentsBuilder.fromCurrentRequestUri;
+
+/**
+ * Controller-Objekt f&uuml;r das fortsetzbare Hochladen von Bildern und
+ * Videos zu einem Kunden:
+ * <ol>
+ * <li><code>POST /kunde/{id}/media/uploads?contentType=...</code> legt eine
+ *     Sitzung an, optional mit der Gesamtl&auml;nge im Header
+ *     "Upload-Length"
+ * <li><code>PUT .../uploads/{uploadId}</code> h&auml;ngt den Request-Body ab
+ *     dem Offset im Header "Upload-Offset" an
+ * <li><code>HEAD .../uploads/{uploadId}</code> liefert den aktuellen Offset,
+ *     z.B. nach einem Verbindungsabbruch
+ * <li><code>POST .../uploads/{uploadId}/finish</code> ersetzt die bisherige
+ *     Datei durch die hochgeladene Datei
+ * </ol>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@RestController
+@RequestMapping("/kunde")
+class MediaUploadController {
+    private static final String OBJECT_ID_PATTERN = "[0-9a-fA-F]{24}";
+    private static final String UPLOADS_URI_TEMPLATE =
+        "/{id:" + OBJECT_ID_PATTERN + "}/media/uploads";
+    private static final String UPLOAD_URI_TEMPLATE =
+        UPLOADS_URI_TEMPLATE + "/{uploadId:" + OBJECT_ID_PATTERN + '}';
+
+    // Header gemaess dem Protokoll von tus.io
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String NO_STORE = "no-store";
+
+    private final MediaUploadService service;
+    private final Logger log;
+
+    MediaUploadController(MediaUploadService service, Logger log) {
+        this.service = service;
+        this.log = log;
+    }
+
+    /**
+     * Eine Sitzung f&uuml;r das Hochladen anlegen.
+     * Statuscodes:
+     * <ul>
+     * <li>201 mit der URI der Sitzung im Header "Location"
+     * <li>404 falls es keinen Kunden zur ID gibt
+     * </ul>
+     * @param id Kunde-ID
+     * @param contentType MIME-Type der Datei, z.B. video/mp4
+     * @param length Gesamtl&auml;nge in Bytes, falls bekannt
+     * @return Response mit "Location" und "Upload-Offset"
+     */
+    @PostMapping(UPLOADS_URI_TEMPLATE)
+    HttpEntity<Void> create(
+            @PathVariable ObjectId id,
+            @RequestParam String contentType,
+            @RequestHeader(value = UPLOAD_LENGTH, required = false)
+            Long length) {
+        final val upload = service.create(id, contentType, length)
+                                  .orElseThrow(NotFoundException::new);
+        final val uri = fromCurrentRequestUri()
+                        .path("/{uploadId}")
+                        .buildAndExpand(upload.getId())
+                        .toUri();
+        final val headers = headers(upload);
+        headers.setLocation(uri);
+        return new ResponseEntity<>(headers, CREATED);
+    }
+
+    /**
+     * Den aktuellen Stand einer Sitzung ermitteln.
+     * Statuscodes:
+     * <ul>
+     * <li>200 mit dem Offset im Header "Upload-Offset"
+     * <li>404 falls es die Sitzung nicht gibt
+     * </ul>
+     * @param id Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @return Response mit "Upload-Offset" und ggf. "Upload-Length"
+     */
+    @RequestMapping(path = UPLOAD_URI_TEMPLATE, method = HEAD)
+    HttpEntity<Void> offset(@PathVariable ObjectId id,
+                            @PathVariable ObjectId uploadId) {
+        final val upload = service.find(id, uploadId)
+                                  .orElseThrow(NotFoundException::new);
+        return new ResponseEntity<>(headers(upload), OK);
+    }
+
+    /**
+     * Den Request-Body ab einem Offset an die Sitzung anh&auml;ngen.
+     * Statuscodes:
+     * <ul>
+     * <li>204 mit dem neuen Offset im Header "Upload-Offset"
+     * <li>400 falls mehr Bytes als angek&uuml;ndigt gesendet werden
+     * <li>404 falls es die Sitzung nicht gibt
+     * <li>409 mit dem aktuellen Offset, falls der Offset nicht passt oder
+     *     gerade ein anderer Request anh&auml;ngt
+     * </ul>
+     * @param id Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @param offset Position des ersten Bytes im Request-Body
+     * @param body Die Bytes
+     * @return Response mit "Upload-Offset"
+     * @throws IOException falls der Request-Body nicht gelesen werden kann;
+     *         die bis dahin empfangenen Bytes sind gespeichert
+     */
+    @PutMapping(UPLOAD_URI_TEMPLATE)
+    HttpEntity<Void> append(@PathVariable ObjectId id,
+                            @PathVariable ObjectId uploadId,
+                            @RequestHeader(UPLOAD_OFFSET) long offset,
+                            InputStream body) throws IOException {
+        final MediaUpload upload;
+        try {
+            upload = service.append(id, uploadId, offset, body)
+                            .orElseThrow(NotFoundException::new);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        return new ResponseEntity<>(headers(upload), NO_CONTENT);
+    }
+
+    /**
+     * Eine Sitzung abschlie&szlig;en. Die hochgeladene Datei ersetzt die
+     * bisherige Datei des Kunden.
+     * Statuscodes:
+     * <ul>
+     * <li>204 bei Erfolg
+     * <li>404 falls es die Sitzung nicht gibt
+     * <li>409 mit dem aktuellen Offset, falls noch Bytes fehlen
+     * </ul>
+     * @param id Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @return Leere Response
+     */
+    @PostMapping(UPLOAD_URI_TEMPLATE + "/finish")
+    HttpEntity<Void> finish(@PathVariable ObjectId id,
+                            @PathVariable ObjectId uploadId) {
+        service.finish(id, uploadId).orElseThrow(NotFoundException::new);
+        return noContent().build();
+    }
+
+    /**
+     * Eine Sitzung abbrechen.
+     * Statuscodes:
+     * <ul>
+     * <li>204 bei Erfolg
+     * <li>404 falls es die Sitzung nicht gibt
+     * </ul>
+     * @param id Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @return Leere Response
+     */
+    @DeleteMapping(UPLOAD_URI_TEMPLATE)
+    HttpEntity<Void> abort(@PathVariable ObjectId id,
+                           @PathVariable ObjectId uploadId) {
+        if (!service.abort(id, uploadId)) {
+            throw new NotFoundException();
+        }
+        return noContent().build();
+    }
+
+    @ExceptionHandler(UploadOffsetException.class)
+    @SuppressWarnings("unused")
+    ResponseEntity<Void> handleOffset(UploadOffsetException e) {
+        log.debug("handleOffset: {}", e::getMessage);
+        return status(CONFLICT).header(UPLOAD_OFFSET,
+                                       String.valueOf(e.getOffset()))
+                               .header(CACHE_CONTROL, NO_STORE)
+                               .build();
+    }
+
+    private static HttpHeaders headers(MediaUpload upload) {
+        final val headers = new HttpHeaders();
+        headers.set(UPLOAD_OFFSET, String.valueOf(upload.getOffset()));
+        if (upload.getLength() != null) {
+            headers.set(UPLOAD_LENGTH, String.valueOf(upload.getLength()));
+        }
+        headers.setCacheControl(NO_STORE);
+        return headers;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import lombok.val;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation
+       .StreamingResponseBody;
+
+import static com.fasterxml.jackson.databind.SerializationFeature
+              .FLUSH_AFTER_WRITE_VALUE;
+import static org.springframework.util.StreamUtils.nonClosing;
+
+/**
+ * Streaming von Resources als NDJSON (ein JSON-Datensatz pro Zeile) oder als
+ * JSON-Array, das in Chunks gesendet wird. Jedes Objekt wird aus dem Cursor
+ * von MongoDB gelesen, in eine Resource konvertiert und sofort geschrieben,
+ * d.h. der Speicherbedarf ist unabh&auml;ngig von der Anzahl der Objekte.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+final class StreamingResources {
+    /**
+     * Media Type f&uuml;r NDJSON als String.
+     */
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * Media Type f&uuml;r NDJSON.
+     */
+    static final MediaType APPLICATION_NDJSON =
+        MediaType.valueOf(APPLICATION_NDJSON_VALUE);
+
+    // Nach so vielen Datensaetzen wird geflusht: der Client erhaelt die Daten
+    // fortlaufend und ein Verbindungsabbruch wird fruehzeitig erkannt
+    private static final int FLUSH_INTERVAL = 64;
+    private static final char NEWLINE = '\n';
+
+    private StreamingResources() {
+        throw new UnsupportedOperationException(
+            "Das ist eine Utility-Klasse, die nicht instantiiert werden kann");
+    }
+
+    /**
+     * Objekte eines Streams als NDJSON schreiben.
+     * @param stream Stream mit den Objekten, der nach dem Schreiben bzw. bei
+     *               einem Verbindungsabbruch geschlossen wird
+     * @param mapper Konvertierung eines Objekts in eine Resource, die auch
+     *               au&szlig;erhalb des Request-Threads funktioniert
+     * @param objectMapper ObjectMapper f&uuml;r HAL
+     * @param <E> Typ der Objekte
+     * @param <R> Typ der Resources
+     * @return Rumpf f&uuml;r den Response
+     * @throws NotFoundException falls der Stream leer ist
+     */
+    static <E, R> StreamingResponseBody ndjson(Stream<E> stream,
+                                               Function<E, R> mapper,
+                                               ObjectMapper objectMapper) {
+        return body(stream, mapper, objectMapper, false);
+    }
+
+    /**
+     * Objekte eines Streams als JSON-Array schreiben.
+     * @param stream Stream mit den Objekten, der nach dem Schreiben bzw. bei
+     *               einem Verbindungsabbruch geschlossen wird
+     * @param mapper Konvertierung eines Objekts in eine Resource, die auch
+     *               au&szlig;erhalb des Request-Threads funktioniert
+     * @param objectMapper ObjectMapper f&uuml;r HAL
+     * @param <E> Typ der Objekte
+     * @param <R> Typ der Resources
+     * @return Rumpf f&uuml;r den Response
+     * @throws NotFoundException falls der Stream leer ist
+     */
+    static <E, R> StreamingResponseBody jsonArray(Stream<E> stream,
+                                                  Function<E, R> mapper,
+                                                  ObjectMapper objectMapper) {
+        return body(stream, mapper, objectMapper, true);
+    }
+
+    private static <E, R> StreamingResponseBody body(Stream<E> stream,
+                                                     Function<E, R> mapper,
+                                                     ObjectMapper objectMapper,
+                                                     boolean array) {
+        // Der erste Datensatz wird noch im Request-Thread gelesen, damit bei
+        // einem leeren Ergebnis der Statuscode 404 gesendet werden kann
+        final val iterator = stream.iterator();
+        boolean found = false;
+        try {
+            found = iterator.hasNext();
+        } finally {
+            if (!found) {
+                stream.close();
+            }
+        }
+        if (!found) {
+            throw new NotFoundException();
+        }
+
+        final val writer = objectMapper.writer()
+                                       .without(FLUSH_AFTER_WRITE_VALUE);
+        return out -> {
+            // Bei einer IOException, z.B. durch einen Verbindungsabbruch,
+            // wird der Cursor von MongoDB durch close() geschlossen
+            try (JsonGenerator generator =
+                     writer.getFactory().createGenerator(nonClosing(out))) {
+                generator.setRootValueSeparator(null);
+                if (array) {
+                    generator.writeStartArray();
+                }
+                int count = 0;
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, mapper.apply(iterator.next()));
+                    if (!array) {
+                        generator.writeRaw(NEWLINE);
+                    }
+                    if (++count % FLUSH_INTERVAL == 0) {
+                        generator.flush();
+                    }
+                }
+                if (array) {
+                    generator.writeEndArray();
+                }
+            } finally {
+                stream.close();
+            }
+        };
+    }
+}
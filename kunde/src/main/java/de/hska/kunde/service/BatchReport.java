@@ -0,0 +1,47 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Bericht &uuml;ber einen Massenimport von Kunden mit einem Ergebnis pro
+ * Datensatz in der Reihenfolge der Eingabe.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Getter
+@ToString
+public final class BatchReport {
+    private int total;
+    private int created;
+    private int failed;
+    private final List<BatchResult> results = new ArrayList<>();
+
+    void add(BatchResult result) {
+        total++;
+        if (result.getErrors() == null || result.getErrors().isEmpty()) {
+            created++;
+        } else {
+            failed++;
+        }
+        results.add(result);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
+
+/**
+ * Ergebnis f&uuml;r einen einzelnen Datensatz bei einem Massenimport.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@JsonInclude(NON_EMPTY)
+public final class BatchResult {
+    // Position des Datensatzes in der Eingabe, beginnend mit 0
+    private final int index;
+
+    // ID des neu angelegten Kunden oder null bei einem Fehler
+    private final String id;
+
+    private final String email;
+
+    // Fehlermeldungen, falls der Kunde nicht angelegt wurde
+    private final List<String> errors;
+}
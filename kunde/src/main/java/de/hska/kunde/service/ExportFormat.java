@@ -0,0 +1,51 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * Zul&auml;ssige Formate f&uuml;r den Export von Kunden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public enum ExportFormat {
+    NDJSON("ndjson"),
+    CSV("csv");
+
+    /**
+     * Dateiendung f&uuml;r das Format, z.B. "csv".
+     */
+    @Getter
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Konvertierung eines Strings in einen Enum-Wert
+     * @param value Der String ohne Unterscheidung zwischen Gro&szlig;- und
+     *              Kleinschreibung, z.B. "csv"
+     * @return Passender Enum-Wert
+     * @throws IllegalArgumentException falls es kein solches Format gibt
+     */
+    public static ExportFormat build(String value) {
+        return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+}
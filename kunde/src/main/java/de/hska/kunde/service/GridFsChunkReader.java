@@ -0,0 +1,99 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.gridfs.GridFSDBFile;
+import java.io.IOException;
+import java.io.OutputStream;
+import lombok.val;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Component;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Lesen eines Bytebereichs aus einer Datei in GridFS. Im Gegensatz zum
+ * InputStream von GridFSDBFile werden nur die Chunks gelesen, die den
+ * Bereich &uuml;berdecken, und zwar mit einer einzigen Abfrage &uuml;ber den
+ * Index <code>{files_id: 1, n: 1}</code>. Das Positionieren am Ende eines
+ * gro&szlig;en Videos kostet deshalb genauso viel wie am Anfang.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+public class GridFsChunkReader {
+    // Default-Bucket von GridFsTemplate
+    private static final String CHUNKS = "fs.chunks";
+    private static final String FILES_ID = "files_id";
+    private static final String N = "n";
+    private static final String DATA = "data";
+    private static final int BATCH_SIZE = 4;
+
+    private final MongoOperations mongoOperations;
+
+    GridFsChunkReader(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    /**
+     * Einen Bytebereich einer Datei in einen OutputStream schreiben
+     * @param file Die Datei in GridFS
+     * @param start Position des ersten Bytes
+     * @param end Position des letzten Bytes (inklusive)
+     * @param out Ausgabe f&uuml;r den Bereich; sie wird nicht geschlossen
+     * @throws IOException falls nicht geschrieben werden kann oder ein Chunk
+     *         fehlt
+     */
+    public void copy(GridFSDBFile file, long start, long end,
+                     OutputStream out) throws IOException {
+        if (start > end) {
+            return;
+        }
+        final val chunkSize = file.getChunkSize();
+        final val first = (int) (start / chunkSize);
+        final val last = (int) (end / chunkSize);
+        final val query = new BasicDBObject(FILES_ID, file.getId())
+            .append(N, new BasicDBObject("$gte", first).append("$lte", last));
+
+        // Kleine Batches: ein Chunk ist i.d.R. 255 KB gross
+        try (DBCursor cursor = mongoOperations.getCollection(CHUNKS)
+                                              .find(query)
+                                              .sort(new BasicDBObject(N, 1))
+                                              .batchSize(BATCH_SIZE)) {
+            int erwartet = first;
+            while (cursor.hasNext()) {
+                final val chunk = cursor.next();
+                final val n = ((Number) chunk.get(N)).intValue();
+                if (n != erwartet) {
+                    throw new IOException("Chunk " + erwartet + " fehlt");
+                }
+                final val data = (byte[]) chunk.get(DATA);
+                final val chunkStart = n * chunkSize;
+                final val from = (int) max(start - chunkStart, 0);
+                final val to = (int) min(end - chunkStart + 1, data.length);
+                out.write(data, from, to - from);
+                erwartet++;
+            }
+            if (erwartet <= last) {
+                throw new IOException("Chunk " + erwartet + " fehlt");
+            }
+        }
+    }
+}
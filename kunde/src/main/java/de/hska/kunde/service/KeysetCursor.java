@@ -0,0 +1,104 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.val;
+import org.bson.types.ObjectId;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Base64.getUrlDecoder;
+import static java.util.Base64.getUrlEncoder;
+
+/**
+ * Position innerhalb einer sortierten Treffermenge f&uuml;r die
+ * Keyset-Pagination. Ein Cursor besteht aus der ID des letzten bzw. ersten
+ * Kunden einer Seite, ggf. dem Wert des Sortierkriteriums und der Richtung.
+ * Nach au&szlig;en ist ein Cursor ein undurchsichtiger String.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public final class KeysetCursor {
+    private static final char SEPARATOR = '|';
+    private static final char VORWAERTS = 'n';
+    private static final char RUECKWAERTS = 'p';
+
+    private final KeysetSort sort;
+    private final ObjectId id;
+    private final String sortValue;
+    private final boolean backward;
+
+    /**
+     * Den Cursor als undurchsichtigen, URL-sicheren String kodieren
+     * @return Der kodierte Cursor
+     */
+    public String encode() {
+        final val sb = new StringBuilder(64)
+            .append(backward ? RUECKWAERTS : VORWAERTS)
+            .append(SEPARATOR)
+            .append(sort.name())
+            .append(SEPARATOR)
+            .append(id.toHexString());
+        if (sortValue != null) {
+            sb.append(SEPARATOR).append(sortValue);
+        }
+        return getUrlEncoder().withoutPadding()
+                              .encodeToString(sb.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * Einen kodierten Cursor wieder einlesen
+     * @param encoded Der kodierte Cursor
+     * @return Der dekodierte Cursor
+     * @throws IllegalArgumentException falls der String kein g&uuml;ltiger
+     *         Cursor ist
+     */
+    public static KeysetCursor decode(String encoded) {
+        final String str;
+        try {
+            str = new String(getUrlDecoder().decode(encoded), UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Ungueltiger Cursor", e);
+        }
+
+        // Der Sortierwert selbst kann das Trennzeichen enthalten
+        final val parts = str.split("\\" + SEPARATOR, 4);
+        if (parts.length < 3 || parts[0].length() != 1
+            || !ObjectId.isValid(parts[2])) {
+            throw new IllegalArgumentException("Ungueltiger Cursor");
+        }
+        final val richtung = parts[0].charAt(0);
+        if (richtung != VORWAERTS && richtung != RUECKWAERTS) {
+            throw new IllegalArgumentException("Ungueltiger Cursor");
+        }
+
+        final val sort = KeysetSort.valueOf(parts[1]);
+        final val sortValue = parts.length == 4 ? parts[3] : null;
+        if (sort.hasSortValue() && sortValue == null) {
+            throw new IllegalArgumentException("Ungueltiger Cursor");
+        }
+        return new KeysetCursor(sort, new ObjectId(parts[2]), sortValue,
+                                richtung == RUECKWAERTS);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.entity.QKunde;
+import java.util.Locale;
+import lombok.val;
+
+/**
+ * Zul&auml;ssige Sortierkriterien f&uuml;r die Keyset-Pagination. Jedes
+ * Kriterium muss indiziert sein und wird durch die ID eindeutig gemacht.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public enum KeysetSort {
+    ID,
+    NACHNAME;
+
+    private static final QKunde KUNDE = QKunde.kunde;
+
+    /**
+     * Konvertierung eines Strings in einen Enum-Wert
+     * @param value Der String ohne Unterscheidung zwischen Gro&szlig;- und
+     *              Kleinschreibung, z.B. "nachname"
+     * @return Passender Enum-Wert
+     * @throws IllegalArgumentException falls es kein solches Kriterium gibt
+     */
+    public static KeysetSort build(String value) {
+        return valueOf(value.toUpperCase(Locale.ROOT));
+    }
+
+    boolean hasSortValue() {
+        return this != ID;
+    }
+
+    String sortValue(Kunde kunde) {
+        return this == NACHNAME ? kunde.getNachname() : null;
+    }
+
+    /**
+     * Reihenfolge f&uuml;r die Abfrage
+     * @param backward true, falls r&uuml;ckw&auml;rts gebl&auml;ttert wird
+     * @return Sortierung f&uuml;r QueryDsl
+     */
+    OrderSpecifier<?>[] orderBy(boolean backward) {
+        if (this == ID) {
+            return new OrderSpecifier<?>[] {
+                backward ? KUNDE.id.desc() : KUNDE.id.asc()
+            };
+        }
+        return new OrderSpecifier<?>[] {
+            backward ? KUNDE.nachname.desc() : KUNDE.nachname.asc(),
+            backward ? KUNDE.id.desc() : KUNDE.id.asc()
+        };
+    }
+
+    /**
+     * Pr&auml;dikat f&uuml;r die Datens&auml;tze hinter bzw. vor dem Cursor
+     * @param cursor Die Position, an der weitergebl&auml;ttert wird
+     * @return Pr&auml;dikat f&uuml;r QueryDsl
+     */
+    Predicate seek(KeysetCursor cursor) {
+        final val id = cursor.getId();
+        final val backward = cursor.isBackward();
+        final val idPred = backward ? KUNDE.id.lt(id) : KUNDE.id.gt(id);
+        if (this == ID) {
+            return idPred;
+        }
+
+        // (nachname > x) OR (nachname = x AND id > y) bzw. umgekehrt
+        final val nachname = cursor.getSortValue();
+        final val nachnamePred = backward
+                                 ? KUNDE.nachname.lt(nachname)
+                                 : KUNDE.nachname.gt(nachname);
+        return nachnamePred.or(KUNDE.nachname.eq(nachname).and(idPred));
+    }
+}
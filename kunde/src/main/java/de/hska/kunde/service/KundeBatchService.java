@@ -0,0 +1,454 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import de.hska.kunde.config.security.Account;
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.util.UniqueValueFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import static de.hska.kunde.util.Strings.isBlank;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.springframework.data.mongodb.core.BulkOperations.BulkMode
+              .UNORDERED;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Anwendungslogik f&uuml;r den Massenimport von Kunden. Die Datens&auml;tze
+ * werden in Chunks verarbeitet: parallele Validierung, je eine Abfrage mit
+ * <code>$in</code> f&uuml;r die Eindeutigkeit von Email und Benutzername,
+ * bcrypt in einem Thread-Pool fester Gr&ouml;&szlig;e und ungeordnete
+ * Bulk-Inserts f&uuml;r Kunden und Accounts.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Service
+public class KundeBatchService {
+    private static final String ROLLE_KUNDE = "ROLE_KUNDE";
+    private static final int DUPLICATE_KEY = 11000;
+
+    private static final String ID = "_id";
+    private static final String EMAIL = "email";
+    private static final String USERNAME = "username";
+    private static final String VERSION = "version";
+    private static final String ERZEUGT = "erzeugt";
+    private static final String AKTUALISIERT = "aktualisiert";
+
+    private static final String KEIN_KUNDE = "Kein Kunde";
+    private static final String ACCOUNT_FEHLT =
+        "Benutzername und Passwort sind erforderlich";
+    private static final String EMAIL_EXISTIERT =
+        "Die Emailadresse existiert bereits";
+    private static final String USERNAME_EXISTIERT =
+        "Der Benutzername existiert bereits";
+    private static final String NICHT_GESPEICHERT =
+        "Der Datensatz konnte nicht gespeichert werden";
+
+    // In der Meldung von MongoDB zu DUPLICATE_KEY, z.B. "E11000 duplicate
+    // key error collection: hska.kunde index: email dup key: ..."
+    private static final String INDEX = "index: ";
+
+    private final MongoOperations mongoOperations;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final ExecutorService executor;
+    private final KundePrefixIndex prefixIndex;
+    private final KundeTrigramIndex trigramIndex;
+    private final KundeIndexTopic indexTopic;
+    private final KundeEmailCache emailCache;
+    private final UniqueValueFilter emailFilter;
+    private final UniqueValueFilter usernameFilter;
+    private final KundeChangeCounter changeCounter;
+    private final Logger log;
+    private final int chunkSize;
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    KundeBatchService(MongoOperations mongoOperations,
+                      ObjectMapper objectMapper,
+                      Validator validator,
+                      BCryptPasswordEncoder passwordEncoder,
+                      @Qualifier("batchExecutor") ExecutorService executor,
+                      KundePrefixIndex prefixIndex,
+                      KundeTrigramIndex trigramIndex,
+                      KundeIndexTopic indexTopic,
+                      KundeEmailCache emailCache,
+                      @Qualifier("kundeEmailFilter")
+                      UniqueValueFilter emailFilter,
+                      @Qualifier("usernameFilter")
+                      UniqueValueFilter usernameFilter,
+                      KundeChangeCounter changeCounter,
+                      Logger log,
+                      @Value("${kunde.batch.chunkSize:500}") int chunkSize) {
+        this.mongoOperations = mongoOperations;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.passwordEncoder = passwordEncoder;
+        this.executor = executor;
+        this.prefixIndex = prefixIndex;
+        this.trigramIndex = trigramIndex;
+        this.indexTopic = indexTopic;
+        this.emailCache = emailCache;
+        this.emailFilter = emailFilter;
+        this.usernameFilter = usernameFilter;
+        this.changeCounter = changeCounter;
+        this.log = log;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Neue Kunden aus einem JSON-Array oder aus NDJSON anlegen. Die Eingabe
+     * wird als Stream gelesen, d.h. es ist immer nur ein Chunk im
+     * Hauptspeicher. Fehlerhafte Datens&auml;tze werden im Bericht
+     * protokolliert und verhindern nicht das Anlegen der anderen Kunden.
+     * Bei einem Syntaxfehler wird das Einlesen abgebrochen.
+     * @param in JSON-Array oder NDJSON mit den neuen Kunden inkl. Account
+     * @return Bericht mit einem Ergebnis pro Datensatz
+     * @throws IOException falls die Eingabe nicht gelesen werden kann
+     */
+    public BatchReport save(InputStream in) throws IOException {
+        final val report = new BatchReport();
+        final val chunk = new ArrayList<Eintrag>(chunkSize);
+        int index = 0;
+        try (MappingIterator<Kunde> kunden =
+                 objectMapper.readerFor(Kunde.class).readValues(in)) {
+            boolean weiter = true;
+            while (weiter) {
+                final val eintrag = new Eintrag(index);
+                try {
+                    if (!kunden.hasNextValue()) {
+                        break;
+                    }
+                    eintrag.kunde = kunden.nextValue();
+                } catch (JsonMappingException e) {
+                    // Der naechste Datensatz kann trotzdem gelesen werden
+                    eintrag.fehler.add(e.getOriginalMessage());
+                } catch (JsonProcessingException e) {
+                    eintrag.fehler.add(e.getOriginalMessage());
+                    weiter = false;
+                }
+                chunk.add(eintrag);
+                index++;
+
+                if (chunk.size() >= chunkSize) {
+                    saveChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, report);
+        }
+
+        log.info("Massenimport: {} Kunden angelegt, {} fehlerhaft",
+                 report.getCreated(), report.getFailed());
+        return report;
+    }
+
+    private void saveChunk(List<Eintrag> chunk, BatchReport report) {
+        runParallel(chunk, this::validate);
+        checkDuplikate(chunk);
+        checkVorhanden(chunk);
+
+        final val neu = ok(chunk);
+        runParallel(neu, e -> e.passwordEncoded = passwordEncoder.encode(
+            e.kunde.getAccount().getPassword()));
+
+        insertKunden(neu);
+        insertAccounts(ok(neu));
+
+        chunk.forEach(e -> {
+            if (e.isOk()) {
+                prefixIndex.add(e.kunde);
+                trigramIndex.add(e.id, e.kunde);
+                indexTopic.added(e.id, e.kunde);
+                emailCache.put(e.kunde.getEmail(), e.id);
+                emailFilter.add(e.kunde.getEmail());
+                usernameFilter.add(e.username());
+            }
+            report.add(e.toResult());
+        });
+    }
+
+    private void validate(Eintrag eintrag) {
+        final val kunde = eintrag.kunde;
+        if (kunde == null) {
+            if (eintrag.isOk()) {
+                eintrag.fehler.add(KEIN_KUNDE);
+            }
+            return;
+        }
+
+        validator.validate(kunde)
+                 .stream()
+                 .map(ConstraintViolation::getMessage)
+                 .forEach(eintrag.fehler::add);
+        final val account = kunde.getAccount();
+        if (account == null || isBlank(account.getUsername())
+            || isBlank(account.getPassword())) {
+            eintrag.fehler.add(ACCOUNT_FEHLT);
+        }
+
+        // Email in Kleinbuchstaben verwalten
+        if (kunde.getEmail() != null) {
+            kunde.setEmail(kunde.getEmail().toLowerCase(Locale.getDefault()));
+        }
+    }
+
+    // Duplikate innerhalb des Chunks
+    private static void checkDuplikate(List<Eintrag> chunk) {
+        final val emails = new HashSet<String>();
+        final val usernames = new HashSet<String>();
+        ok(chunk).forEach(e -> {
+            if (!emails.add(e.kunde.getEmail())) {
+                e.fehler.add(EMAIL_EXISTIERT);
+            } else if (!usernames.add(e.username())) {
+                e.fehler.add(USERNAME_EXISTIERT);
+            }
+        });
+    }
+
+    // Duplikate in der DB: je eine Abfrage mit $in fuer Email und Username
+    private void checkVorhanden(List<Eintrag> chunk) {
+        final val neu = ok(chunk);
+        final val emails = findVorhanden(Kunde.class, EMAIL,
+            neu.stream().map(e -> e.kunde.getEmail()).collect(toList()));
+        final val usernames = findVorhanden(Account.class, USERNAME,
+            neu.stream().map(Eintrag::username).collect(toList()));
+        neu.forEach(e -> {
+            if (emails.contains(e.kunde.getEmail())) {
+                e.fehler.add(EMAIL_EXISTIERT);
+            } else if (usernames.contains(e.username())) {
+                e.fehler.add(USERNAME_EXISTIERT);
+            }
+        });
+    }
+
+    private Set<String> findVorhanden(Class<?> entityClass, String feld,
+                                      Collection<String> werte) {
+        if (werte.isEmpty()) {
+            return emptySet();
+        }
+        final val query = query(where(feld).in(werte));
+        query.fields().include(feld);
+        final val collection = mongoOperations.getCollectionName(entityClass);
+        return mongoOperations.find(query, DBObject.class, collection)
+                              .stream()
+                              .map(dbo -> (String) dbo.get(feld))
+                              .collect(toSet());
+    }
+
+    private void insertKunden(List<Eintrag> neu) {
+        if (neu.isEmpty()) {
+            return;
+        }
+
+        // Die Dokumente werden direkt erzeugt, weil ein Bulk-Insert weder
+        // die ID zurueckliefert noch Auditing und Versionierung beruecksichtigt
+        final val converter = mongoOperations.getConverter();
+        final val jetzt = converter.convertToMongoType(LocalDateTime.now());
+        final val dokumente = neu.stream().map(e -> {
+            e.id = new ObjectId();
+            e.kunde.setUsername(e.username());
+            final val dbo = new BasicDBObject();
+            converter.write(e.kunde, dbo);
+            dbo.put(ID, e.id);
+            dbo.put(VERSION, 0);
+            dbo.put(ERZEUGT, jetzt);
+            dbo.put(AKTUALISIERT, jetzt);
+            return dbo;
+        }).collect(toList());
+
+        try {
+            mongoOperations.bulkOps(UNORDERED, Kunde.class)
+                           .insert(dokumente)
+                           .execute();
+        } catch (BulkOperationException e) {
+            // z.B. zeitgleich mit einem anderen Request angelegte Email
+            markFehler(neu, e);
+            removeKunden(neu);
+        }
+        // Bulk-Operationen loesen keine Events fuer KundeChangeCounter aus
+        changeCounter.increment();
+    }
+
+    private void insertAccounts(List<Eintrag> neu) {
+        if (neu.isEmpty()) {
+            return;
+        }
+
+        final val rollen =
+            singletonList(new SimpleGrantedAuthority(ROLLE_KUNDE));
+        // Die ID wird vorab erzeugt, damit ein Account ggf. wieder
+        // geloescht werden kann
+        final val accounts = neu.stream()
+                                .map(e -> {
+                                    e.accountId = new ObjectId();
+                                    return new Account(e.accountId,
+                                                       e.username(),
+                                                       e.passwordEncoded,
+                                                       rollen);
+                                })
+                                .collect(toList());
+        try {
+            mongoOperations.bulkOps(UNORDERED, Account.class)
+                           .insert(accounts)
+                           .execute();
+        } catch (BulkOperationException e) {
+            markFehler(neu, e);
+
+            // Kunden ohne Account und ggf. gespeicherte Accounts der
+            // fehlerhaften Datensaetze wieder loeschen
+            final val ids = neu.stream()
+                               .filter(eintrag -> !eintrag.isOk())
+                               .map(eintrag -> eintrag.accountId)
+                               .collect(toList());
+            if (!ids.isEmpty()) {
+                mongoOperations.remove(query(where(ID).in(ids)),
+                                       Account.class);
+            }
+            removeKunden(neu);
+        }
+    }
+
+    // Die Kunden der fehlerhaften Datensaetze loeschen. Bei Fehlern pro
+    // Datensatz wurden sie nicht gespeichert, d.h. es wird nichts geloescht.
+    private void removeKunden(List<Eintrag> eintraege) {
+        final val ids = eintraege.stream()
+                                 .filter(eintrag -> !eintrag.isOk())
+                                 .map(eintrag -> eintrag.id)
+                                 .collect(toList());
+        if (!ids.isEmpty()) {
+            mongoOperations.remove(query(where(ID).in(ids)), Kunde.class);
+        }
+    }
+
+    // Ohne Fehler pro Datensatz, z.B. bei einem Write Concern Error, ist
+    // unbekannt, welche Dokumente gespeichert wurden: dann sind alle
+    // Datensaetze fehlerhaft und werden vom Aufrufer wieder geloescht
+    private void markFehler(List<Eintrag> eintraege,
+                            BulkOperationException e) {
+        if (e.getErrors().isEmpty()) {
+            log.warn("Bulk-Insert ohne Fehler pro Datensatz: {}",
+                     e.getMessage());
+            eintraege.forEach(eintrag ->
+                eintrag.fehler.add(NICHT_GESPEICHERT));
+            return;
+        }
+        e.getErrors().forEach(error -> {
+            final val eintrag = eintraege.get(error.getIndex());
+            eintrag.fehler.add(error.getCode() == DUPLICATE_KEY
+                               ? duplicateKeyMsg(error.getMessage())
+                               : error.getMessage());
+        });
+    }
+
+    // Meldung passend zum verletzten eindeutigen Index
+    private static String duplicateKeyMsg(String message) {
+        final val pos = message == null ? -1 : message.indexOf(INDEX);
+        if (pos < 0) {
+            return message;
+        }
+        final val index = message.substring(pos + INDEX.length());
+        if (index.startsWith(EMAIL)) {
+            return EMAIL_EXISTIERT;
+        }
+        if (index.startsWith(USERNAME)) {
+            return USERNAME_EXISTIERT;
+        }
+        return message;
+    }
+
+    private void runParallel(List<Eintrag> eintraege,
+                             Consumer<Eintrag> action) {
+        final val futures = eintraege.stream()
+                                     .map(e -> runAsync(() -> action.accept(e),
+                                                        executor))
+                                     .toArray(CompletableFuture[]::new);
+        allOf(futures).join();
+    }
+
+    private static List<Eintrag> ok(List<Eintrag> eintraege) {
+        return eintraege.stream().filter(Eintrag::isOk).collect(toList());
+    }
+
+    /**
+     * Ein Datensatz aus der Eingabe w&auml;hrend der Verarbeitung
+     */
+    private static final class Eintrag {
+        private final int index;
+        private final List<String> fehler = new ArrayList<>();
+        private Kunde kunde;
+        private String passwordEncoded;
+        private ObjectId id;
+        private ObjectId accountId;
+
+        Eintrag(int index) {
+            this.index = index;
+        }
+
+        boolean isOk() {
+            return fehler.isEmpty();
+        }
+
+        String username() {
+            return kunde.getAccount().getUsername();
+        }
+
+        BatchResult toResult() {
+            final val email = kunde == null ? null : kunde.getEmail();
+            return isOk()
+                   ? new BatchResult(index, id.toHexString(), email, null)
+                   : new BatchResult(index, null, email, fehler);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IAtomicLong;
+import de.hska.kunde.entity.Kunde;
+import org.springframework.data.mongodb.core.mapping.event
+       .AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cluster-weiter Z&auml;hler f&uuml;r &Auml;nderungen an der Collection
+ * <code>kunde</code>, z.B. als Basis f&uuml;r schwache ETags bei Suchen.
+ * Jedes Speichern und L&ouml;schen durch MongoTemplate bzw. die Repositories
+ * erh&ouml;ht den Z&auml;hler; Bulk-Operationen m&uuml;ssen ihn mit
+ * increment() selbst erh&ouml;hen, weil sie keine Events ausl&ouml;sen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+public class KundeChangeCounter extends AbstractMongoEventListener<Kunde> {
+    /**
+     * Name des Z&auml;hlers in Hazelcast.
+     */
+    static final String NAME = "kunde_aenderungen";
+
+    private final IAtomicLong counter;
+
+    KundeChangeCounter(HazelcastInstance hazelcastInstance) {
+        counter = hazelcastInstance.getAtomicLong(NAME);
+        // Nach einem Neustart des Clusters beginnt der Zaehler bei der
+        // aktuellen Zeit, damit ein ETag von vorher nicht zufaellig passt
+        counter.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    /**
+     * Den aktuellen Stand des Z&auml;hlers ermitteln
+     * @return Der Stand des Z&auml;hlers
+     */
+    public long get() {
+        return counter.get();
+    }
+
+    /**
+     * Den Z&auml;hler nach einer &Auml;nderung ohne Event erh&ouml;hen
+     */
+    void increment() {
+        counter.incrementAndGet();
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Kunde> event) {
+        increment();
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Kunde> event) {
+        increment();
+    }
+}
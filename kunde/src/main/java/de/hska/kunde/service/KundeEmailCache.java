@@ -0,0 +1,136 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import de.hska.kunde.entity.Kunde;
+import java.util.Optional;
+import lombok.val;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Verteilter Cache f&uuml;r die Zuordnung von Emailadressen zu Kunde-IDs
+ * als Sekund&auml;rschl&uuml;ssel zum Cache <code>kunde_id</code>. Auch
+ * nicht-vorhandene Emailadressen werden mit einer kurzen Lebensdauer
+ * gespeichert, damit die Pr&uuml;fung auf Eindeutigkeit beim Neuanlegen
+ * i.d.R. keine Abfrage an MongoDB erfordert. Der Cache wird von KundeService
+ * bei jedem Neuanlegen, Aktualisieren und L&ouml;schen gepflegt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class KundeEmailCache {
+    /**
+     * Name des Cache.
+     */
+    static final String NAME = "kunde_email";
+
+    private static final String KUNDE_ID = "kunde_id";
+
+    // Eintrag fuer eine nicht-vorhandene Emailadresse
+    private static final String NICHT_VORHANDEN = "";
+
+    private final KundeRepository repo;
+    private final IMap<String, String> emails;
+    private final Cache kunden;
+    private final long negativeTtl;
+
+    KundeEmailCache(KundeRepository repo,
+                    HazelcastInstance hazelcastInstance,
+                    CacheManager cacheManager,
+                    @Value("${cache.email.negativeTtl:30}") long negativeTtl) {
+        this.repo = repo;
+        emails = hazelcastInstance.getMap(NAME);
+        kunden = cacheManager.getCache(KUNDE_ID);
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * Die ID zu einer Emailadresse ermitteln. Nur falls es zur Emailadresse
+     * keinen Eintrag im Cache gibt, wird in MongoDB gesucht.
+     * @param email Die Emailadresse
+     * @return Die ID des Kunden oder ein leeres Optional-Objekt
+     */
+    Optional<ObjectId> findId(String email) {
+        final val id = emails.get(email);
+        if (id != null) {
+            return NICHT_VORHANDEN.equals(id)
+                   ? Optional.empty()
+                   : Optional.of(new ObjectId(id));
+        }
+
+        final val kunde = repo.findByEmail(email);
+        if (kunde.isPresent()) {
+            put(kunde.get());
+        } else {
+            putNichtVorhanden(email);
+        }
+        return kunde.map(Kunde::getId);
+    }
+
+    /**
+     * Einen neuen bzw. aktualisierten Kunden eintragen
+     * @param kunde Der Kunde mit ID und Emailadresse
+     */
+    void put(Kunde kunde) {
+        put(kunde.getEmail(), kunde.getId());
+    }
+
+    /**
+     * Eine Emailadresse mit der ID eines neuen Kunden eintragen, z.B. beim
+     * Massenimport
+     * @param email Die Emailadresse
+     * @param id Die ID des Kunden
+     */
+    void put(String email, ObjectId id) {
+        emails.set(email, id.toHexString());
+    }
+
+    /**
+     * Einen aktualisierten Kunden eintragen. Falls sich die Emailadresse
+     * ge&auml;ndert hat, ist die bisherige Emailadresse nicht mehr vorhanden.
+     * @param alt Der Kunde vor der Aktualisierung
+     * @param neu Der Kunde nach der Aktualisierung
+     */
+    void update(Kunde alt, Kunde neu) {
+        if (!alt.getEmail().equals(neu.getEmail())) {
+            putNichtVorhanden(alt.getEmail());
+        }
+        put(neu);
+    }
+
+    /**
+     * Einen gel&ouml;schten Kunden austragen, auch aus dem Cache
+     * <code>kunde_id</code>
+     * @param kunde Der gel&ouml;schte Kunde
+     */
+    void remove(Kunde kunde) {
+        putNichtVorhanden(kunde.getEmail());
+        kunden.evict(kunde.getId());
+    }
+
+    private void putNichtVorhanden(String email) {
+        emails.set(email, NICHT_VORHANDEN, negativeTtl, SECONDS);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.querydsl.core.types.Predicate;
+import de.hska.kunde.entity.Kunde;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Service;
+
+import static de.hska.kunde.service.KundeFeld.GEBURTSDATUM;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneId.systemDefault;
+import static java.util.Arrays.asList;
+import static org.springframework.util.StreamUtils.nonClosing;
+
+/**
+ * Export aller Kunden oder der Kunden zu einem Pr&auml;dikat als
+ * GZIP-komprimiertes NDJSON oder CSV. Die Dokumente werden direkt aus dem
+ * Cursor von MongoDB gelesen und ohne Konvertierung in Entities bzw.
+ * Resources geschrieben, d.h. der Speicherbedarf ist unabh&auml;ngig von der
+ * Anzahl der Kunden. Die Kunden sind nach der ID sortiert, so dass ein
+ * abgebrochener Export ab der zuletzt empfangenen ID fortgesetzt werden kann.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Service
+public class KundeExportService {
+    private static final String ID = "_id";
+    private static final String GT = "$gt";
+    private static final String AND = "$and";
+    private static final int ASC = 1;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final char CSV_SEPARATOR = ',';
+    private static final char CSV_QUOTE = '"';
+    private static final String CSV_NEWLINE = "\r\n";
+    private static final char LIST_SEPARATOR = ';';
+    private static final char NEWLINE = '\n';
+
+    private final MongoOperations mongoOperations;
+    private final QuerydslMongoSerializer serializer;
+    private final JsonFactory jsonFactory;
+    private final Logger log;
+    private final int batchSize;
+
+    KundeExportService(MongoOperations mongoOperations,
+                       Logger log,
+                       @Value("${kunde.export.batchSize:1000}") int batchSize) {
+        this.mongoOperations = mongoOperations;
+        serializer =
+            new QuerydslMongoSerializer(mongoOperations.getConverter());
+        jsonFactory = new JsonFactory();
+        this.log = log;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Kunden GZIP-komprimiert exportieren.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
+     * @param format NDJSON oder CSV
+     * @param felder Die zu exportierenden Felder
+     * @param after ID des zuletzt exportierten Kunden oder null
+     * @param out Ausgabe f&uuml;r die komprimierten Daten; sie wird nicht
+     *            geschlossen
+     * @throws IOException falls nicht geschrieben werden kann, z.B. bei einem
+     *         Verbindungsabbruch. Der Cursor wird dann geschlossen.
+     */
+    public void export(Predicate predicate, ExportFormat format,
+                       Set<KundeFeld> felder, ObjectId after,
+                       OutputStream out) throws IOException {
+        log.debug("export: format={}, felder={}, after={}", format, felder,
+                  after);
+        // close() schreibt den Trailer von GZIP, schliesst aber nicht "out"
+        try (OutputStream gzip = new GZIPOutputStream(nonClosing(out),
+                                                      GZIP_BUFFER_SIZE);
+             DBCursor cursor = cursor(predicate, felder, after)) {
+            if (format == ExportFormat.CSV) {
+                writeCsv(cursor, felder, gzip);
+            } else {
+                writeNdjson(cursor, felder, gzip);
+            }
+        }
+    }
+
+    private DBCursor cursor(Predicate predicate, Set<KundeFeld> felder,
+                            ObjectId after) {
+        DBObject query = predicate == null
+                         ? new BasicDBObject()
+                         : (DBObject) serializer.handle(predicate);
+        if (after != null) {
+            final val seek = new BasicDBObject(ID,
+                                               new BasicDBObject(GT, after));
+            query = query.keySet().isEmpty()
+                    ? seek
+                    : new BasicDBObject(AND, asList(query, seek));
+        }
+
+        // Projektion: nur die ausgewaehlten Felder werden uebertragen
+        final val keys = new BasicDBObject();
+        felder.forEach(feld -> keys.put(feld.getPath(), 1));
+
+        // Sortierung nach _id verwendet den Index und ermoeglicht das
+        // Fortsetzen mit "after"
+        final val collection = mongoOperations.getCollection(
+            mongoOperations.getCollectionName(Kunde.class));
+        return collection.find(query, keys)
+                         .sort(new BasicDBObject(ID, ASC))
+                         .batchSize(batchSize);
+    }
+
+    private void writeNdjson(DBCursor cursor, Set<KundeFeld> felder,
+                             OutputStream out) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            while (cursor.hasNext()) {
+                final val doc = cursor.next();
+                generator.writeStartObject();
+                // Die Enum-Reihenfolge haelt Felder eines eingebetteten
+                // Dokuments zusammen, z.B. "adresse.plz" und "adresse.ort"
+                String parent = null;
+                for (KundeFeld feld : felder) {
+                    final val value = value(doc, feld);
+                    if (value == null) {
+                        continue;
+                    }
+                    final val elements = feld.pathElements();
+                    final val newParent = elements.length > 1
+                                          ? elements[0]
+                                          : null;
+                    if (parent != null && !parent.equals(newParent)) {
+                        generator.writeEndObject();
+                    }
+                    if (newParent != null && !newParent.equals(parent)) {
+                        generator.writeObjectFieldStart(newParent);
+                    }
+                    parent = newParent;
+                    generator.writeFieldName(newParent == null
+                                             ? feld.getName()
+                                             : elements[1]);
+                    writeJsonValue(generator, value);
+                }
+                if (parent != null) {
+                    generator.writeEndObject();
+                }
+                generator.writeEndObject();
+                generator.writeRaw(NEWLINE);
+            }
+        }
+    }
+
+    private static void writeJsonValue(JsonGenerator generator, Object value)
+            throws IOException {
+        if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) value) {
+                writeJsonValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+    private static void writeCsv(DBCursor cursor, Set<KundeFeld> felder,
+                                 OutputStream out) throws IOException {
+        final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(out, UTF_8));
+        boolean first = true;
+        for (KundeFeld feld : felder) {
+            if (!first) {
+                writer.write(CSV_SEPARATOR);
+            }
+            writer.write(feld.getName());
+            first = false;
+        }
+        writer.write(CSV_NEWLINE);
+
+        while (cursor.hasNext()) {
+            final val doc = cursor.next();
+            first = true;
+            for (KundeFeld feld : felder) {
+                if (!first) {
+                    writer.write(CSV_SEPARATOR);
+                }
+                writeCsvValue(writer, value(doc, feld));
+                first = false;
+            }
+            writer.write(CSV_NEWLINE);
+        }
+        writer.flush();
+    }
+
+    private static void writeCsvValue(Writer writer, Object value)
+            throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        final String str;
+        if (value instanceof Collection) {
+            final val sb = new StringBuilder();
+            for (Object element : (Collection<?>) value) {
+                if (sb.length() > 0) {
+                    sb.append(LIST_SEPARATOR);
+                }
+                sb.append(element);
+            }
+            str = sb.toString();
+        } else {
+            str = value.toString();
+        }
+
+        // RFC 4180: Anfuehrungszeichen verdoppeln und den Wert einschliessen
+        if (str.indexOf(CSV_SEPARATOR) < 0 && str.indexOf(CSV_QUOTE) < 0
+            && str.indexOf('\n') < 0 && str.indexOf('\r') < 0) {
+            writer.write(str);
+            return;
+        }
+        writer.write(CSV_QUOTE);
+        writer.write(str.replace("\"", "\"\""));
+        writer.write(CSV_QUOTE);
+    }
+
+    /**
+     * Den Wert eines Feldes aus einem Dokument lesen und f&uuml;r den Export
+     * aufbereiten: ObjectId als HEX-String und Datumswerte wie bei Spring
+     * Data in der Zeitzone des Servers.
+     */
+    private static Object value(DBObject doc, KundeFeld feld) {
+        Object value = doc;
+        for (String element : feld.pathElements()) {
+            if (!(value instanceof DBObject)) {
+                return null;
+            }
+            value = ((DBObject) value).get(element);
+        }
+
+        if (value instanceof ObjectId) {
+            return ((ObjectId) value).toHexString();
+        }
+        if (value instanceof Date) {
+            final val dateTime = LocalDateTime.ofInstant(
+                ((Date) value).toInstant(), systemDefault());
+            return feld == GEBURTSDATUM ? dateTime.toLocalDate() : dateTime;
+        }
+        return value;
+    }
+}
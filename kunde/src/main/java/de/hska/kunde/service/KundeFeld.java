@@ -0,0 +1,132 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.val;
+
+import static de.hska.kunde.util.Strings.isBlank;
+
+/**
+ * Felder eines Kunden, die exportiert bzw. bei einer Suche mit "fields"
+ * ausgew&auml;hlt werden d&uuml;rfen. Verschachtelte Felder wie bei der
+ * Adresse werden durch einen Punkt getrennt. Die Reihenfolge der Enum-Werte
+ * ist die Reihenfolge beim Export.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public enum KundeFeld {
+    ID("id", "_id"),
+    NACHNAME("nachname"),
+    EMAIL("email"),
+    NEWSLETTER("newsletter"),
+    GEBURTSDATUM("geburtsdatum"),
+    UMSATZ_BETRAG("umsatz.betrag"),
+    UMSATZ_WAEHRUNG("umsatz.waehrung"),
+    HOMEPAGE("homepage"),
+    GESCHLECHT("geschlecht"),
+    FAMILIENSTAND("familienstand"),
+    INTERESSEN("interessen"),
+    ADRESSE_PLZ("adresse.plz"),
+    ADRESSE_ORT("adresse.ort"),
+    USERNAME("username"),
+    ERZEUGT("erzeugt"),
+    AKTUALISIERT("aktualisiert");
+
+    private static final char SEPARATOR = ',';
+    private static final char PATH_SEPARATOR = '.';
+
+    private static final Map<String, Set<KundeFeld>> NAME_CACHE =
+        new ConcurrentHashMap<>();
+    static {
+        Stream.of(values())
+              .forEach(feld -> {
+            NAME_CACHE.put(feld.name, EnumSet.of(feld));
+            // "adresse" steht fuer "adresse.plz" und "adresse.ort"
+            final val pos = feld.name.indexOf(PATH_SEPARATOR);
+            if (pos > 0) {
+                NAME_CACHE.computeIfAbsent(feld.name.substring(0, pos),
+                                       k -> EnumSet.noneOf(KundeFeld.class))
+                          .add(feld);
+            }
+        });
+    }
+
+    /**
+     * Name des Feldes beim Export, z.B. "adresse.plz".
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * Pfad des Feldes im Dokument von MongoDB, z.B. "_id".
+     */
+    @Getter
+    private final String path;
+
+    KundeFeld(String name) {
+        this(name, name);
+    }
+
+    KundeFeld(String name, String path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    /**
+     * Die Pfadelemente, z.B. f&uuml;r den Zugriff auf ein eingebettetes
+     * Dokument
+     * @return Die Pfadelemente
+     */
+    String[] pathElements() {
+        return path.split("\\" + PATH_SEPARATOR);
+    }
+
+    /**
+     * Eine kommaseparierte Liste mit Feldnamen einlesen. Die ID ist immer
+     * enthalten, damit ein abgebrochener Export fortgesetzt werden kann.
+     * @param fields Die Feldnamen ohne Unterscheidung zwischen Gro&szlig;-
+     *               und Kleinschreibung, z.B. "nachname,email,adresse";
+     *               bei null oder einem leeren String alle Felder
+     * @return Die ausgew&auml;hlten Felder in der Reihenfolge beim Export
+     * @throws IllegalArgumentException falls ein Feld nicht exportiert
+     *         werden darf
+     */
+    public static Set<KundeFeld> parse(String fields) {
+        if (isBlank(fields)) {
+            return EnumSet.allOf(KundeFeld.class);
+        }
+
+        final val result = EnumSet.of(ID);
+        for (String field : fields.split(String.valueOf(SEPARATOR))) {
+            final val felder = NAME_CACHE.get(field.trim()
+                                                   .toLowerCase(Locale.ROOT));
+            if (felder == null) {
+                throw new IllegalArgumentException(
+                    "Unzulaessiges Feld: " + field);
+            }
+            result.addAll(felder);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import de.hska.kunde.entity.Kunde;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cluster-weite Benachrichtigung &uuml;ber neue, ge&auml;nderte und
+ * gel&ouml;schte Kunden durch ein Topic in Hazelcast, damit die Indexe im
+ * Hauptspeicher aller Instanzen auch die &Auml;nderungen der anderen
+ * Instanzen enthalten. Die eigene Instanz pflegt ihre Indexe sofort selbst
+ * und ignoriert deshalb ihre eigenen Nachrichten. Es werden nur ID, Nachname,
+ * Email und Adresse &uuml;bertragen. Da ein Topic keine Zustellung
+ * garantiert, werden die Indexe zus&auml;tzlich periodisch neu aufgebaut.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class KundeIndexTopic {
+    /**
+     * Name des Topic in Hazelcast.
+     */
+    static final String NAME = "kunde_index";
+
+    private final ITopic<Aenderung> topic;
+
+    KundeIndexTopic(HazelcastInstance hazelcastInstance) {
+        topic = hazelcastInstance.getTopic(NAME);
+    }
+
+    /**
+     * Einen Listener f&uuml;r die &Auml;nderungen der anderen Instanzen
+     * registrieren
+     * @param listener Listener mit dem bisherigen und dem neuen Kunden; beim
+     *                 Neuanlegen ist der bisherige, beim L&ouml;schen der
+     *                 neue Kunde null
+     */
+    void subscribe(BiConsumer<Kunde, Kunde> listener) {
+        topic.addMessageListener(message -> {
+            if (!message.getPublishingMember().localMember()) {
+                final Aenderung aenderung = message.getMessageObject();
+                listener.accept(aenderung.alt, aenderung.neu);
+            }
+        });
+    }
+
+    void added(Kunde neu) {
+        added(neu.getId(), neu);
+    }
+
+    /**
+     * Einen neuen Kunden bekanntgeben, z.B. beim Massenimport, bei dem die
+     * ID nicht im Kunde-Objekt gesetzt ist
+     * @param id Die ID des Kunden
+     * @param neu Der neue Kunde
+     */
+    void added(ObjectId id, Kunde neu) {
+        topic.publish(new Aenderung(null, snapshot(id, neu)));
+    }
+
+    void updated(Kunde alt, Kunde neu) {
+        topic.publish(new Aenderung(snapshot(alt.getId(), alt),
+                                    snapshot(neu.getId(), neu)));
+    }
+
+    void removed(Kunde alt) {
+        topic.publish(new Aenderung(snapshot(alt.getId(), alt), null));
+    }
+
+    private static Kunde snapshot(ObjectId id, Kunde kunde) {
+        return Kunde.builder()
+                    .id(id)
+                    .nachname(kunde.getNachname())
+                    .email(kunde.getEmail())
+                    .adresse(kunde.getAdresse())
+                    .build();
+    }
+
+    private static final class Aenderung implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Kunde alt;
+        final Kunde neu;
+
+        Aenderung(Kunde alt, Kunde neu) {
+            this.alt = alt;
+            this.neu = neu;
+        }
+    }
+}
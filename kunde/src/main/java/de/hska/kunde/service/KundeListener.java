@@ -16,56 +16,51 @@
  */
 package de.hska.kunde.service;
 
-import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
-
 import lombok.val;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMailMessage;
 import org.springframework.stereotype.Service;
 
 
 /**
- * Listener f&uuml;r Kunden-Ereignisse.
+ * Listener f&uuml;r Kunden-Ereignisse. Die Emails werden nicht direkt
+ * versendet, sondern in den Postausgang geschrieben, so dass das Neuanlegen
+ * eines Kunden nicht vom Mailserver abh&auml;ngt. Im Sammelmodus
+ * (mail.digest.enabled) werden die neuen Kunden stattdessen von
+ * NeuerKundeDigest zu einer Email pro Zeitfenster zusammengefasst.
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
  *         J&uuml;rgen Zimmermann</a>
  */
 @Service
 class KundeListener {
-    private final JavaMailSender mailSender;
+    private final KundeMailOutbox outbox;
+    private final NeuerKundeDigest digest;
     private final String from;
     private final String sales;
-    private final KundeListenerFallback fallback;
+    private final boolean digestEnabled;
 
-    KundeListener(JavaMailSender mailSender,
+    KundeListener(KundeMailOutbox outbox,
+                  NeuerKundeDigest digest,
                   @Value("${mail.from}") String from,
                   @Value("${mail.sales}") String sales,
-                  KundeListenerFallback fallback) {
-        this.mailSender = mailSender;
+                  @Value("${mail.digest.enabled:false}")
+                  boolean digestEnabled) {
+        this.outbox = outbox;
+        this.digest = digest;
         this.from = from;
         this.sales = sales;
-        this.fallback = fallback;
+        this.digestEnabled = digestEnabled;
     }
 
     @EventListener
-    // @Async erfordert @EnableAsync bei der Application-Klasse
-    @HystrixCommand(fallbackMethod = "onSaveFallback")
     void onSave(NeuerKundeEvent event) {
-        final val mimeMessage = mailSender.createMimeMessage();
-        final val msg = new MimeMailMessage(mimeMessage);
-        msg.setFrom(from);
-        msg.setTo(sales);
-        msg.setSubject("Neuer Kunde");
+        if (digestEnabled) {
+            digest.add(event.getKunde());
+            return;
+        }
+
         final val body = "<b>Neuer Kunde:</b> \""
                          + event.getKunde().getNachname() + '"';
-        msg.setText(body);
-
-        mailSender.send(msg.getMimeMessage());
-    }
-    
-    @SuppressWarnings("unused")
-    void onSaveFallback(NeuerKundeEvent event) {
-        fallback.onSave(event);
+        outbox.enqueue(from, sales, "Neuer Kunde", body);
     }
 }
@@ -0,0 +1,139 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.mail.internet.MimeMessage;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Versenden der Emails aus dem Postausgang im Hintergrund. Pro Durchlauf
+ * werden bis zu batchSize Emails gesperrt und &uuml;ber eine einzige
+ * SMTP-Verbindung versendet, solange der Postausgang volle Bl&ouml;cke
+ * liefert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Service
+class KundeMailDispatcher {
+    private final JavaMailSender mailSender;
+    private final KundeMailOutbox outbox;
+    private final Logger log;
+    private final int batchSize;
+
+    KundeMailDispatcher(JavaMailSender mailSender,
+                        KundeMailOutbox outbox,
+                        Logger log,
+                        @Value("${mail.outbox.batchSize:50}") int batchSize) {
+        this.mailSender = mailSender;
+        this.outbox = outbox;
+        this.log = log;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Diese Methode wird periodisch aufgerufen, nachdem der vorherige Aufruf
+     * beendet ist.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.interval:5000}")
+    void dispatch() {
+        int anzahl;
+        do {
+            anzahl = dispatchBatch();
+        } while (anzahl == batchSize);
+    }
+
+    private int dispatchBatch() {
+        final val mails = new HashMap<MimeMessage, OutboxMail>(batchSize * 2);
+        for (int i = 0; i < batchSize; i++) {
+            final val mail = outbox.claim();
+            if (!mail.isPresent()) {
+                break;
+            }
+            try {
+                mails.put(toMimeMessage(mail.get()), mail.get());
+            } catch (MailException e) {
+                failed(mail.get(), e);
+            }
+        }
+        if (mails.isEmpty()) {
+            return 0;
+        }
+
+        // JavaMailSenderImpl verschickt alle Emails eines Aufrufs ueber
+        // dieselbe Verbindung zum Mailserver
+        Map<Object, Exception> fehler = Collections.emptyMap();
+        final val messages = new ArrayList<MimeMessage>(mails.keySet());
+        try {
+            mailSender.send(messages.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            // Bei einem Verbindungsfehler sind alle Emails enthalten
+            fehler = e.getFailedMessages();
+            if (fehler.isEmpty()) {
+                fehler = allFailed(messages, e);
+            }
+        } catch (MailException e) {
+            fehler = allFailed(messages, e);
+        }
+
+        for (final val entry : mails.entrySet()) {
+            final val e = fehler.get(entry.getKey());
+            if (e == null) {
+                outbox.sent(entry.getValue());
+            } else {
+                failed(entry.getValue(), e);
+            }
+        }
+        return mails.size();
+    }
+
+    private MimeMessage toMimeMessage(OutboxMail mail) {
+        final val msg = new MimeMailMessage(mailSender.createMimeMessage());
+        msg.setFrom(mail.getFrom());
+        msg.setTo(mail.getTo());
+        msg.setSubject(mail.getSubject());
+        msg.setText(mail.getText());
+        return msg.getMimeMessage();
+    }
+
+    private static Map<Object, Exception> allFailed(
+            Iterable<MimeMessage> messages, Exception e) {
+        final val fehler = new HashMap<Object, Exception>();
+        messages.forEach(msg -> fehler.put(msg, e));
+        return fehler;
+    }
+
+    private void failed(OutboxMail mail, Exception e) {
+        if (outbox.failed(mail, e)) {
+            log.error("Email endgueltig nicht versendet: {}", mail, e);
+        } else {
+            log.warn("Email nicht versendet: {} ({})", mail::getId,
+                     e::getMessage);
+        }
+    }
+}
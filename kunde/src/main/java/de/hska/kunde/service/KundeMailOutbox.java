@@ -0,0 +1,171 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import static java.lang.Math.min;
+import static java.util.Arrays.asList;
+import static org.springframework.data.domain.Sort.Direction.ASC;
+import static org.springframework.data.mongodb.core.FindAndModifyOptions
+              .options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Postausgang in MongoDB f&uuml;r Emails, damit z.B. das Neuanlegen eines
+ * Kunden nicht auf den Mailserver warten muss und bei einem nicht
+ * erreichbaren Mailserver keine Email verloren geht. Die Emails werden von
+ * KundeMailDispatcher im Hintergrund versendet. Mehrere Instanzen des
+ * Microservice k&ouml;nnen denselben Postausgang abarbeiten, weil jede Email
+ * vor dem Versenden f&uuml;r eine bestimmte Zeit gesperrt wird.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class KundeMailOutbox implements PublicMetrics {
+    private static final String METRIC_PREFIX = "mail.outbox.";
+    private static final String NAECHSTER_VERSUCH = "naechsterVersuch";
+    private static final String ERZEUGT = "erzeugt";
+
+    private final MongoOperations mongoOperations;
+    private final long lease;
+    private final long backoff;
+    private final long maxBackoff;
+    private final int maxAttempts;
+
+    private final AtomicLong gesendet = new AtomicLong();
+    private final AtomicLong fehlgeschlagen = new AtomicLong();
+    private final AtomicLong aufgegeben = new AtomicLong();
+    private final AtomicLong letzteVerzoegerung = new AtomicLong();
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    KundeMailOutbox(MongoOperations mongoOperations,
+                    @Value("${mail.outbox.lease:60}") long lease,
+                    @Value("${mail.outbox.backoff:30}") long backoff,
+                    @Value("${mail.outbox.maxBackoff:3600}") long maxBackoff,
+                    @Value("${mail.outbox.maxAttempts:10}") int maxAttempts) {
+        this.mongoOperations = mongoOperations;
+        this.lease = lease;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Eine Email in den Postausgang schreiben
+     * @param from Absender
+     * @param to Empf&auml;nger
+     * @param subject Betreff
+     * @param text Inhalt als HTML
+     */
+    void enqueue(String from, String to, String subject, String text) {
+        mongoOperations.insert(new OutboxMail(from, to, subject, text));
+    }
+
+    /**
+     * Die n&auml;chste f&auml;llige Email f&uuml;r diese Instanz sperren.
+     * Scheitert das Versenden ohne Aufruf von sent() oder failed(), z.B.
+     * durch einen Absturz, wird die Email nach Ablauf der Sperre erneut
+     * versendet.
+     * @return Die gesperrte Email oder ein leeres Optional-Objekt
+     */
+    Optional<OutboxMail> claim() {
+        final val jetzt = LocalDateTime.now();
+        final val query = new Query(where(NAECHSTER_VERSUCH).lte(jetzt))
+            .with(new Sort(ASC, NAECHSTER_VERSUCH));
+        final val update = Update.update(NAECHSTER_VERSUCH,
+                                         jetzt.plusSeconds(lease));
+        return Optional.ofNullable(mongoOperations.findAndModify(
+            query, update, options().returnNew(true), OutboxMail.class));
+    }
+
+    /**
+     * Eine versendete Email aus dem Postausgang entfernen
+     * @param mail Die versendete Email
+     */
+    void sent(OutboxMail mail) {
+        mongoOperations.remove(mail);
+        gesendet.incrementAndGet();
+        letzteVerzoegerung.set(Duration.between(mail.getErzeugt(),
+                                                LocalDateTime.now())
+                                       .toMillis());
+    }
+
+    /**
+     * Eine nicht versendete Email mit exponentiell wachsendem Abstand erneut
+     * einplanen bzw. nach maxAttempts Versuchen aufgeben. Aufgegebene Emails
+     * bleiben zur Analyse im Postausgang.
+     * @param mail Die nicht versendete Email
+     * @param e Die Ursache
+     * @return true, falls die Email aufgegeben wurde
+     */
+    boolean failed(OutboxMail mail, Exception e) {
+        fehlgeschlagen.incrementAndGet();
+        final val versuche = mail.getVersuche() + 1;
+        final val aufgeben = versuche >= maxAttempts;
+        final val naechsterVersuch = aufgeben
+            ? null
+            : LocalDateTime.now().plusSeconds(
+                min(backoff << min(versuche - 1, 30), maxBackoff));
+        if (aufgeben) {
+            aufgegeben.incrementAndGet();
+        }
+
+        final val update = Update.update(NAECHSTER_VERSUCH, naechsterVersuch)
+                                 .set("versuche", versuche)
+                                 .set("fehler", String.valueOf(e));
+        mongoOperations.updateFirst(
+            new Query(where("id").is(mail.getId())), update, OutboxMail.class);
+        return aufgeben;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final val wartend = new Query(where(NAECHSTER_VERSUCH).ne(null));
+        final val anzahl = mongoOperations.count(wartend, OutboxMail.class);
+
+        // Verzoegerung: Alter der aeltesten noch nicht versendeten Email
+        final val aelteste = mongoOperations.findOne(
+            wartend.with(new Sort(ASC, ERZEUGT)), OutboxMail.class);
+        final val verzoegerung = aelteste == null
+            ? 0L
+            : Duration.between(aelteste.getErzeugt(), LocalDateTime.now())
+                      .toMillis();
+
+        return asList(
+            new Metric<>(METRIC_PREFIX + "size", anzahl),
+            new Metric<>(METRIC_PREFIX + "lag", verzoegerung),
+            new Metric<>(METRIC_PREFIX + "sent", gesendet.get()),
+            new Metric<>(METRIC_PREFIX + "failed", fehlgeschlagen.get()),
+            new Metric<>(METRIC_PREFIX + "dead", aufgegeben.get()),
+            new Metric<>(METRIC_PREFIX + "lag.last",
+                         letzteVerzoegerung.get()));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Zuordnung eines Kunden zu seiner multimedialen Datei. Die ID ist die
+ * Kunde-ID, der Hashwert ist die ID von MediaBlob. Die ID der Datei in
+ * GridFS ist redundant gespeichert, damit beim Download nur ein Zugriff
+ * vor dem Lesen der Datei notwendig ist.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Document(collection = "kunde_media")
+@Data
+@NoArgsConstructor
+class KundeMedia {
+    private ObjectId id;
+    private String hash;
+    private ObjectId fileId;
+    private LocalDateTime aktualisiert;
+}
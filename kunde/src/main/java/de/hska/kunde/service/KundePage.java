@@ -16,25 +16,26 @@
  */
 package de.hska.kunde.service;
 
-import org.apache.logging.log4j.Logger;
-import org.springframework.stereotype.Service;
+import de.hska.kunde.entity.Kunde;
+import java.util.List;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
 
 /**
- * Fallback zum Listener f&uuml;r neue Kunden.
+ * Eine Seite mit Kunden bei der Keyset-Pagination zzgl. der Cursor f&uuml;r
+ * die n&auml;chste und die vorherige Seite.
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
  *         J&uuml;rgen Zimmermann</a>
  */
-@Service
-class KundeListenerFallback {
-    private final Logger log;
-    
-    KundeListenerFallback(Logger log) {
-        this.log = log;
-    }
-
-    void onSave(NeuerKundeEvent event) {
-        // TODO Abspeichern der noch nicht gesendeten Email
-        log.error("Fehler beim Senden der Email: Nachname = {}",
-                  event::getKunde);
-    }
+@Getter
+@AllArgsConstructor
+@ToString
+public final class KundePage {
+    private final List<Kunde> content;
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private final Optional<KeysetCursor> next;
+    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+    private final Optional<KeysetCursor> prev;
 }
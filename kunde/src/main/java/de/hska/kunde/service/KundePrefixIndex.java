@@ -0,0 +1,125 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.util.PrefixIndex;
+import java.util.List;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pr&auml;fix-Indexe im Hauptspeicher f&uuml;r die Autovervollst&auml;ndigung
+ * von Nachnamen und Emailadressen, so dass dabei keine Abfrage an MongoDB
+ * abgesetzt wird. Die Indexe werden beim Start des Microservice aus der DB
+ * aufgebaut und von KundeService bei jedem Neuanlegen, Aktualisieren und
+ * L&ouml;schen gepflegt. &Auml;nderungen anderer Instanzen kommen durch
+ * KundeIndexTopic hinzu. Falls dabei Nachrichten verloren gehen, korrigiert
+ * der periodische Neuaufbau die Indexe.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class KundePrefixIndex {
+    private volatile Indexe indexe = new Indexe();
+    // Indexe, die gerade aus der DB aufgebaut werden
+    private volatile Indexe rebuilding;
+    private final KundeRepository repo;
+    private final Logger log;
+
+    KundePrefixIndex(KundeRepository repo,
+                     KundeIndexTopic topic,
+                     Logger log) {
+        this.repo = repo;
+        this.log = log;
+        topic.subscribe(this::update);
+    }
+
+    /**
+     * Die Indexe aus der DB aufbauen, nachdem ggf. Testdaten geladen wurden,
+     * und danach periodisch. Dabei werden nur Nachname und Email gelesen.
+     * &Auml;nderungen w&auml;hrend des Aufbaus werden auch in die neuen Indexe
+     * eingetragen.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${kunde.index.rebuildInterval:3600000}",
+               initialDelayString = "${kunde.index.rebuildInterval:3600000}")
+    synchronized void rebuild() {
+        final val neu = new Indexe();
+        rebuilding = neu;
+        try (val kunden = repo.readAllBy()) {
+            kunden.forEach(k -> {
+                neu.nachnamen.add(k.getNachname());
+                neu.emails.add(k.getEmail());
+            });
+        } finally {
+            rebuilding = null;
+        }
+        indexe = neu;
+        log.info("Praefix-Index: {} Nachnamen, {} Emailadressen",
+                 neu.nachnamen.size(), neu.emails.size());
+    }
+
+    List<String> findNachnamen(String prefix, int limit) {
+        return indexe.nachnamen.find(prefix, limit);
+    }
+
+    List<String> findEmails(String prefix, int limit) {
+        return indexe.emails.find(prefix, limit);
+    }
+
+    void add(Kunde kunde) {
+        update(null, kunde);
+    }
+
+    void remove(Kunde kunde) {
+        update(kunde, null);
+    }
+
+    /**
+     * Einen Kunden in den Indexen ersetzen
+     * @param alt Der bisherige Kunde oder null beim Neuanlegen
+     * @param neu Der neue Kunde oder null beim L&ouml;schen
+     */
+    void update(Kunde alt, Kunde neu) {
+        indexe.update(alt, neu);
+        final val aufbau = rebuilding;
+        if (aufbau != null) {
+            aufbau.update(alt, neu);
+        }
+    }
+
+    private static final class Indexe {
+        final PrefixIndex nachnamen = new PrefixIndex();
+        final PrefixIndex emails = new PrefixIndex();
+
+        void update(Kunde alt, Kunde neu) {
+            if (alt != null) {
+                nachnamen.remove(alt.getNachname());
+                emails.remove(alt.getEmail());
+            }
+            if (neu != null) {
+                nachnamen.add(neu.getNachname());
+                emails.add(neu.getEmail());
+            }
+        }
+    }
+}
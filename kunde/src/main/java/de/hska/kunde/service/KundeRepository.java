@@ -43,7 +43,8 @@ import org.springframework.scheduling.annotation.Async;
 })
 public interface KundeRepository extends CrudRepository<Kunde, ObjectId>,
                                   QueryDslPredicateExecutor<Kunde>,
-                                  QuerydslBinderCustomizer<QKunde> {
+                                  QuerydslBinderCustomizer<QKunde>,
+                                  KundeRepositoryCustom {
     @FunctionalInterface
     interface NachnameProjection {
         String getNachname();
@@ -54,6 +55,15 @@ public interface KundeRepository extends CrudRepository<Kunde, ObjectId>,
         String getEmail();
     }
 
+    interface NachnameEmailProjection extends NachnameProjection,
+                                              EmailProjection {
+    }
+
+    @FunctionalInterface
+    interface VersionProjection {
+        Integer getVersion();
+    }
+
     /**
      * Suche nach einem Kunden mit der gegebenen ID.
      * @param id Die ID des gesuchten Kunden
@@ -62,6 +72,15 @@ public interface KundeRepository extends CrudRepository<Kunde, ObjectId>,
     // SELECT * FROM kunde WHERE id = ...
     Optional<Kunde> findById(ObjectId id);
 
+    /**
+     * Die Versionsnummer eines Kunden mit der gegebenen ID, z.B. f&uuml;r
+     * einen bedingten GET-Request. Aus MongoDB wird nur dieses Feld gelesen.
+     * @param id Die ID des gesuchten Kunden
+     * @return Die Versionsnummer oder empty
+     */
+    // SELECT version FROM kunde WHERE id = ...
+    Optional<VersionProjection> findVersionById(ObjectId id);
+
     /**
      * Suche nach einem Kunden mit der gegebenen Emailadresse.
      * @param email Die Emailadresse des gesuchten Kunden
@@ -118,6 +137,14 @@ public interface KundeRepository extends CrudRepository<Kunde, ObjectId>,
 
     Stream<EmailProjection> findByEmailStartingWithIgnoreCase(String prefix);
 
+    /**
+     * Nachnamen und Emailadressen aller Kunden, z.B. f&uuml;r den Aufbau von
+     * Pr&auml;fix-Indexen. Aus MongoDB werden nur diese beiden Felder gelesen.
+     * @return Nachname und Email aller Kunden als Stream
+     */
+    // SELECT nachname, email FROM kunde
+    Stream<NachnameEmailProjection> readAllBy();
+
     /*
      * Suche nach Kunden anhand ihres Nachnamens durch eine (JSON-) Query
      * f&uuml;r MongoDB
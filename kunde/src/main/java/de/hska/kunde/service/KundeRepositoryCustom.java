@@ -0,0 +1,65 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import de.hska.kunde.entity.Kunde;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Zus&auml;tzliche Abfragen mit QueryDsl, die sich nicht durch
+ * Namenskonventionen deklarieren lassen. Die Implementierung ist
+ * KundeRepositoryImpl.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public interface KundeRepositoryCustom {
+    /**
+     * Suche nach Kunden mit einem Pr&auml;dikat, einer Sortierung und einer
+     * H&ouml;chstzahl. Es werden nie mehr als limit Dokumente aus MongoDB
+     * gelesen, d.h. es wird auch nicht gez&auml;hlt.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
+     * @param limit H&ouml;chstzahl der gelieferten Kunden
+     * @param orderBy Sortierung
+     * @return Die gefundenen Kunden
+     */
+    List<Kunde> findKeyset(Predicate predicate, int limit,
+                           OrderSpecifier<?>... orderBy);
+
+    /**
+     * Suche nach Kunden mit einem Pr&auml;dikat. Die Kunden werden erst beim
+     * Durchlaufen des Streams aus dem Cursor von MongoDB gelesen. Der Stream
+     * muss deshalb geschlossen werden, damit auch der Cursor geschlossen wird.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
+     * @return Die gefundenen Kunden sortiert nach der ID als Stream
+     */
+    Stream<Kunde> stream(Predicate predicate);
+
+    /**
+     * Suche nach Kunden mit einem Pr&auml;dikat, wobei aus MongoDB nur die
+     * ausgew&auml;hlten Felder gelesen werden. Die &uuml;brigen Attribute der
+     * gelieferten Kunden sind null bzw. haben den Defaultwert. Der Stream
+     * muss geschlossen werden, damit auch der Cursor geschlossen wird.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
+     * @param felder Die zu lesenden Felder
+     * @return Die gefundenen Kunden als Stream
+     */
+    Stream<Kunde> stream(Predicate predicate, Set<KundeFeld> felder);
+}
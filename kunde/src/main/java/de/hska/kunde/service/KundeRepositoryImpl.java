@@ -0,0 +1,97 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.DBObject;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.entity.QKunde;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import lombok.val;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support
+       .QuerydslRepositorySupport;
+
+import static org.springframework.data.util.StreamUtils
+              .createStreamFromIterator;
+
+/**
+ * Implementierung der zus&auml;tzlichen Abfragen f&uuml;r KundeRepository.
+ * Der Name der Klasse folgt der Namenskonvention von Spring Data.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+class KundeRepositoryImpl extends QuerydslRepositorySupport
+                          implements KundeRepositoryCustom {
+    private static final QKunde KUNDE = QKunde.kunde;
+    private static final String ID = "_id";
+
+    private final MongoOperations mongoOperations;
+    private final QuerydslMongoSerializer serializer;
+
+    KundeRepositoryImpl(MongoOperations mongoOperations) {
+        super(mongoOperations);
+        this.mongoOperations = mongoOperations;
+        serializer =
+            new QuerydslMongoSerializer(mongoOperations.getConverter());
+    }
+
+    @Override
+    public List<Kunde> findKeyset(Predicate predicate, int limit,
+                                  OrderSpecifier<?>... orderBy) {
+        final val query = from(KUNDE);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        // Im Gegensatz zu QueryDslPredicateExecutor.findAll(Predicate,
+        // Pageable) wird keine zusaetzliche count-Abfrage abgesetzt
+        return query.orderBy(orderBy)
+                    .limit(limit)
+                    .fetch();
+    }
+
+    @Override
+    public Stream<Kunde> stream(Predicate predicate) {
+        // Der Iterator von QueryDsl schliesst den DBCursor nicht, deshalb
+        // MongoOperations.stream() mit einem uebersetzten Praedikat.
+        // Sortiert nach der ID wie bei der Suche ueber den Trigramm-Index.
+        final val query = query(predicate).with(new Sort(ID));
+        return createStreamFromIterator(mongoOperations.stream(query,
+                                                               Kunde.class));
+    }
+
+    @Override
+    public Stream<Kunde> stream(Predicate predicate, Set<KundeFeld> felder) {
+        // Projektion: nur die ausgewaehlten Felder werden uebertragen
+        final val query = query(predicate);
+        felder.forEach(feld -> query.fields().include(feld.getPath()));
+        return createStreamFromIterator(mongoOperations.stream(query,
+                                                               Kunde.class));
+    }
+
+    private Query query(Predicate predicate) {
+        return predicate == null
+               ? new Query()
+               : new BasicQuery((DBObject) serializer.handle(predicate));
+    }
+}
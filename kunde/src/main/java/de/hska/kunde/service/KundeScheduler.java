@@ -17,16 +17,20 @@
 package de.hska.kunde.service;
 
 import org.apache.logging.log4j.Logger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
- * Automatisiert aufzurufende Anwendungslogik f&uuml;r Kunden.
+ * Automatisiert aufzurufende Anwendungslogik f&uuml;r Kunden. Sie ist nur
+ * mit <code>kunde.scheduler.enabled=true</code> aktiv, damit nicht jede
+ * Instanz ohne Bedarf jede Minute die Kunden z&auml;hlt.
  * <img src="../../../../../images/KundeScheduler.png" alt="Klassendiagramm">
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
  *         J&uuml;rgen Zimmermann</a>
  */
 @Service
+@ConditionalOnProperty("kunde.scheduler.enabled")
 class KundeScheduler {
     private final KundeRepository repo;
     private final Logger log;
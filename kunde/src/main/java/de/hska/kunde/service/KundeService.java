@@ -17,40 +17,42 @@
 package de.hska.kunde.service;
 
 import lombok.val;
+import com.mongodb.gridfs.GridFSDBFile;
 import com.querydsl.core.types.Predicate;
 import de.hska.kunde.config.security.AuthService;
 import de.hska.kunde.entity.Kunde;
 import de.hska.kunde.entity.QKunde;
-import de.hska.kunde.service.KundeRepository.EmailProjection;
-import de.hska.kunde.service.KundeRepository.NachnameProjection;
+import de.hska.kunde.util.UniqueValueFilter;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 import org.apache.logging.log4j.Logger;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.gridfs.GridFsResource;
-import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 
+import static com.querydsl.core.types.ExpressionUtils.allOf;
 import static de.hska.kunde.util.Strings.isBlank;
 import static de.hska.kunde.util.Strings.isNotBlank;
 import static java.lang.Integer.parseInt;
+import static java.util.Collections.reverse;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.empty;
-import static java.util.Optional.ofNullable;
-import static java.util.stream.StreamSupport.stream;
 
 /**
  * Anwendungslogik f&uuml;r Kunden.
@@ -59,24 +61,49 @@ import static java.util.stream.StreamSupport.stream;
  *         J&uuml;rgen Zimmermann</a>
  */
 @Service
-@CacheConfig(cacheNames = "kunde_id")
+@CacheConfig(cacheNames = KundeService.KUNDE_ID)
 public class KundeService {
+    /**
+     * Name des Cache f&uuml;r Kunden mit der ID als Schl&uuml;ssel.
+     */
+    static final String KUNDE_ID = "kunde_id";
+
     private final KundeRepository repo;
-    private final GridFsTemplate gridFsTemplate;
+    private final KundePrefixIndex prefixIndex;
+    private final KundeTrigramIndex trigramIndex;
+    private final KundeIndexTopic indexTopic;
+    private final KundeEmailCache emailCache;
+    private final UniqueValueFilter emailFilter;
+    private final MediaBlobStore mediaStore;
     private final ApplicationEventPublisher publisher;
     private final AuthService authService;
+    private final CacheManager cacheManager;
     private final Logger log;
 
     // Nicht private, damit Spring Aspects davon eine Klasse ableiten kann
+    @SuppressWarnings("checkstyle:ParameterNumber")
     KundeService(KundeRepository repo,
+                 KundePrefixIndex prefixIndex,
+                 KundeTrigramIndex trigramIndex,
+                 KundeIndexTopic indexTopic,
+                 KundeEmailCache emailCache,
+                 @Qualifier("kundeEmailFilter")
+                 UniqueValueFilter emailFilter,
                  @Lazy ApplicationEventPublisher publisher,
                  @Lazy AuthService authService,
-                 @Lazy GridFsTemplate gridFsTemplate,
+                 MediaBlobStore mediaStore,
+                 CacheManager cacheManager,
                  Logger log) {
         this.repo = repo;
+        this.prefixIndex = prefixIndex;
+        this.trigramIndex = trigramIndex;
+        this.indexTopic = indexTopic;
+        this.emailCache = emailCache;
+        this.emailFilter = emailFilter;
         this.publisher = publisher;
         this.authService = authService;
-        this.gridFsTemplate = gridFsTemplate;
+        this.mediaStore = mediaStore;
+        this.cacheManager = cacheManager;
         this.log = log;
     }
     
@@ -100,7 +127,28 @@ public class KundeService {
     }
 
     /**
-     * Kunden anhand eines Suchkriteriums ermitteln
+     * Die Versionsnummer eines Kunden anhand seiner ID ermitteln, z.B.
+     * f&uuml;r bedingte GET-Requests beim Polling. Ist der Kunde im Cache,
+     * wird die Versionsnummer von dort gelesen, i.d.R. aus dem Near Cache.
+     * Nur sonst wird aus MongoDB ausschlie&szlig;lich die Versionsnummer
+     * gelesen, ohne den Kunden zu laden.
+     * @param id Die Id des gesuchten Kunden
+     * @return Die Versionsnummer oder ein leeres Optional-Objekt
+     */
+    public Optional<Integer> findVersionById(ObjectId id) {
+        final val cache = cacheManager.getCache(KUNDE_ID);
+        final val kunde = cache == null ? null : cache.get(id, Kunde.class);
+        if (kunde != null) {
+            return Optional.of(kunde.getVersion());
+        }
+        return repo.findVersionById(id)
+                   .map(KundeRepository.VersionProjection::getVersion);
+    }
+
+    /**
+     * Kunden anhand eines Suchkriteriums ermitteln. Die Suche nach Nachname
+     * und Postleitzahl erfolgt m&ouml;glichst &uuml;ber den Trigramm-Index,
+     * ansonsten &uuml;ber MongoDB, jeweils sortiert nach der ID.
      * @param email Emailadresse
      * @param nachname Nachname ohne Unterscheidung zwischen Gro&szlig;- und
      *                 Kleinschreibung
@@ -123,33 +171,102 @@ public class KundeService {
             return repo.findAllBy();
         }
 
-        if (isBlank(plz)) {
-            return repo.findByNachnameContainingIgnoreCase(nachname);
-        }
-
-        if (isBlank(nachname)) {
-            return repo.findByAdresse_Plz(plz);
-        }
-
         final val qkunde = QKunde.kunde;
-        final val pred = qkunde.nachname.containsIgnoreCase(nachname)
-                               .and(qkunde.adresse.plz.eq(plz));
-        final val kunden = repo.findAll(pred);
-        // http://stackoverflow.com/questions/23932061/...
-        // ...convert-iterable-to-stream-using-java-8-jdk
-        return stream(kunden.spliterator(), false);
+        return find(allOf(
+            isBlank(nachname)
+            ? null
+            : qkunde.nachname.containsIgnoreCase(nachname),
+            isBlank(plz) ? null : qkunde.adresse.plz.eq(plz)));
     }
 
     /**
-     * Kunden anhand von Suchkriterien ermitteln
-     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * Kunden anhand von Suchkriterien ermitteln. Besteht das Pr&auml;dikat
+     * nur aus Vergleichen von Nachname, Email, Postleitzahl und Ort, werden
+     * die Kunden &uuml;ber den Trigramm-Index ermittelt und aus dem Cache
+     * gelesen. Ansonsten werden die Kunden erst beim Durchlaufen des Streams
+     * aus dem Cursor von MongoDB gelesen, d.h. der Stream muss geschlossen
+     * werden. In beiden F&auml;llen sind die Kunden nach der ID sortiert.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
      * @return Gefundene Kunden
      */
     public Stream<Kunde> find(Predicate predicate) {
-        final val kunden = repo.findAll(predicate);
-        // http://stackoverflow.com/questions/23932061/...
-        // ...convert-iterable-to-stream-using-java-8-jdk
-        return stream(kunden.spliterator(), false);
+        if (predicate == null) {
+            return repo.findAllBy();
+        }
+        return trigramIndex.find(predicate)
+                           .map(List::stream)
+                           .orElseGet(() -> repo.stream(predicate));
+    }
+
+    /**
+     * Kunden anhand von Suchkriterien ermitteln, wobei aus MongoDB nur die
+     * ausgew&auml;hlten Felder gelesen werden, z.B. f&uuml;r eine Liste mit
+     * Nachnamen und Emailadressen
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
+     * @param felder Die zu lesenden Felder
+     * @return Gefundene Kunden, bei denen nur die ausgew&auml;hlten Felder
+     *         gesetzt sind
+     */
+    public Stream<Kunde> find(Predicate predicate, Set<KundeFeld> felder) {
+        requireNonNull(felder);
+        return repo.stream(predicate, felder);
+    }
+
+    /**
+     * Eine Seite mit Kunden anhand von Suchkriterien ermitteln
+     * (Keyset-Pagination). Aus MongoDB wird h&ouml;chstens eine Seite
+     * zzgl. eines Kunden gelesen, um zu erkennen, ob es weitere Kunden gibt.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl oder null
+     * @param sort Sortierkriterium
+     * @param cursor Cursor der vorherigen Abfrage oder null f&uuml;r die
+     *               erste Seite
+     * @param limit Maximale Anzahl an Kunden der Seite
+     * @return Die gefundene Seite
+     */
+    public KundePage find(Predicate predicate, KeysetSort sort,
+                          KeysetCursor cursor, int limit) {
+        requireNonNull(sort);
+        if (cursor != null && cursor.getSort() != sort) {
+            throw new IllegalArgumentException(
+                "Der Cursor passt nicht zum Sortierkriterium " + sort);
+        }
+        final val backward = cursor != null && cursor.isBackward();
+        final val pred = cursor == null
+                         ? predicate
+                         : allOf(predicate, sort.seek(cursor));
+
+        final val kunden = new ArrayList<Kunde>(
+            repo.findKeyset(pred, limit + 1, sort.orderBy(backward)));
+        final val weitere = kunden.size() > limit;
+        if (weitere) {
+            kunden.remove(limit);
+        }
+        if (backward) {
+            reverse(kunden);
+        }
+        if (kunden.isEmpty()) {
+            return new KundePage(kunden, empty(), empty());
+        }
+
+        // Vorwaerts: "next" nur bei weiteren Kunden, "prev" nur mit Cursor
+        // Rueckwaerts: umgekehrt
+        final val first = kunden.get(0);
+        final val last = kunden.get(kunden.size() - 1);
+        final val hasNext = backward || weitere;
+        final val hasPrev = backward ? weitere : cursor != null;
+        final Optional<KeysetCursor> next = hasNext
+            ? Optional.of(cursorOf(sort, last, false))
+            : empty();
+        final Optional<KeysetCursor> prev = hasPrev
+            ? Optional.of(cursorOf(sort, first, true))
+            : empty();
+        return new KundePage(kunden, next, prev);
+    }
+
+    private static KeysetCursor cursorOf(KeysetSort sort, Kunde kunde,
+                                         boolean backward) {
+        return new KeysetCursor(sort, kunde.getId(), sort.sortValue(kunde),
+                                backward);
     }
 
     /**
@@ -157,34 +274,50 @@ public class KundeService {
      * ermitteln
      * @param id Kunde-ID
      * @return Multimediale Datei, falls sie existiert. Sonst empty().
+     *         Der Inhalt wird erst beim Lesen z.B. durch GridFsChunkReader
+     *         &uuml;bertragen.
      */
-    public Optional<GridFsResource> findMedia(ObjectId id) {
+    public Optional<GridFSDBFile> findMedia(ObjectId id) {
         final val kunde = repo.findById(id);
         if (!kunde.isPresent()) {
             return empty();
         }
+        return mediaStore.find(id);
+    }
 
-        final val filename = kunde.get().getId().toString();
-        final val gridFsResource = gridFsTemplate.getResource(filename);
-        return ofNullable(gridFsResource);
+    /**
+     * Die Metadaten der multimedialen Datei zu einem Kunden ermitteln, z.B.
+     * f&uuml;r einen bedingten Request. Die Metadaten werden i.d.R. aus dem
+     * Cache gelesen, d.h. ohne Zugriff auf MongoDB.
+     * @param id Kunde-ID
+     * @return Die Metadaten, falls es eine Datei gibt. Sonst empty().
+     */
+    public Optional<MediaMetadata> findMediaMetadata(ObjectId id) {
+        return mediaStore.findMetadata(id);
     }
 
     /**
-     * Nachnamen anhand eines Pr&auml;fix ermitteln
+     * Nachnamen (ohne Duplikate) anhand eines Pr&auml;fix ohne
+     * Unterscheidung zwischen Gro&szlig;- und Kleinschreibung aus dem
+     * Pr&auml;fix-Index ermitteln, d.h. ohne Zugriff auf MongoDB.
      * @param prefix Pr&auml;fix f&uuml;r Nachnamen
-     * @return Gefundene Nachnamen
+     * @param limit Maximale Anzahl der gelieferten Nachnamen
+     * @return Gefundene Nachnamen in alphabetischer Reihenfolge
      */
-    public Stream<NachnameProjection> findNachnamenByPrefix(String prefix) {
-        return repo.findByNachnameStartingWithIgnoreCase(prefix);
+    public List<String> findNachnamenByPrefix(String prefix, int limit) {
+        return prefixIndex.findNachnamen(prefix, limit);
     }
 
     /**
-     * Emailadressen anhand eines Pr&auml;fix ermitteln
+     * Emailadressen anhand eines Pr&auml;fix ohne Unterscheidung zwischen
+     * Gro&szlig;- und Kleinschreibung aus dem Pr&auml;fix-Index ermitteln,
+     * d.h. ohne Zugriff auf MongoDB.
      * @param prefix Pr&auml;fix f&uuml;r Email
-     * @return Gefundene Emailadressen
+     * @param limit Maximale Anzahl der gelieferten Emailadressen
+     * @return Gefundene Emailadressen in alphabetischer Reihenfolge
      */
-    public Stream<EmailProjection> findEmailsByPrefix(String prefix) {
-        return repo.findByEmailStartingWithIgnoreCase(prefix);
+    public List<String> findEmailsByPrefix(String prefix, int limit) {
+        return prefixIndex.findEmails(prefix, limit);
     }
 
     /**
@@ -202,7 +335,7 @@ public class KundeService {
         // Email in Kleinbuchstaben verwalten
         kunde.setEmail(kunde.getEmail().toLowerCase(Locale.getDefault()));
 
-        repo.findByEmail(kunde.getEmail()).ifPresent(k -> {
+        findIdByEmail(kunde.getEmail()).ifPresent(k -> {
             throw new EmailExistsException();
         });
 
@@ -210,7 +343,20 @@ public class KundeService {
         authService.save(account);
 
         kunde.setUsername(account.getUsername());
-        final val neuerKunde = repo.save(kunde);
+        final Kunde neuerKunde;
+        try {
+            neuerKunde = repo.save(kunde);
+        } catch (DuplicateKeyException e) {
+            // Der eindeutige Index ist das letzte Sicherheitsnetz, z.B. bei
+            // einer Email, die eine andere Instanz angelegt hat
+            authService.delete(account.getUsername());
+            throw new EmailExistsException();
+        }
+        prefixIndex.add(neuerKunde);
+        trigramIndex.add(neuerKunde);
+        indexTopic.added(neuerKunde);
+        emailCache.put(neuerKunde);
+        emailFilter.add(neuerKunde.getEmail());
         log.trace("Neuer Kunde: {}", neuerKunde);
         log.trace("Neue Adresse: {}", neuerKunde::getAdresse);
 
@@ -221,6 +367,8 @@ public class KundeService {
     /**
      * Multimediale Daten aus einem Inputstream werden persistent zur gegebenen
      * Kunden-ID abgespeichert. Der Inputstream wird am Ende geschlossen.
+     * Gibt es denselben Inhalt bereits, z.B. bei einem Standardbild, wird
+     * er nicht ein weiteres Mal gespeichert.
      * @param id Kunde-ID
      * @param inputStream Inputstream mit multimedialen Daten.
      * @param contentType MIME-Type, z.B. image/png
@@ -235,27 +383,14 @@ public class KundeService {
             return empty();
         }
 
-        final val filename = id.toString();
-
-        // ggf. multimediale Datei loeschen
-        final val criteria = Criteria.where("filename").is(filename);
-        final val query = new Query(criteria);
-        gridFsTemplate.delete(query);
-
-        // store() schliesst auch den Inputstream
-        // FIXME Spring Data MongoDB 2: ObjectId als Rueckgabetyp
-        // Abhilfe: final val gridFSFile = gridFsTemplate.findOne(mediaId)
-        final val gridFSFile =
-            gridFsTemplate.store(inputStream, filename, contentType);
-        gridFSFile.validate();
-        log.debug("Anzahl Bytes: {}", gridFSFile::getLength);
-        return Optional.of(gridFSFile.getId());
+        // Die bisherige multimediale Datei wird ggf. freigegeben
+        return Optional.of(mediaStore.store(id, inputStream, contentType));
     }
 
     /**
      * Einen vorhandenen Kunden aktualisieren
      * @param kunde Das Objekt mit den neuen Daten
-     * @param versionStr Versionsnummer
+     * @param versionStr Versionsnummer, auch als ETag wie "1" oder W/"1"
      * @return Der aktualisierte Kunde oder ein leeres Optional-Objekt, falls
      *         es keinen Kunden mit der angegebenen ID gibt
      */
@@ -271,7 +406,7 @@ public class KundeService {
 
         final int version;
         try {
-            version = parseInt(versionStr);
+            version = parseInt(version(versionStr));
         } catch (NumberFormatException e) {
             log.debug("Ungueltige Version: {}", versionStr);
             throw new ConcurrentUpdatedException(e);
@@ -284,17 +419,45 @@ public class KundeService {
 
         // Wurde die Email auf eine bereits existierende Email geaendert?
         final val neueEmail = kunde.getEmail();
-        repo.findByEmail(neueEmail)
-            .filter(k -> !k.getId().equals(id))
-            .ifPresent(k -> {
+        if (!neueEmail.equals(kundeDb.get().getEmail())
+            && findIdByEmail(neueEmail).isPresent()) {
             throw new EmailExistsException();
-        });
+        }
 
-        final val aktualisierterKunde = repo.save(kunde);
+        final Kunde aktualisierterKunde;
+        try {
+            aktualisierterKunde = repo.save(kunde);
+        } catch (DuplicateKeyException e) {
+            throw new EmailExistsException();
+        }
+        prefixIndex.update(kundeDb.get(), aktualisierterKunde);
+        trigramIndex.update(aktualisierterKunde);
+        indexTopic.updated(kundeDb.get(), aktualisierterKunde);
+        emailCache.update(kundeDb.get(), aktualisierterKunde);
+        if (!kundeDb.get().getEmail().equals(aktualisierterKunde.getEmail())) {
+            // Die alte Email bleibt bis zum naechsten Neuaufbau im Filter
+            emailFilter.add(aktualisierterKunde.getEmail());
+        }
         log.trace("Aktualisierter Kunde: {}", aktualisierterKunde);
         return Optional.of(aktualisierterKunde);
     }
 
+    // Versionsnr aus If-Match: 1, "1" oder W/"1"
+    private static String version(String versionStr) {
+        if (versionStr == null) {
+            return null;
+        }
+        String version = versionStr.trim();
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        if (version.length() >= 2 && version.charAt(0) == '"'
+            && version.charAt(version.length() - 1) == '"') {
+            version = version.substring(1, version.length() - 1);
+        }
+        return version;
+    }
+
     /**
      * Einen vorhandenen Kunden l&ouml;schen
      * @param id Die ID des zu l&ouml;schenden Kunden
@@ -319,11 +482,17 @@ public class KundeService {
         // ID kein Objekt gibt
         // http://docs.spring.io/spring/docs/current/javadoc-api/org/...
         // ...springframework/dao/EmptyResultDataAccessException.html
-        if (!repo.exists(id)) {
+        final val kunde = repo.findById(id);
+        if (!kunde.isPresent()) {
             return false;
         }
 
         repo.delete(id);
+        mediaStore.remove(id);
+        prefixIndex.remove(kunde.get());
+        trigramIndex.remove(kunde.get());
+        indexTopic.removed(kunde.get());
+        emailCache.remove(kunde.get());
         return true;
     }
 
@@ -346,11 +515,35 @@ public class KundeService {
             log.debug("Principal: {}", authentication::getPrincipal);
         }
 
-        final boolean[] result = {false};
-        repo.findByEmail(email).ifPresent(kunde -> {
-            repo.delete(kunde);
-            result[0] = true;
-        });
-        return result[0];
+        // Die ID wird i.d.R. aus dem Cache ermittelt. Der Bloom-Filter kennt
+        // keine Kunden anderer Instanzen und ist deshalb hier ungeeignet.
+        final val kunde = emailCache.findId(email).flatMap(repo::findById);
+        if (!kunde.isPresent()) {
+            return false;
+        }
+
+        repo.delete(kunde.get());
+        mediaStore.remove(kunde.get().getId());
+        prefixIndex.remove(kunde.get());
+        trigramIndex.remove(kunde.get());
+        indexTopic.removed(kunde.get());
+        emailCache.remove(kunde.get());
+        return true;
+    }
+
+    /**
+     * Die ID zu einer Emailadresse ermitteln. Falls die Emailadresse laut
+     * Bloom-Filter sicher nicht existiert, gibt es keinen Zugriff auf den
+     * Cache oder auf MongoDB.
+     */
+    private Optional<ObjectId> findIdByEmail(String email) {
+        if (!emailFilter.mightContain(email)) {
+            return empty();
+        }
+        final val id = emailCache.findId(email);
+        if (!id.isPresent()) {
+            emailFilter.falsePositive();
+        }
+        return id;
     }
 }
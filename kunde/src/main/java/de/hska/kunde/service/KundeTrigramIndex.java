@@ -0,0 +1,351 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import de.hska.kunde.entity.Kunde;
+import de.hska.kunde.util.TrigramIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import static de.hska.kunde.service.KundeFeld.ADRESSE_ORT;
+import static de.hska.kunde.service.KundeFeld.ADRESSE_PLZ;
+import static de.hska.kunde.service.KundeFeld.EMAIL;
+import static de.hska.kunde.service.KundeFeld.ID;
+import static de.hska.kunde.service.KundeFeld.NACHNAME;
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * Trigramm-Indexe im Hauptspeicher f&uuml;r die Suche nach Teilstrings in
+ * Nachname, Email, Postleitzahl und Ort, so dass eine solche Suche keinen
+ * regul&auml;ren Ausdruck mit einem Scan der ganzen Collection in MongoDB
+ * erfordert. Ein Pr&auml;dikat f&uuml;r QueryDsl kann beantwortet werden, wenn
+ * es nur aus UND-verkn&uuml;pften Vergleichen dieser Felder besteht, d.h.
+ * <code>contains</code> bzw. <code>eq</code> jeweils auch ohne
+ * Unterscheidung zwischen Gro&szlig;- und Kleinschreibung, und mindestens ein
+ * Vergleichswert 3 Zeichen hat. Die Kandidaten des Index mit den wenigsten
+ * Kandidaten werden aus dem Cache <code>kunde_id</code> gelesen und gegen
+ * alle Vergleiche gepr&uuml;ft, d.h. MongoDB bzw. der Cache bleibt die
+ * Quelle der Wahrheit. Die Kunden sind wie bei der Suche in MongoDB nach
+ * der ID sortiert.
+ * <p>
+ * Die Indexe werden beim Start des Microservice aus der DB aufgebaut und von
+ * KundeService bzw. KundeBatchService bei jedem Neuanlegen, Aktualisieren und
+ * L&ouml;schen gepflegt. &Auml;nderungen anderer Instanzen kommen durch
+ * KundeIndexTopic hinzu. Falls dabei Nachrichten verloren gehen, korrigiert
+ * der periodische Neuaufbau die Indexe.
+ * </p>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class KundeTrigramIndex {
+    private static final String KUNDE_ID = "kunde_id";
+
+    // Beim Aufbau werden nur diese Felder aus MongoDB gelesen
+    private static final Set<KundeFeld> FELDER = unmodifiableSet(
+        EnumSet.of(ID, NACHNAME, EMAIL, ADRESSE_PLZ, ADRESSE_ORT));
+
+    private static final Set<Operator> OPERATOREN = unmodifiableSet(
+        new HashSet<>(Arrays.asList(Ops.STRING_CONTAINS,
+                                    Ops.STRING_CONTAINS_IC,
+                                    Ops.EQ,
+                                    Ops.EQ_IGNORE_CASE)));
+
+    private volatile Map<KundeFeld, TrigramIndex<ObjectId>> indexe =
+        createIndexe();
+    // Indexe, die gerade aus der DB aufgebaut werden
+    private volatile Map<KundeFeld, TrigramIndex<ObjectId>> rebuilding;
+    // Pfad im Praedikat, z.B. "adresse.plz" -> Feld
+    private final Map<String, KundeFeld> pfade = new HashMap<>();
+    private final KundeRepository repo;
+    private final Cache kunden;
+    private final Logger log;
+    private final int maxKandidaten;
+
+    KundeTrigramIndex(KundeRepository repo,
+                      KundeIndexTopic topic,
+                      CacheManager cacheManager,
+                      Logger log,
+                      @Value("${kunde.search.maxCandidates:1000}")
+                      int maxKandidaten) {
+        this.repo = repo;
+        kunden = cacheManager.getCache(KUNDE_ID);
+        this.log = log;
+        this.maxKandidaten = maxKandidaten;
+        indexe.keySet().forEach(feld -> pfade.put(feld.getName(), feld));
+        topic.subscribe(this::update);
+    }
+
+    /**
+     * Die Indexe aus der DB aufbauen, nachdem ggf. Testdaten geladen wurden,
+     * und danach periodisch. Dabei werden nur die indizierten Felder gelesen.
+     * &Auml;nderungen w&auml;hrend des Aufbaus werden auch in die neuen Indexe
+     * eingetragen.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${kunde.index.rebuildInterval:3600000}",
+               initialDelayString = "${kunde.index.rebuildInterval:3600000}")
+    synchronized void rebuild() {
+        final val neu = createIndexe();
+        rebuilding = neu;
+        try (val stream = repo.stream(null, FELDER)) {
+            stream.forEach(kunde -> put(neu, kunde.getId(), kunde));
+        } finally {
+            rebuilding = null;
+        }
+        indexe = neu;
+        log.info("Trigramm-Index: {} Kunden", neu.get(NACHNAME).size());
+    }
+
+    /**
+     * Kunden anhand eines Pr&auml;dikats &uuml;ber die Indexe suchen.
+     * @param predicate Pr&auml;dikat f&uuml;r QueryDsl
+     * @return Die gefundenen Kunden sortiert nach der ID oder
+     *         ein leeres Optional-Objekt, falls das Pr&auml;dikat nicht
+     *         &uuml;ber die Indexe beantwortet werden kann bzw. es zu viele
+     *         Kandidaten gibt
+     */
+    Optional<List<Kunde>> find(Predicate predicate) {
+        final val bedingungen = new ArrayList<Bedingung>();
+        if (predicate == null || !collect(predicate, bedingungen)) {
+            return Optional.empty();
+        }
+
+        // Die Kandidaten der Bedingung mit den wenigsten Kandidaten pruefen
+        final val aktuell = indexe;
+        List<ObjectId> kandidaten = null;
+        for (Bedingung bedingung : bedingungen) {
+            if (!TrigramIndex.isSearchable(bedingung.wert)) {
+                continue;
+            }
+            final val ids = aktuell.get(bedingung.feld).find(bedingung.wert);
+            if (kandidaten == null || ids.size() < kandidaten.size()) {
+                kandidaten = ids;
+            }
+        }
+        if (kandidaten == null || kandidaten.size() > maxKandidaten) {
+            return Optional.empty();
+        }
+        return Optional.of(verify(kandidaten, bedingungen));
+    }
+
+    void add(Kunde kunde) {
+        add(kunde.getId(), kunde);
+    }
+
+    /**
+     * Einen neuen Kunden eintragen, z.B. beim Massenimport, bei dem die ID
+     * nicht im Kunde-Objekt gesetzt ist
+     * @param id Die ID des Kunden
+     * @param kunde Der Kunde
+     */
+    void add(ObjectId id, Kunde kunde) {
+        put(indexe, id, kunde);
+        final val aufbau = rebuilding;
+        if (aufbau != null) {
+            put(aufbau, id, kunde);
+        }
+    }
+
+    void update(Kunde neu) {
+        // put() ersetzt die bisherigen Werte
+        add(neu);
+    }
+
+    void remove(Kunde kunde) {
+        final val id = kunde.getId();
+        indexe.values().forEach(index -> index.remove(id));
+        final val aufbau = rebuilding;
+        if (aufbau != null) {
+            aufbau.values().forEach(index -> index.remove(id));
+        }
+    }
+
+    // Aenderung einer anderen Instanz durch KundeIndexTopic
+    private void update(Kunde alt, Kunde neu) {
+        if (neu == null) {
+            remove(alt);
+        } else {
+            add(neu);
+        }
+    }
+
+    private static Map<KundeFeld, TrigramIndex<ObjectId>> createIndexe() {
+        final Map<KundeFeld, TrigramIndex<ObjectId>> result =
+            new EnumMap<>(KundeFeld.class);
+        FELDER.stream()
+              .filter(feld -> feld != ID)
+              .forEach(feld -> result.put(feld, new TrigramIndex<>()));
+        return result;
+    }
+
+    private static void put(Map<KundeFeld, TrigramIndex<ObjectId>> ziel,
+                            ObjectId id, Kunde kunde) {
+        ziel.forEach((feld, index) -> index.put(id, wert(kunde, feld)));
+    }
+
+    // Die Kandidaten aus dem Cache bzw. mit einer einzigen Abfrage aus
+    // MongoDB lesen und gegen alle Bedingungen pruefen
+    private List<Kunde> verify(List<ObjectId> kandidaten,
+                               List<Bedingung> bedingungen) {
+        final val gelesen = new HashMap<ObjectId, Kunde>(kandidaten.size());
+        final val fehlend = new ArrayList<ObjectId>();
+        kandidaten.forEach(id -> {
+            final val kunde = kunden.get(id, Kunde.class);
+            if (kunde == null) {
+                fehlend.add(id);
+            } else {
+                gelesen.put(id, kunde);
+            }
+        });
+        if (!fehlend.isEmpty()) {
+            repo.findAll(fehlend).forEach(kunde -> {
+                kunden.putIfAbsent(kunde.getId(), kunde);
+                gelesen.put(kunde.getId(), kunde);
+            });
+        }
+
+        // Ein zwischenzeitlich geloeschter Kunde fehlt in "gelesen"
+        final val result = new ArrayList<Kunde>(gelesen.size());
+        kandidaten.forEach(id -> {
+            final val kunde = gelesen.get(id);
+            if (kunde != null
+                && bedingungen.stream().allMatch(b -> b.test(kunde))) {
+                result.add(kunde);
+            }
+        });
+        return result;
+    }
+
+    // Die UND-verknuepften Vergleiche eines Praedikats sammeln; false,
+    // falls das Praedikat etwas anderes enthaelt
+    private boolean collect(Expression<?> expr, List<Bedingung> bedingungen) {
+        if (expr instanceof BooleanBuilder) {
+            final val value = ((BooleanBuilder) expr).getValue();
+            return value != null && collect(value, bedingungen);
+        }
+        if (!(expr instanceof Operation)) {
+            return false;
+        }
+
+        final val operation = (Operation<?>) expr;
+        final val operator = operation.getOperator();
+        final val args = operation.getArgs();
+        if (operator == Ops.AND) {
+            return args.stream().allMatch(arg -> collect(arg, bedingungen));
+        }
+        if (!OPERATOREN.contains(operator) || args.size() != 2
+            || !(args.get(0) instanceof Path)
+            || !(args.get(1) instanceof Constant)) {
+            return false;
+        }
+
+        final val feld = pfade.get(pfad((Path<?>) args.get(0)));
+        final val wert = ((Constant<?>) args.get(1)).getConstant();
+        if (feld == null || !(wert instanceof String)) {
+            return false;
+        }
+        bedingungen.add(new Bedingung(feld, operator, (String) wert));
+        return true;
+    }
+
+    // Pfad ohne die Wurzel, z.B. "adresse.plz" bei QKunde.kunde.adresse.plz
+    private static String pfad(Path<?> path) {
+        final val metadata = path.getMetadata();
+        if (metadata.isRoot()) {
+            return null;
+        }
+        final val parent = pfad(metadata.getParent());
+        return parent == null
+               ? metadata.getName()
+               : parent + '.' + metadata.getName();
+    }
+
+    private static String wert(Kunde kunde, KundeFeld feld) {
+        final val adresse = kunde.getAdresse();
+        switch (feld) {
+            case NACHNAME:
+                return kunde.getNachname();
+            case EMAIL:
+                return kunde.getEmail();
+            case ADRESSE_PLZ:
+                return adresse == null ? null : adresse.getPlz();
+            case ADRESSE_ORT:
+                return adresse == null ? null : adresse.getOrt();
+            default:
+                throw new IllegalArgumentException(
+                    "Nicht indiziertes Feld: " + feld);
+        }
+    }
+
+    private static final class Bedingung {
+        private final KundeFeld feld;
+        private final Operator operator;
+        private final String wert;
+
+        Bedingung(KundeFeld feld, Operator operator, String wert) {
+            this.feld = feld;
+            this.operator = operator;
+            this.wert = wert;
+        }
+
+        boolean test(Kunde kunde) {
+            final val wertKunde = wert(kunde, feld);
+            if (wertKunde == null) {
+                return false;
+            }
+            if (operator == Ops.EQ) {
+                return wertKunde.equals(wert);
+            }
+            if (operator == Ops.EQ_IGNORE_CASE) {
+                return wertKunde.equalsIgnoreCase(wert);
+            }
+            if (operator == Ops.STRING_CONTAINS) {
+                return wertKunde.contains(wert);
+            }
+            return wertKunde.toLowerCase(Locale.ROOT)
+                            .contains(wert.toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Ein Inhalt in GridFS, der unabh&auml;ngig von der Anzahl der Kunden mit
+ * diesem Inhalt nur einmal gespeichert ist. Die ID ist der SHA-256-Hashwert
+ * des Inhalts als HEX-String.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Document(collection = "media_blob")
+@Data
+@NoArgsConstructor
+class MediaBlob {
+    private String id;
+    // ID der Datei in GridFS
+    private ObjectId fileId;
+    // Anzahl der Kunden, die auf den Inhalt verweisen
+    private long refs;
+    private LocalDateTime erzeugt;
+}
@@ -0,0 +1,308 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.mongodb.BasicDBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import static de.hska.kunde.config.HazelcastConfig.KUNDE_MEDIA;
+import static java.util.Optional.empty;
+import static java.util.Optional.ofNullable;
+import static org.springframework.data.mongodb.core.FindAndModifyOptions
+              .options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria
+              .whereFilename;
+
+/**
+ * Inhaltsadressierte Ablage der multimedialen Dateien in GridFS: jeder
+ * Inhalt wird anhand seines SHA-256-Hashwerts nur einmal gespeichert und
+ * z&auml;hlt die Kunden, die auf ihn verweisen. L&auml;dt z.B. jeder Kunde
+ * dasselbe Standardbild hoch, gibt es nur eine Datei in GridFS; f&uuml;r
+ * jeden weiteren Kunden werden nur die Metadaten fortgeschrieben. Die Datei
+ * wird gel&ouml;scht, sobald kein Kunde mehr auf sie verweist. Die
+ * Metadaten f&uuml;r bedingte Requests sind im verteilten Cache
+ * <code>kunde_media</code> mit der Kunde-ID als Schl&uuml;ssel.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class MediaBlobStore {
+    private static final String ALGORITHM = "SHA-256";
+    private static final String FILES = "fs.files";
+    private static final String CHUNKS = "fs.chunks";
+
+    private static final String ID = "id";
+    private static final String HASH = "hash";
+    private static final String FILE_ID = "fileId";
+    private static final String REFS = "refs";
+    private static final String ERZEUGT = "erzeugt";
+    private static final String AKTUALISIERT = "aktualisiert";
+
+    private final MongoOperations mongoOperations;
+    private final GridFsTemplate gridFsTemplate;
+    private final MediaDerivativeService derivatives;
+    private final IMap<String, MediaMetadata> metadata;
+    private final Logger log;
+
+    MediaBlobStore(MongoOperations mongoOperations,
+                   @Lazy GridFsTemplate gridFsTemplate,
+                   MediaDerivativeService derivatives,
+                   HazelcastInstance hazelcastInstance,
+                   Logger log) {
+        this.mongoOperations = mongoOperations;
+        this.gridFsTemplate = gridFsTemplate;
+        this.derivatives = derivatives;
+        metadata = hazelcastInstance.getMap(KUNDE_MEDIA);
+        this.log = log;
+    }
+
+    /**
+     * Die multimediale Datei eines Kunden suchen
+     * @param kundeId Kunde-ID
+     * @return Die Datei oder ein leeres Optional-Objekt
+     */
+    Optional<GridFSDBFile> find(ObjectId kundeId) {
+        final val media = mongoOperations.findById(kundeId, KundeMedia.class);
+        if (media == null) {
+            // Dateien, die vor der Deduplizierung gespeichert wurden, haben
+            // die Kunde-ID als Dateinamen
+            return ofNullable(gridFsTemplate.findOne(
+                new Query(whereFilename().is(kundeId.toString()))));
+        }
+        return ofNullable(gridFsTemplate.findOne(
+            new Query(where("_id").is(media.getFileId()))));
+    }
+
+    /**
+     * Die Metadaten der multimedialen Datei eines Kunden ermitteln. Nur
+     * falls es keinen Eintrag im Cache gibt, wird in MongoDB gesucht; der
+     * Inhalt der Datei wird dabei nicht gelesen.
+     * @param kundeId Kunde-ID
+     * @return Die Metadaten oder ein leeres Optional-Objekt
+     */
+    Optional<MediaMetadata> findMetadata(ObjectId kundeId) {
+        final val key = kundeId.toHexString();
+        final val cached = metadata.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        final val file = find(kundeId).map(MediaMetadata::of);
+        file.ifPresent(m -> metadata.set(key, m));
+        return file;
+    }
+
+    /**
+     * Multimediale Daten f&uuml;r einen Kunden speichern. Der Hashwert wird
+     * beim Schreiben nach GridFS berechnet; gibt es den Inhalt bereits, wird
+     * die soeben geschriebene Datei wieder gel&ouml;scht und der Kunde
+     * verweist auf die vorhandene Datei. Der Inputstream wird geschlossen.
+     * @param kundeId Kunde-ID
+     * @param inputStream Die multimedialen Daten
+     * @param contentType MIME-Type, z.B. image/png
+     * @return ID der Datei in GridFS, auf die der Kunde nun verweist
+     */
+    ObjectId store(ObjectId kundeId, InputStream inputStream,
+                   String contentType) {
+        final val digest = messageDigest();
+        // store() schliesst auch den DigestInputStream und damit inputStream
+        final val file = gridFsTemplate.store(
+            new DigestInputStream(inputStream, digest), kundeId.toString(),
+            contentType);
+        file.validate();
+        final val fileId = (ObjectId) file.getId();
+        final val hash = hex(digest.digest());
+        log.debug("store: kundeId={}, hash={}, length={}", kundeId, hash,
+                  file.getLength());
+
+        // Der Dateiname ist der Hashwert, damit auch die verkleinerten Bilder
+        // nur einmal pro Inhalt existieren
+        mongoOperations.getCollection(FILES).update(
+            new BasicDBObject("_id", fileId),
+            new BasicDBObject("$set", new BasicDBObject("filename", hash)));
+        final val blobFileId = claim(hash, fileId, contentType);
+        if (!blobFileId.equals(fileId)) {
+            discard(fileId);
+        }
+        link(kundeId, hash, blobFileId);
+        return blobFileId;
+    }
+
+    /**
+     * Einen vorhandenen Inhalt f&uuml;r einen weiteren Kunden referenzieren,
+     * ohne dass Bytes geschrieben werden
+     * @param hash SHA-256-Hashwert als HEX-String
+     * @return ID der Datei in GridFS oder ein leeres Optional-Objekt, falls
+     *         es den Inhalt noch nicht gibt
+     */
+    Optional<ObjectId> reference(String hash) {
+        final val blob = mongoOperations.findAndModify(
+            new Query(where(ID).is(hash)), new Update().inc(REFS, 1),
+            MediaBlob.class);
+        return blob == null ? empty() : Optional.of(blob.getFileId());
+    }
+
+    /**
+     * Eine neu geschriebene Datei in GridFS als Inhalt zu einem Hashwert
+     * eintragen. Wurde derselbe Inhalt gleichzeitig hochgeladen, gewinnt die
+     * zuerst eingetragene Datei und die andere muss mit discard()
+     * gel&ouml;scht werden.
+     * @param hash SHA-256-Hashwert als HEX-String
+     * @param fileId ID der neu geschriebenen Datei in GridFS
+     * @param contentType MIME-Type, z.B. image/png
+     * @return ID der Datei in GridFS, die nun zum Hashwert geh&ouml;rt
+     */
+    ObjectId claim(String hash, ObjectId fileId, String contentType) {
+        final val update = new Update().inc(REFS, 1)
+                                       .setOnInsert(FILE_ID, fileId)
+                                       .setOnInsert(ERZEUGT,
+                                                    LocalDateTime.now());
+        final val blob = mongoOperations.findAndModify(
+            new Query(where(ID).is(hash)), update,
+            options().upsert(true).returnNew(true), MediaBlob.class);
+        final val blobFileId = blob.getFileId();
+        if (blobFileId.equals(fileId)) {
+            derivatives.schedule(fileId, contentType);
+        } else {
+            log.debug("claim: Inhalt {} existiert bereits", hash);
+        }
+        return blobFileId;
+    }
+
+    /**
+     * Einen Kunden auf einen Inhalt verweisen lassen, f&uuml;r den zuvor
+     * reference() oder claim() aufgerufen wurde. Der bisherige Inhalt des
+     * Kunden wird freigegeben.
+     * @param kundeId Kunde-ID
+     * @param hash SHA-256-Hashwert als HEX-String
+     * @param fileId ID der Datei in GridFS
+     */
+    void link(ObjectId kundeId, String hash, ObjectId fileId) {
+        final val update = Update.update(HASH, hash)
+                                 .set(FILE_ID, fileId)
+                                 .set(AKTUALISIERT, LocalDateTime.now());
+        final val alt = mongoOperations.findAndModify(
+            new Query(where(ID).is(kundeId)), update, options().upsert(true),
+            KundeMedia.class);
+        metadata.delete(kundeId.toHexString());
+        if (alt == null) {
+            removeLegacy(kundeId);
+        } else {
+            // Auch bei gleichem Inhalt: claim() bzw. reference() hat den
+            // Zaehler bereits erhoeht
+            release(alt.getHash());
+        }
+    }
+
+    /**
+     * Die Zuordnung eines Kunden zu seiner multimedialen Datei entfernen,
+     * z.B. wenn der Kunde gel&ouml;scht wird
+     * @param kundeId Kunde-ID
+     */
+    void remove(ObjectId kundeId) {
+        final val media = mongoOperations.findAndRemove(
+            new Query(where(ID).is(kundeId)), KundeMedia.class);
+        metadata.delete(kundeId.toHexString());
+        if (media == null) {
+            removeLegacy(kundeId);
+        } else {
+            release(media.getHash());
+        }
+    }
+
+    /**
+     * Eine Datei in GridFS l&ouml;schen, die zu keinem Inhalt geh&ouml;rt,
+     * z.B. nach einem Duplikat. Die Chunks werden auch gel&ouml;scht, falls
+     * es noch keinen Eintrag in <code>fs.files</code> gibt.
+     * @param fileId ID der Datei in GridFS
+     */
+    void discard(ObjectId fileId) {
+        mongoOperations.getCollection(FILES)
+                       .remove(new BasicDBObject("_id", fileId));
+        mongoOperations.getCollection(CHUNKS)
+                       .remove(new BasicDBObject("files_id", fileId));
+    }
+
+    /**
+     * Einen neuen MessageDigest f&uuml;r SHA-256 erzeugen
+     * @return Der MessageDigest
+     */
+    static MessageDigest messageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 muss jede Implementierung der Java-Plattform anbieten
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Einen Hashwert als HEX-String mit Kleinbuchstaben darstellen
+     * @param hash Der Hashwert
+     * @return Der HEX-String
+     */
+    static String hex(byte[] hash) {
+        return String.format("%0" + hash.length * 2 + "x",
+                             new BigInteger(1, hash));
+    }
+
+    private void release(String hash) {
+        final val blob = mongoOperations.findAndModify(
+            new Query(where(ID).is(hash)), new Update().inc(REFS, -1),
+            options().returnNew(true), MediaBlob.class);
+        if (blob == null || blob.getRefs() > 0) {
+            return;
+        }
+
+        // Nur loeschen, falls nicht inzwischen ein Kunde denselben Inhalt
+        // hochgeladen hat
+        final val result = mongoOperations.remove(
+            new Query(where(ID).is(hash).and(REFS).lte(0)), MediaBlob.class);
+        if (result.getN() == 0) {
+            return;
+        }
+        log.debug("release: Inhalt {} wird geloescht", hash);
+        discard(blob.getFileId());
+        derivatives.invalidate(hash);
+    }
+
+    // Datei samt verkleinerten Bildern aus der Zeit vor der Deduplizierung
+    private void removeLegacy(ObjectId kundeId) {
+        final val filename = kundeId.toString();
+        gridFsTemplate.delete(new Query(whereFilename().is(filename)));
+        derivatives.invalidate(filename);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.gridfs.GridFSDBFile;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_RENDERING;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.awt.RenderingHints.VALUE_RENDER_QUALITY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria
+              .whereFilename;
+
+/**
+ * Verkleinerte Varianten der Bilder von Kunden, z.B. 64 Pixel f&uuml;r
+ * Avatare. Die Varianten werden im Hintergrund mit den Klassen des JDK
+ * erzeugt und in GridFS neben dem Original gespeichert: der Dateiname ist
+ * der des Originals, d.h. sein SHA-256-Hashwert, mit der Gr&ouml;&szlig;e
+ * als Suffix, z.B. <code>9f8...08_64</code>, und die Metadaten enthalten
+ * die ID des Originals. Kunden mit demselben Bild teilen sich deshalb auch
+ * die Varianten. Eine Variante zu einem anderen Original ist veraltet und
+ * wird nicht mehr geliefert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Service
+public class MediaDerivativeService {
+    private static final String ORIGINAL = "original";
+    private static final String SIZE = "size";
+    private static final String SEPARATOR = "_";
+    private static final String PNG = "png";
+    private static final String JPEG = "jpeg";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final ExecutorService executor;
+    private final Logger log;
+    private final int[] sizes;
+
+    // Originale, zu denen gerade Varianten erzeugt werden
+    private final Set<ObjectId> inArbeit = ConcurrentHashMap.newKeySet();
+
+    MediaDerivativeService(
+            @Lazy GridFsTemplate gridFsTemplate,
+            @Qualifier("derivativeExecutor") ExecutorService executor,
+            Logger log,
+            @Value("${media.derivative.sizes:64,256,1024}") int[] sizes) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.executor = executor;
+        this.log = log;
+        this.sizes = Arrays.stream(sizes).sorted().toArray();
+    }
+
+    /**
+     * Die Variante eines Bildes in einer bestimmten Gr&ouml;&szlig;e suchen.
+     * Gibt es sie noch nicht oder ist sie veraltet, wird sie im Hintergrund
+     * erzeugt.
+     * @param original Das Original in GridFS
+     * @param size Die maximale Breite und H&ouml;he in Pixel
+     * @return Die Variante oder ein leeres Optional-Objekt, falls sie (noch)
+     *         nicht existiert oder das Original kein Bild ist
+     * @throws IllegalArgumentException falls die Gr&ouml;&szlig;e nicht
+     *         konfiguriert ist
+     */
+    public Optional<GridFSDBFile> find(GridFSDBFile original, int size) {
+        if (Arrays.binarySearch(sizes, size) < 0) {
+            throw new IllegalArgumentException("Unzulaessige Groesse: " + size
+                                               + ", zulaessig: "
+                                               + Arrays.toString(sizes));
+        }
+        if (!isImage(original.getContentType())) {
+            return Optional.empty();
+        }
+
+        final val filename = original.getFilename() + SEPARATOR + size;
+        final val variante = gridFsTemplate.findOne(new Query(
+            whereFilename().is(filename)
+                           .and("metadata." + ORIGINAL)
+                           .is(original.getId())));
+        if (variante == null) {
+            schedule((ObjectId) original.getId(), original.getContentType());
+        }
+        return Optional.ofNullable(variante);
+    }
+
+    /**
+     * Die Varianten zu einem neuen Original im Hintergrund erzeugen. Ist die
+     * Warteschlange voll, wird die Variante erst beim n&auml;chsten Request
+     * erzeugt.
+     * @param originalId ID des Originals in GridFS
+     * @param contentType MIME-Type des Originals
+     */
+    public void schedule(ObjectId originalId, String contentType) {
+        if (!isImage(contentType) || !inArbeit.add(originalId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(originalId);
+                } finally {
+                    inArbeit.remove(originalId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inArbeit.remove(originalId);
+            log.debug("Warteschlange voll: {}", originalId);
+        }
+    }
+
+    /**
+     * Alle Varianten zu einem Dateinamen l&ouml;schen, z.B. wenn das Original
+     * ersetzt wird
+     * @param filename Dateiname des Originals
+     */
+    public void invalidate(String filename) {
+        // Die Dateinamen sind Hashwerte bzw. ObjectIds als HEX-String, d.h.
+        // ohne Sonderzeichen fuer $regex
+        gridFsTemplate.delete(new Query(
+            whereFilename().regex('^' + filename + SEPARATOR)));
+    }
+
+    private static boolean isImage(String contentType) {
+        return contentType != null && contentType.startsWith("image/");
+    }
+
+    @SuppressWarnings({"checkstyle:IllegalCatch",
+                       "PMD.AvoidCatchingGenericException"})
+    private void generate(ObjectId originalId) {
+        final val original = gridFsTemplate.findOne(
+            new Query(where("_id").is(originalId)));
+        if (original == null) {
+            return;
+        }
+        try {
+            final val bild = read(original);
+            if (bild == null) {
+                log.debug("Kein lesbares Bild: {}", originalId);
+                return;
+            }
+            final val format = bild.getColorModel().hasAlpha() ? PNG : JPEG;
+            for (final int size : sizes) {
+                store(original, scale(bild, size), size, format);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Varianten zu {} nicht erzeugt", originalId, e);
+        }
+    }
+
+    // Bei grossen Bildern wird schon beim Dekodieren nur jedes n-te Pixel
+    // gelesen, so dass z.B. ein Foto mit 24 Megapixel nicht vollstaendig
+    // in den Hauptspeicher geladen wird
+    private BufferedImage read(GridFSDBFile original) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(
+                original.getInputStream())) {
+            if (in == null) {
+                return null;
+            }
+            final val readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                final val breite = reader.getWidth(0);
+                final val hoehe = reader.getHeight(0);
+                final val groesste = sizes[sizes.length - 1];
+                final val faktor = max(1, min(breite, hoehe) / (2 * groesste));
+                final val param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(faktor, faktor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Schrittweise Halbierung, dann bilineare Interpolation: deutlich
+    // besser als ein einziger Schritt und schneller als SCALE_SMOOTH
+    private static BufferedImage scale(BufferedImage bild, int size) {
+        final val faktor = min(1.0, (double) size
+                                    / max(bild.getWidth(), bild.getHeight()));
+        final val zielBreite = max(1, (int) round(bild.getWidth() * faktor));
+        final val zielHoehe = max(1, (int) round(bild.getHeight() * faktor));
+        final val typ = bild.getColorModel().hasAlpha()
+                        ? TYPE_INT_ARGB
+                        : TYPE_INT_RGB;
+
+        BufferedImage aktuell = bild;
+        int breite = bild.getWidth();
+        int hoehe = bild.getHeight();
+        do {
+            breite = max(zielBreite, breite / 2);
+            hoehe = max(zielHoehe, hoehe / 2);
+            final val ziel = new BufferedImage(breite, hoehe, typ);
+            final Graphics2D g = ziel.createGraphics();
+            try {
+                g.setRenderingHint(KEY_INTERPOLATION,
+                                   VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(KEY_RENDERING, VALUE_RENDER_QUALITY);
+                g.drawImage(aktuell, 0, 0, breite, hoehe, null);
+            } finally {
+                g.dispose();
+            }
+            aktuell = ziel;
+        } while (breite != zielBreite || hoehe != zielHoehe);
+        return aktuell;
+    }
+
+    private void store(GridFSDBFile original, BufferedImage bild, int size,
+                       String format) throws IOException {
+        final val out = new ByteArrayOutputStream(size * size);
+        if (!ImageIO.write(bild, format, out)) {
+            throw new IOException("Kein ImageWriter fuer " + format);
+        }
+
+        final val filename = original.getFilename() + SEPARATOR + size;
+        final val metadata = new BasicDBObject(ORIGINAL, original.getId())
+            .append(SIZE, size);
+        // Die bisherige Variante wird ersetzt
+        gridFsTemplate.delete(new Query(whereFilename().is(filename)));
+        gridFsTemplate.store(new ByteArrayInputStream(out.toByteArray()),
+                             filename, "image/" + format, metadata);
+    }
+}
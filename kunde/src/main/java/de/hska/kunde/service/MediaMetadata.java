@@ -0,0 +1,51 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.gridfs.GridFSFile;
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Die Metadaten einer multimedialen Datei, mit denen ein bedingter Request
+ * ohne Zugriff auf MongoDB beantwortet werden kann.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public final class MediaMetadata implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // MD5-Pruefsumme von GridFS als Basis fuer ein starkes ETag
+    private final String md5;
+    // Zeitpunkt des Hochladens in Millisekunden
+    private final long uploadDate;
+
+    /**
+     * Die Metadaten einer Datei in GridFS ermitteln
+     * @param file Die Datei in GridFS
+     * @return Die Metadaten
+     */
+    static MediaMetadata of(GridFSFile file) {
+        return new MediaMetadata(file.getMD5(),
+                                 file.getUploadDate().getTime());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Sitzung f&uuml;r das fortsetzbare Hochladen einer multimedialen Datei.
+ * Die ID der Sitzung ist gleichzeitig die ID der Datei in GridFS, d.h. die
+ * hochgeladenen Bytes stehen direkt als Chunks in <code>fs.chunks</code>.
+ * Erst beim Abschlie&szlig;en entsteht der Eintrag in <code>fs.files</code>.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Document(collection = "media_upload")
+@Data
+@NoArgsConstructor
+public class MediaUpload {
+    private ObjectId id;
+    private ObjectId kundeId;
+    private String contentType;
+    // Gesamtlaenge oder null, falls sie beim Anlegen nicht bekannt ist
+    private Long length;
+    // Anzahl der bereits gespeicherten Bytes
+    private long offset;
+    private int chunkSize;
+    // Sperre, solange ein Request Bytes anhaengt
+    private LocalDateTime sperre;
+    private LocalDateTime erzeugt;
+    @Indexed
+    private LocalDateTime aktualisiert;
+}
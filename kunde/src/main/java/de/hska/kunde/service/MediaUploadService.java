@@ -0,0 +1,388 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Optional;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.Optional.empty;
+import static org.springframework.data.mongodb.core.FindAndModifyOptions
+              .options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Anwendungslogik f&uuml;r das fortsetzbare Hochladen multimedialer Dateien
+ * zu einem Kunden, z.B. bei gro&szlig;en Videos &uuml;ber eine instabile
+ * Verbindung. Die Bytes werden direkt als Chunks in GridFS geschrieben,
+ * d.h. es wird h&ouml;chstens ein Chunk im Hauptspeicher gepuffert. Nach
+ * jedem vollst&auml;ndigen Chunk wird der Offset der Sitzung
+ * fortgeschrieben, so dass auch ein abgebrochener Request seinen
+ * Fortschritt beh&auml;lt. Die bisherige Datei des Kunden wird erst beim
+ * Abschlie&szlig;en durch die neue Datei ersetzt. Gibt es denselben Inhalt
+ * bereits, werden die hochgeladenen Chunks dabei wieder gel&ouml;scht.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Service
+public class MediaUploadService {
+    // Default-Bucket von GridFsTemplate
+    private static final String BUCKET = "fs";
+    private static final String FILES = BUCKET + ".files";
+    private static final String CHUNKS = BUCKET + ".chunks";
+    private static final String FILES_ID = "files_id";
+    private static final String N = "n";
+    private static final String DATA = "data";
+
+    private static final String ID = "id";
+    private static final String KUNDE_ID = "kundeId";
+    private static final String OFFSET = "offset";
+    private static final String SPERRE = "sperre";
+    private static final String AKTUALISIERT = "aktualisiert";
+
+    private final MongoOperations mongoOperations;
+    private final KundeRepository repo;
+    private final MediaBlobStore mediaStore;
+    private final Logger log;
+    private final int chunkSize;
+    private final long lease;
+    private final long expiry;
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    MediaUploadService(
+            MongoOperations mongoOperations,
+            KundeRepository repo,
+            MediaBlobStore mediaStore,
+            Logger log,
+            @Value("${media.upload.chunkSize:261120}") int chunkSize,
+            @Value("${media.upload.lease:300}") long lease,
+            @Value("${media.upload.expiry:86400}") long expiry) {
+        this.mongoOperations = mongoOperations;
+        this.repo = repo;
+        this.mediaStore = mediaStore;
+        this.log = log;
+        this.chunkSize = chunkSize;
+        this.lease = lease;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Eine neue Sitzung f&uuml;r das Hochladen anlegen
+     * @param kundeId Kunde-ID
+     * @param contentType MIME-Type, z.B. video/mp4
+     * @param length Gesamtl&auml;nge in Bytes oder null
+     * @return Die neue Sitzung oder ein leeres Optional-Objekt, falls es
+     *         keinen Kunden zur ID gibt
+     */
+    public Optional<MediaUpload> create(ObjectId kundeId, String contentType,
+                                        Long length) {
+        requireNonNull(kundeId);
+        requireNonNull(contentType);
+        if (length != null && length < 0) {
+            throw new IllegalArgumentException("Negative Laenge: " + length);
+        }
+        if (!repo.exists(kundeId)) {
+            return empty();
+        }
+
+        final val upload = new MediaUpload();
+        upload.setKundeId(kundeId);
+        upload.setContentType(contentType);
+        upload.setLength(length);
+        upload.setChunkSize(chunkSize);
+        final val jetzt = LocalDateTime.now();
+        upload.setErzeugt(jetzt);
+        upload.setAktualisiert(jetzt);
+        mongoOperations.insert(upload);
+        return Optional.of(upload);
+    }
+
+    /**
+     * Eine Sitzung suchen, z.B. um den aktuellen Offset zu ermitteln
+     * @param kundeId Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @return Die Sitzung oder ein leeres Optional-Objekt
+     */
+    public Optional<MediaUpload> find(ObjectId kundeId, ObjectId uploadId) {
+        return Optional.ofNullable(mongoOperations.findOne(
+            query(kundeId, uploadId), MediaUpload.class));
+    }
+
+    /**
+     * Bytes ab einem Offset an eine Sitzung anh&auml;ngen. Der Offset muss
+     * dem aktuellen Stand der Sitzung entsprechen.
+     * @param kundeId Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @param offset Position des ersten Bytes
+     * @param in Die Bytes; der Stream wird nicht geschlossen
+     * @return Die Sitzung mit dem neuen Offset oder ein leeres
+     *         Optional-Objekt, falls es keine solche Sitzung gibt
+     * @throws IOException falls der Request abbricht. Die bis dahin
+     *         empfangenen Bytes sind gespeichert.
+     * @throws UploadOffsetException falls der Offset nicht passt, die
+     *         Sitzung gerade gesperrt ist oder der angefangene Chunk fehlt.
+     *         Im letzten Fall wird der Offset auf das Ende des letzten
+     *         vollst&auml;ndigen Chunks zur&uuml;ckgesetzt.
+     */
+    public Optional<MediaUpload> append(ObjectId kundeId, ObjectId uploadId,
+                                        long offset, InputStream in)
+            throws IOException {
+        final val gesperrt = lock(query(kundeId, uploadId).addCriteria(
+            where(OFFSET).is(offset)));
+        if (gesperrt == null) {
+            return find(kundeId, uploadId).map(upload -> {
+                throw new UploadOffsetException(upload.getOffset());
+            });
+        }
+
+        final val size = gesperrt.getChunkSize();
+        final val buffer = new byte[size];
+        int n = (int) (offset / size);
+        int filled = (int) (offset % size);
+        if (filled > 0 && !readPartialChunk(uploadId, n, buffer, filled)) {
+            // Der angefangene Chunk fehlt oder ist zu kurz: der Client setzt
+            // beim letzten vollstaendigen Chunk fort
+            final val grenze = (long) n * size;
+            updateOffset(uploadId, grenze, true);
+            throw new UploadOffsetException(grenze);
+        }
+
+        final val length = gesperrt.getLength();
+        long position = offset;
+        try {
+            int count;
+            while ((count = in.read(buffer, filled, size - filled)) != -1) {
+                // Bytes hinter der angekuendigten Laenge werden verworfen
+                final val zuViel = length != null && position + count > length;
+                if (zuViel) {
+                    count = (int) (length - position);
+                }
+                position += count;
+                filled += count;
+                if (filled == size) {
+                    writeChunk(uploadId, n, buffer, size);
+                    n++;
+                    filled = 0;
+                    updateOffset(uploadId, position, false);
+                }
+                if (zuViel) {
+                    throw new IllegalArgumentException(
+                        "Mehr als " + length + " Bytes");
+                }
+            }
+        } finally {
+            // Auch bei einem Abbruch bleiben die empfangenen Bytes erhalten.
+            // Die Sperre wird in jedem Fall freigegeben.
+            long gespeichert = position - filled;
+            try {
+                if (filled > 0) {
+                    writeChunk(uploadId, n, buffer, filled);
+                    gespeichert = position;
+                }
+            } finally {
+                updateOffset(uploadId, gespeichert, true);
+            }
+        }
+
+        gesperrt.setOffset(position);
+        return Optional.of(gesperrt);
+    }
+
+    /**
+     * Eine Sitzung abschlie&szlig;en: die hochgeladene Datei wird in
+     * <code>fs.files</code> eingetragen und ersetzt die bisherige Datei des
+     * Kunden. Die Chunks werden dabei nicht kopiert. Gibt es denselben
+     * Inhalt bereits, verweist der Kunde auf die vorhandene Datei.
+     * @param kundeId Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @return Die abgeschlossene Sitzung oder ein leeres Optional-Objekt,
+     *         falls es keine solche Sitzung gibt
+     * @throws UploadOffsetException falls die Sitzung gesperrt ist oder noch
+     *         Bytes fehlen
+     */
+    public Optional<MediaUpload> finish(ObjectId kundeId, ObjectId uploadId) {
+        final val upload = lock(query(kundeId, uploadId));
+        if (upload == null) {
+            return find(kundeId, uploadId).map(u -> {
+                throw new UploadOffsetException(u.getOffset());
+            });
+        }
+        final val length = upload.getOffset();
+        if (upload.getLength() != null && upload.getLength() != length) {
+            updateOffset(uploadId, length, true);
+            throw new UploadOffsetException(length);
+        }
+
+        // Chunks hinter dem Ende, z.B. nach einem Fehler beim Fortschreiben
+        // des Offsets, gehoeren nicht zur Datei
+        final val letzterChunk = length == 0
+                                 ? -1
+                                 : (int) ((length - 1) / upload.getChunkSize());
+        chunks().remove(new BasicDBObject(FILES_ID, uploadId)
+            .append(N, new BasicDBObject("$gt", letzterChunk)));
+
+        // Bei einem Duplikat gibt es keinen Eintrag in fs.files
+        final val hash = sha256(uploadId);
+        final val fileId = mediaStore.reference(hash).orElseGet(() -> {
+            insertFile(upload, hash);
+            return mediaStore.claim(hash, uploadId, upload.getContentType());
+        });
+        if (!fileId.equals(uploadId)) {
+            mediaStore.discard(uploadId);
+        }
+
+        // Erst jetzt wird die bisherige Datei freigegeben: bis dahin wird sie
+        // beim Download geliefert
+        mediaStore.link(kundeId, hash, fileId);
+        mongoOperations.remove(upload);
+        log.debug("finish: kundeId={}, uploadId={}, length={}, hash={}",
+                  kundeId, uploadId, length, hash);
+        return Optional.of(upload);
+    }
+
+    /**
+     * Eine Sitzung abbrechen und die bereits hochgeladenen Bytes l&ouml;schen
+     * @param kundeId Kunde-ID
+     * @param uploadId ID der Sitzung
+     * @return true, falls es die Sitzung gab
+     */
+    public boolean abort(ObjectId kundeId, ObjectId uploadId) {
+        final val upload = mongoOperations.findAndRemove(
+            query(kundeId, uploadId), MediaUpload.class);
+        if (upload == null) {
+            return false;
+        }
+        chunks().remove(new BasicDBObject(FILES_ID, uploadId));
+        return true;
+    }
+
+    /**
+     * Sitzungen, die l&auml;nger als media.upload.expiry Sekunden nicht
+     * fortgesetzt wurden, werden mitsamt ihren Chunks gel&ouml;scht. Diese
+     * Methode wird periodisch aufgerufen.
+     */
+    @Scheduled(fixedDelayString = "${media.upload.cleanupInterval:3600000}")
+    void removeExpired() {
+        final val grenze = LocalDateTime.now().minusSeconds(expiry);
+        final val abgelaufen = mongoOperations.find(
+            new Query(where(AKTUALISIERT).lt(grenze)), MediaUpload.class);
+        abgelaufen.forEach(upload -> {
+            log.debug("Abgelaufene Sitzung: {}", upload);
+            abort(upload.getKundeId(), upload.getId());
+        });
+    }
+
+    private static Query query(ObjectId kundeId, ObjectId uploadId) {
+        return new Query(where(ID).is(uploadId).and(KUNDE_ID).is(kundeId));
+    }
+
+    // Sperre fuer einen Request, damit nicht zwei Requests gleichzeitig an
+    // dieselbe Sitzung anhaengen
+    private MediaUpload lock(Query query) {
+        final val jetzt = LocalDateTime.now();
+        query.addCriteria(new Criteria().orOperator(where(SPERRE).is(null),
+                                                    where(SPERRE).lte(jetzt)));
+        final val update = Update.update(SPERRE, jetzt.plusSeconds(lease));
+        return mongoOperations.findAndModify(query, update,
+                                             options().returnNew(true),
+                                             MediaUpload.class);
+    }
+
+    private void updateOffset(ObjectId uploadId, long offset,
+                              boolean entsperren) {
+        final val update = Update.update(OFFSET, offset)
+                                 .set(AKTUALISIERT, LocalDateTime.now());
+        if (entsperren) {
+            update.unset(SPERRE);
+        }
+        mongoOperations.updateFirst(new Query(where(ID).is(uploadId)),
+                                    update, MediaUpload.class);
+    }
+
+    // Der Hashwert wird aus den gespeicherten Chunks berechnet, weil sich
+    // ein MessageDigest nicht zwischen Requests speichern laesst
+    private String sha256(ObjectId uploadId) {
+        final val digest = MediaBlobStore.messageDigest();
+        try (DBCursor cursor = chunks().find(new BasicDBObject(FILES_ID,
+                                                               uploadId))
+                                       .sort(new BasicDBObject(N, 1))) {
+            cursor.forEach(chunk -> digest.update((byte[]) chunk.get(DATA)));
+        }
+        return MediaBlobStore.hex(digest.digest());
+    }
+
+    private void insertFile(MediaUpload upload, String hash) {
+        final val uploadId = upload.getId();
+        // MD5 wird vom DB-Server aus den Chunks berechnet
+        final val md5 = mongoOperations.executeCommand(
+            new BasicDBObject("filemd5", uploadId).append("root", BUCKET))
+                                       .getString("md5");
+        mongoOperations.getCollection(FILES).insert(
+            new BasicDBObject("_id", uploadId)
+                .append("filename", hash)
+                .append("contentType", upload.getContentType())
+                .append("length", upload.getOffset())
+                .append("chunkSize", (long) upload.getChunkSize())
+                .append("uploadDate", new Date())
+                .append("md5", md5));
+    }
+
+    private DBCollection chunks() {
+        return mongoOperations.getCollection(CHUNKS);
+    }
+
+    private boolean readPartialChunk(ObjectId uploadId, int n, byte[] buffer,
+                                     int filled) {
+        final val chunk = chunks().findOne(
+            new BasicDBObject(FILES_ID, uploadId).append(N, n));
+        final val data = chunk == null ? null : (byte[]) chunk.get(DATA);
+        // Der Chunk kann laenger sein, falls ein Request nach dem Schreiben,
+        // aber vor dem Fortschreiben des Offsets abgebrochen ist
+        if (data == null || data.length < filled) {
+            log.warn("Chunk {} von {} ist unvollstaendig", n, uploadId);
+            return false;
+        }
+        System.arraycopy(data, 0, buffer, 0, filled);
+        return true;
+    }
+
+    private void writeChunk(ObjectId uploadId, int n, byte[] buffer,
+                            int length) {
+        final val query = new BasicDBObject(FILES_ID, uploadId).append(N, n);
+        final val data = Arrays.copyOf(buffer, length);
+        chunks().update(query, new BasicDBObject("$set",
+                                                 new BasicDBObject(DATA, data)),
+                        true, false);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import de.hska.kunde.entity.Kunde;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PreDestroy;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sammelmodus f&uuml;r die Benachrichtigungen des Vertriebs &uuml;ber neue
+ * Kunden: statt einer Email pro Kunde wird pro Zeitfenster eine einzige
+ * Email mit allen neuen Kunden in den Postausgang geschrieben. Das Fenster
+ * wird sp&auml;testens nach mail.digest.window Millisekunden, bei
+ * mail.digest.maxSize Kunden und beim Herunterfahren geschlossen. Kunden
+ * im noch offenen Fenster gehen bei einem Absturz verloren, weil sie erst
+ * beim Schlie&szlig;en in den Postausgang gelangen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Component
+class NeuerKundeDigest {
+    private final KundeMailOutbox outbox;
+    private final String from;
+    private final String sales;
+    private final int maxSize;
+
+    private List<String> nachnamen = new ArrayList<>();
+
+    NeuerKundeDigest(KundeMailOutbox outbox,
+                     @Value("${mail.from}") String from,
+                     @Value("${mail.sales}") String sales,
+                     @Value("${mail.digest.maxSize:500}") int maxSize) {
+        this.outbox = outbox;
+        this.from = from;
+        this.sales = sales;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Einen neuen Kunden in das aktuelle Fenster aufnehmen. Ist das Fenster
+     * damit voll, wird es sofort geschlossen.
+     * @param kunde Der neue Kunde
+     */
+    void add(Kunde kunde) {
+        List<String> voll = null;
+        synchronized (this) {
+            nachnamen.add(kunde.getNachname());
+            if (nachnamen.size() >= maxSize) {
+                voll = swap();
+            }
+        }
+        if (voll != null) {
+            send(voll);
+        }
+    }
+
+    /**
+     * Das aktuelle Fenster schlie&szlig;en und die Sammel-Email in den
+     * Postausgang schreiben. Diese Methode wird periodisch und beim
+     * Herunterfahren aufgerufen.
+     */
+    @Scheduled(fixedRateString = "${mail.digest.window:60000}")
+    @PreDestroy
+    void flush() {
+        final List<String> fenster;
+        synchronized (this) {
+            if (nachnamen.isEmpty()) {
+                return;
+            }
+            fenster = swap();
+        }
+        send(fenster);
+    }
+
+    private List<String> swap() {
+        final val fenster = nachnamen;
+        nachnamen = new ArrayList<>();
+        return fenster;
+    }
+
+    private void send(List<String> fenster) {
+        final val body = new StringBuilder(fenster.size() * 32 + 64)
+            .append("<b>")
+            .append(fenster.size())
+            .append(" neue Kunden:</b><ul>");
+        fenster.forEach(nachname -> body.append("<li>\"")
+                                        .append(nachname)
+                                        .append("\"</li>"));
+        body.append("</ul>");
+        outbox.enqueue(from, sales, fenster.size() + " neue Kunden",
+                       body.toString());
+    }
+}
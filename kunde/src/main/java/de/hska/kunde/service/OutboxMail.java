@@ -0,0 +1,57 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import java.time.LocalDateTime;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Noch nicht versendete Email im Postausgang in MongoDB. Das Feld
+ * naechsterVersuch ist gleichzeitig die Sperre einer Instanz, die die Email
+ * gerade versendet, und der Zeitpunkt der Wiederholung nach einem Fehler.
+ * Ist es null, wurde die Email nach zu vielen Fehlversuchen aufgegeben.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@Document(collection = "mail_outbox")
+@Data
+@NoArgsConstructor
+class OutboxMail {
+    private ObjectId id;
+    private String from;
+    private String to;
+    private String subject;
+    private String text;
+    private LocalDateTime erzeugt;
+    @Indexed
+    private LocalDateTime naechsterVersuch;
+    private int versuche;
+    private String fehler;
+
+    OutboxMail(String from, String to, String subject, String text) {
+        this.from = from;
+        this.to = to;
+        this.subject = subject;
+        this.text = text;
+        erzeugt = LocalDateTime.now();
+        naechsterVersuch = erzeugt;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.DBRef;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.PathMetadata;
+import com.querydsl.mongodb.MongodbSerializer;
+import lombok.val;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+/**
+ * &Uuml;bersetzung eines Pr&auml;dikats von QueryDsl in ein Query-Dokument
+ * f&uuml;r MongoDB, z.B. f&uuml;r Abfragen mit einem Cursor durch
+ * MongoOperations. Die ID wird auf das Feld <code>_id</code> abgebildet und
+ * Werte werden durch die registrierten Konverter von Spring Data umgewandelt,
+ * z.B. Enums mit einem eigenen WritingConverter.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+class QuerydslMongoSerializer extends MongodbSerializer {
+    private static final String ID = "id";
+    private static final String MONGO_ID = "_id";
+
+    private final MongoConverter converter;
+
+    QuerydslMongoSerializer(MongoConverter converter) {
+        super();
+        this.converter = converter;
+    }
+
+    @Override
+    public Object visit(Constant<?> expr, Void context) {
+        final val value = expr.getConstant();
+        return value == null ? null : converter.convertToMongoType(value);
+    }
+
+    @Override
+    protected String getKeyForPath(Path<?> expr, PathMetadata metadata) {
+        final val parent = metadata.getParent();
+        if (ID.equals(metadata.getElement())
+            && parent != null && parent.getMetadata().isRoot()) {
+            return MONGO_ID;
+        }
+        return super.getKeyForPath(expr, metadata);
+    }
+
+    // Es gibt keine Referenzen mit DBRef
+
+    @Override
+    protected boolean isReference(Path<?> arg) {
+        return false;
+    }
+
+    @Override
+    protected DBRef asReference(Object constant) {
+        throw new UnsupportedOperationException("Keine Referenzen mit DBRef");
+    }
+
+    @Override
+    protected DBRef asReferenceKey(Class<?> entity, Object id) {
+        throw new UnsupportedOperationException("Keine Referenzen mit DBRef");
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import static org.springframework.http.HttpStatus.CONFLICT;
+
+/**
+ * Exception, falls beim fortsetzbaren Hochladen der Offset nicht zum Stand
+ * der Sitzung passt, die Sitzung gerade durch einen anderen Request gesperrt
+ * ist oder beim Abschlie&szlig;en noch Bytes fehlen. Der aktuelle Offset
+ * wird mitgeliefert, damit der Client an der richtigen Stelle fortsetzen
+ * kann.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+@ResponseStatus(CONFLICT)
+public class UploadOffsetException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+
+    UploadOffsetException(long offset) {
+        super("Aktueller Offset: " + offset);
+        this.offset = offset;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+}
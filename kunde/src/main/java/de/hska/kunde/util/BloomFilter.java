@@ -0,0 +1,201 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.val;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.pow;
+import static java.lang.Math.round;
+
+/**
+ * Thread-sicherer Bloom Filter f&uuml;r Strings. Die Antwort "nicht
+ * enthalten" ist immer korrekt, die Antwort "vielleicht enthalten" ist mit
+ * einer geringen Wahrscheinlichkeit falsch. Die Bits werden zu je 64 in
+ * einem long gespeichert. Werte k&ouml;nnen nicht entfernt werden: statt
+ * dessen wird ein neuer Filter aufgebaut.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public final class BloomFilter {
+    private static final int BITS_PER_WORD = Long.SIZE;
+    private static final int MIN_BITS = 64;
+
+    private final AtomicLongArray words;
+    private final int numBits;
+    private final int numHashes;
+
+    private final LongAdder size = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Einen leeren Filter f&uuml;r eine erwartete Anzahl an Werten und eine
+     * gew&uuml;nschte Falsch-Positiv-Rate anlegen.
+     * @param expectedInsertions Erwartete Anzahl an Werten
+     * @param fpp Gew&uuml;nschte Falsch-Positiv-Rate, z.B. 0.01
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException(
+                "Ungueltige Groesse oder Falsch-Positiv-Rate");
+        }
+        // m = -n ln(p) / (ln 2)^2 und k = m/n ln 2
+        final val ln2 = log(2);
+        final val m = ceil(-expectedInsertions * log(fpp) / (ln2 * ln2));
+        numBits = (int) max(MIN_BITS,
+                            min(m, Integer.MAX_VALUE - BITS_PER_WORD));
+        numHashes = (int) max(1, round(numBits * ln2 / expectedInsertions));
+        words = new AtomicLongArray((numBits + BITS_PER_WORD - 1)
+                                    / BITS_PER_WORD);
+    }
+
+    /**
+     * Einen Wert hinzuf&uuml;gen.
+     * @param value Der Wert; null wird ignoriert
+     */
+    public void add(String value) {
+        if (value == null) {
+            return;
+        }
+        final val hash = hash(value);
+        for (int i = 0; i < numHashes; i++) {
+            set(index(hash, i));
+        }
+        size.increment();
+    }
+
+    /**
+     * Abfrage, ob ein Wert vielleicht enthalten ist.
+     * @param value Der Wert
+     * @return false, falls der Wert sicher nicht enthalten ist
+     */
+    public boolean mightContain(String value) {
+        if (value == null) {
+            return false;
+        }
+        final val result = contains(hash(value));
+        if (!result) {
+            negatives.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Einen Wert registrieren, der laut mightContain() vielleicht enthalten
+     * war, aber tats&auml;chlich nicht enthalten ist. Daraus wird die
+     * beobachtete Falsch-Positiv-Rate berechnet.
+     */
+    public void falsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Die Anzahl der hinzugef&uuml;gten Werte
+     * @return Anzahl der Werte
+     */
+    public long size() {
+        return size.sum();
+    }
+
+    /**
+     * Die erwartete Falsch-Positiv-Rate bei der aktuellen Anzahl an Werten:
+     * (1 - e^(-k n / m))^k
+     * @return Die erwartete Falsch-Positiv-Rate
+     */
+    public double expectedFpp() {
+        return pow(1 - exp(-(double) numHashes * size() / numBits),
+                   numHashes);
+    }
+
+    /**
+     * Die beobachtete Falsch-Positiv-Rate, d.h. der Anteil der falsch
+     * positiven Antworten an allen Abfragen nach nicht enthaltenen Werten.
+     * @return Die beobachtete Falsch-Positiv-Rate
+     */
+    public double observedFpp() {
+        final val fp = falsePositives.sum();
+        final val total = fp + negatives.sum();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    /**
+     * Der Speicherbedarf f&uuml;r die Bits
+     * @return Anzahl der Bytes
+     */
+    public long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    private boolean contains(long hash) {
+        for (int i = 0; i < numHashes; i++) {
+            if (!get(index(hash, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Double Hashing nach Kirsch und Mitzenmacher: g_i(x) = h1(x) + i h2(x)
+    private int index(long hash, int i) {
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> Integer.SIZE);
+        final int combined = h1 + i * h2;
+        return (combined & Integer.MAX_VALUE) % numBits;
+    }
+
+    private boolean get(int index) {
+        return (words.get(index / BITS_PER_WORD) & mask(index)) != 0;
+    }
+
+    private void set(int index) {
+        final val word = index / BITS_PER_WORD;
+        final val mask = mask(index);
+        while (true) {
+            final val old = words.get(word);
+            if ((old & mask) != 0
+                || words.compareAndSet(word, old, old | mask)) {
+                return;
+            }
+        }
+    }
+
+    private static long mask(int index) {
+        return 1L << (index % BITS_PER_WORD);
+    }
+
+    // FNV-1a ueber die Zeichen und die Finalisierung von MurmurHash3
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.util;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.val;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Thread-sicherer Index f&uuml;r die Suche nach Strings anhand eines
+ * Pr&auml;fix ohne Unterscheidung zwischen Gro&szlig;- und Kleinschreibung,
+ * z.B. f&uuml;r Autovervollst&auml;ndigung. Die Schl&uuml;ssel sind
+ * sortiert, so dass eine Suche O(log n + k) kostet. Jeder Wert wird nur
+ * einmal geliefert, aber mit der Anzahl seiner Vorkommen verwaltet, damit er
+ * erst beim Entfernen des letzten Vorkommens aus dem Index verschwindet.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public final class PrefixIndex {
+    // Trennt den normalisierten Schluessel vom Originalwert
+    private static final char SEPARATOR = '\u0000';
+
+    // Schluessel: normalisierter Wert + SEPARATOR + Originalwert
+    // Wert: Anzahl der Vorkommen
+    private final ConcurrentNavigableMap<String, Integer> entries =
+        new ConcurrentSkipListMap<>();
+
+    /**
+     * Ein Vorkommen eines Wertes hinzuf&uuml;gen.
+     * @param value Der Wert; null wird ignoriert
+     */
+    public void add(String value) {
+        if (value == null) {
+            return;
+        }
+        entries.merge(key(value), 1, Integer::sum);
+    }
+
+    /**
+     * Ein Vorkommen eines Wertes entfernen.
+     * @param value Der Wert; null wird ignoriert
+     */
+    public void remove(String value) {
+        if (value == null) {
+            return;
+        }
+        entries.computeIfPresent(key(value),
+                                 (k, anzahl) -> anzahl > 1 ? anzahl - 1 : null);
+    }
+
+    /**
+     * Alle Werte aus dem Index entfernen.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Anzahl der verschiedenen Werte im Index.
+     * @return Die Anzahl
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Die ersten Werte zu einem Pr&auml;fix in alphabetischer Reihenfolge
+     * (ohne Unterscheidung zwischen Gro&szlig;- und Kleinschreibung)
+     * ermitteln.
+     * @param prefix Das Pr&auml;fix
+     * @param limit Maximale Anzahl der gelieferten Werte
+     * @return Die gefundenen Werte ohne Duplikate
+     */
+    public List<String> find(String prefix, int limit) {
+        final val from = fold(prefix == null ? "" : prefix);
+        final val to = from + Character.MAX_VALUE;
+        return entries.subMap(from, true, to, false)
+                      .keySet()
+                      .stream()
+                      .limit(limit)
+                      .map(k -> k.substring(k.indexOf(SEPARATOR) + 1))
+                      .collect(toList());
+    }
+
+    private static String key(String value) {
+        return fold(value) + SEPARATOR + value;
+    }
+
+    private static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
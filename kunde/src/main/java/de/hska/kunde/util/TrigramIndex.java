@@ -0,0 +1,183 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.val;
+
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Thread-sicherer Trigramm-Index f&uuml;r die Suche nach Teilstrings ohne
+ * Unterscheidung zwischen Gro&szlig;- und Kleinschreibung. Zu jedem
+ * Schl&uuml;ssel, z.B. einer ID, wird ein Wert verwaltet, der in seine
+ * Trigramme (Teilstrings der L&auml;nge 3) zerlegt wird. Ein Wert kann einen
+ * Suchstring nur enthalten, wenn er alle Trigramme des Suchstrings
+ * enth&auml;lt, so dass die Suche nur die Schnittmenge der zugeh&ouml;rigen
+ * Schl&uuml;sselmengen bildet, beginnend mit der kleinsten. Die gelieferten
+ * Schl&uuml;ssel sind Kandidaten, die der Aufrufer noch pr&uuml;fen muss.
+ * Sie sind nach dem Schl&uuml;ssel sortiert, damit die Reihenfolge nicht vom
+ * Zustand des Index abh&auml;ngt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ * @param <K> Typ der Schl&uuml;ssel
+ */
+public final class TrigramIndex<K extends Comparable<? super K>> {
+    /**
+     * Mindestl&auml;nge eines Suchstrings.
+     */
+    public static final int MIN_LENGTH = 3;
+
+    // Trigramm -> Schluessel der Werte mit diesem Trigramm
+    private final ConcurrentMap<String, Set<K>> postings =
+        new ConcurrentHashMap<>();
+    // Schluessel -> normalisierter Wert
+    private final ConcurrentMap<K, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * Abfrage, ob ein Suchstring lang genug f&uuml;r den Index ist.
+     * @param query Der Suchstring
+     * @return true, falls der Suchstring mindestens 3 Zeichen hat
+     */
+    public static boolean isSearchable(String query) {
+        return query != null && query.length() >= MIN_LENGTH;
+    }
+
+    /**
+     * Den Wert zu einem Schl&uuml;ssel eintragen bzw. ersetzen.
+     * @param key Der Schl&uuml;ssel
+     * @param value Der Wert; bei null wird der Schl&uuml;ssel entfernt
+     */
+    public void put(K key, String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        // compute() serialisiert Aenderungen zum selben Schluessel
+        values.compute(key, (k, alt) -> {
+            final val neu = fold(value);
+            if (neu.equals(alt)) {
+                return alt;
+            }
+            if (alt != null) {
+                trigrams(alt).forEach(t -> removePosting(t, k));
+            }
+            trigrams(neu).forEach(t -> addPosting(t, k));
+            return neu;
+        });
+    }
+
+    /**
+     * Einen Schl&uuml;ssel mit seinem Wert entfernen.
+     * @param key Der Schl&uuml;ssel
+     */
+    public void remove(K key) {
+        values.computeIfPresent(key, (k, alt) -> {
+            trigrams(alt).forEach(t -> removePosting(t, k));
+            return null;
+        });
+    }
+
+    /**
+     * Alle Eintr&auml;ge aus dem Index entfernen.
+     */
+    public void clear() {
+        values.clear();
+        postings.clear();
+    }
+
+    /**
+     * Anzahl der Schl&uuml;ssel im Index.
+     * @return Die Anzahl
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Die Schl&uuml;ssel aller Werte ermitteln, die alle Trigramme des
+     * Suchstrings enthalten.
+     * @param query Der Suchstring mit mindestens 3 Zeichen
+     * @return Die Kandidaten sortiert nach dem Schl&uuml;ssel
+     * @throws IllegalArgumentException falls der Suchstring zu kurz ist
+     */
+    public List<K> find(String query) {
+        if (!isSearchable(query)) {
+            throw new IllegalArgumentException(
+                "Der Suchstring ist zu kurz: " + query);
+        }
+
+        final List<Set<K>> treffer = new ArrayList<>();
+        for (String trigram : trigrams(fold(query))) {
+            final val keys = postings.get(trigram);
+            if (keys == null) {
+                return emptyList();
+            }
+            treffer.add(keys);
+        }
+        treffer.sort(Comparator.comparingInt(Set::size));
+
+        final Set<K> kandidaten = new HashSet<>(treffer.get(0));
+        for (int i = 1; i < treffer.size() && !kandidaten.isEmpty(); i++) {
+            kandidaten.retainAll(treffer.get(i));
+        }
+
+        // Ein zeitgleich entfernter Schluessel hat keinen Wert mehr
+        return kandidaten.stream()
+                         .filter(values::containsKey)
+                         .sorted()
+                         .collect(toList());
+    }
+
+    private void addPosting(String trigram, K key) {
+        postings.compute(trigram, (t, keys) -> {
+            final Set<K> result = keys == null
+                                  ? ConcurrentHashMap.newKeySet()
+                                  : keys;
+            result.add(key);
+            return result;
+        });
+    }
+
+    private void removePosting(String trigram, K key) {
+        postings.computeIfPresent(trigram, (t, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static Set<String> trigrams(String value) {
+        final Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + MIN_LENGTH <= value.length(); i++) {
+            result.add(value.substring(i, i + MIN_LENGTH));
+        }
+        return result;
+    }
+
+    private static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.util;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import static java.util.Arrays.asList;
+import static org.apache.logging.log4j.LogManager.getLogger;
+
+/**
+ * Bloom-Filter &uuml;ber eindeutige Werte aus MongoDB, z.B. Emailadressen
+ * oder Benutzernamen, damit beim Neuanlegen ein neuer Wert i.d.R. ohne
+ * Zugriff auf MongoDB erkannt wird. Die Antwort "nicht enthalten" gilt nur
+ * f&uuml;r die eigene Instanz, deshalb bleibt der eindeutige Index in
+ * MongoDB das letzte Sicherheitsnetz.
+ * <p>
+ * Werte werden nie entfernt, weil nicht bekannt ist, ob eine andere Instanz
+ * sie hinzugef&uuml;gt hat. Stattdessen wird der Filter beim Start und danach
+ * periodisch aus der DB neu aufgebaut und ausgetauscht. Die Kennzahlen sind
+ * unter <code>/admin/metrics</code> abrufbar.
+ * </p>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">
+ *         J&uuml;rgen Zimmermann</a>
+ */
+public class UniqueValueFilter implements PublicMetrics {
+    private static final Logger LOG = getLogger(UniqueValueFilter.class);
+
+    private final String name;
+    private final Supplier<Stream<String>> source;
+    private final long expectedInsertions;
+    private final double fpp;
+
+    private volatile BloomFilter filter;
+    // Filter, der gerade aus der DB aufgebaut wird
+    private volatile BloomFilter rebuilding;
+
+    /**
+     * Einen leeren Filter anlegen.
+     * @param name Der Name f&uuml;r die Kennzahlen, z.B. filter.kunde.email
+     * @param source Die Werte aus der DB, die beim Aufbau gelesen werden
+     * @param expectedInsertions Erwartete Anzahl an Werten
+     * @param fpp Gew&uuml;nschte Falsch-Positiv-Rate, z.B. 0.01
+     */
+    public UniqueValueFilter(String name,
+                             Supplier<Stream<String>> source,
+                             long expectedInsertions,
+                             double fpp) {
+        filter = new BloomFilter(expectedInsertions, fpp);
+        this.name = name;
+        this.source = source;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+    }
+
+    /**
+     * Den Filter aus der DB aufbauen, nachdem ggf. Testdaten geladen wurden,
+     * und danach periodisch, damit auch Werte anderer Instanzen enthalten
+     * sind und gel&ouml;schte Werte wieder verschwinden.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${filter.rebuildInterval:3600000}",
+               initialDelayString = "${filter.rebuildInterval:3600000}")
+    public synchronized void rebuild() {
+        final val neu = new BloomFilter(expectedInsertions, fpp);
+        // Werte, die waehrend des Aufbaus hinzukommen, in beide Filter
+        // eintragen
+        rebuilding = neu;
+        try (val values = source.get()) {
+            values.forEach(neu::add);
+        } finally {
+            rebuilding = null;
+        }
+        filter = neu;
+        LOG.info("Bloom-Filter {}: {} Werte, {} Bytes", name, neu.size(),
+                 neu.memoryBytes());
+    }
+
+    /**
+     * Abfrage, ob ein Wert vielleicht enthalten ist.
+     * @param value Der Wert
+     * @return false, falls der Wert in dieser Instanz sicher nicht enthalten
+     *         ist
+     */
+    public boolean mightContain(String value) {
+        return filter.mightContain(value);
+    }
+
+    /**
+     * Einen Wert registrieren, der laut mightContain() vielleicht enthalten
+     * war, aber tats&auml;chlich nicht enthalten ist.
+     */
+    public void falsePositive() {
+        filter.falsePositive();
+    }
+
+    /**
+     * Einen neuen Wert eintragen, z.B. nach dem Neuanlegen in der DB.
+     * @param value Der neue Wert
+     */
+    public void add(String value) {
+        filter.add(value);
+        final val neu = rebuilding;
+        if (neu != null) {
+            neu.add(value);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final val f = filter;
+        final val prefix = name + '.';
+        return asList(
+            new Metric<>(prefix + "size", f.size()),
+            new Metric<>(prefix + "memory", f.memoryBytes()),
+            new Metric<>(prefix + "fpp.expected", f.expectedFpp()),
+            new Metric<>(prefix + "fpp.observed", f.observedFpp()));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@Tag("unit")
+@DisplayName("Pool mit SMTP-Verbindungen mit Mock fuer den Mailserver")
+class PooledMailSenderTest {
+    private static final int MAX_TOTAL = 2;
+    private static final long MAX_WAIT = 10;
+    private static final long MAX_IDLE = 60_000;
+    private static final long VALIDATE_AFTER = 60_000;
+
+    // Die Verbindungen, die der Pool beim "Mailserver" aufgebaut hat
+    private final List<Transport> transports = new ArrayList<>();
+
+    @Test
+    @DisplayName("Verbindung nach dem Schliessen wiederverwenden")
+    void reuse() throws MessagingException {
+        // Given
+        final val sender = createSender(MAX_IDLE, VALIDATE_AFTER);
+        sender.connectTransport().close();
+
+        // When
+        final val transport = sender.connectTransport();
+        transport.close();
+
+        // Then
+        assertThat(transports).hasSize(1);
+        assertThat(sender.getIdleCount()).isEqualTo(1);
+        verify(transports.get(0), never()).close();
+        verify(transports.get(0), never()).isConnected();
+    }
+
+    @Test
+    @DisplayName("Lange unbenutzte Verbindung vor der Wiederverwendung pruefen")
+    void validate() throws MessagingException {
+        // Given: die NOOP-Pruefung der unbenutzten Verbindung scheitert
+        final val sender = createSender(MAX_IDLE, 0);
+        sender.connectTransport().close();
+        final val alt = transports.get(0);
+
+        // When
+        sender.connectTransport();
+
+        // Then
+        verify(alt).isConnected();
+        verify(alt).close();
+        assertThat(transports).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Unbenutzte Verbindung nach maxIdle schliessen")
+    void evictIdle() throws MessagingException, InterruptedException {
+        // Given
+        final val sender = createSender(0, VALIDATE_AFTER);
+        sender.connectTransport().close();
+        final val alt = transports.get(0);
+        Thread.sleep(10);
+
+        // When
+        sender.connectTransport();
+
+        // Then
+        verify(alt).close();
+        verify(alt, never()).isConnected();
+        assertThat(transports).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Verbindung nach einem Fehler beim Versenden verwerfen")
+    void broken() throws MessagingException {
+        // Given
+        final val sender = createSender(MAX_IDLE, VALIDATE_AFTER);
+        final val transport = sender.connectTransport();
+        willThrow(new MessagingException("Verbindung abgebrochen"))
+            .given(transports.get(0))
+            .sendMessage(any(), any());
+
+        // When
+        final val thrown = catchThrowable(
+            () -> transport.sendMessage(null, new Address[0]));
+        transport.close();
+
+        // Then
+        assertThat(thrown).isInstanceOf(MessagingException.class);
+        assertThat(transport.isConnected()).isFalse();
+        assertThat(sender.getIdleCount()).isZero();
+        verify(transports.get(0)).close();
+    }
+
+    @Test
+    @DisplayName("Ungueltiger Empfaenger: Verbindung bleibt im Pool")
+    void sendFailed() throws MessagingException {
+        // Given
+        final val sender = createSender(MAX_IDLE, VALIDATE_AFTER);
+        final val transport = sender.connectTransport();
+        willThrow(new SendFailedException("Ungueltiger Empfaenger"))
+            .given(transports.get(0))
+            .sendMessage(any(), any());
+
+        // When
+        final val thrown = catchThrowable(
+            () -> transport.sendMessage(null, new Address[0]));
+        transport.close();
+
+        // Then
+        assertThat(thrown).isInstanceOf(SendFailedException.class);
+        assertThat(sender.getIdleCount()).isEqualTo(1);
+        verify(transports.get(0), never()).close();
+    }
+
+    @Test
+    @DisplayName("Keine Verbindung mehr frei innerhalb von maxWait")
+    void maxTotal() throws MessagingException {
+        // Given
+        final val sender = createSender(MAX_IDLE, VALIDATE_AFTER);
+        for (int i = 0; i < MAX_TOTAL; i++) {
+            sender.connectTransport();
+        }
+
+        // When
+        final val thrown = catchThrowable(sender::connectTransport);
+
+        // Then
+        assertThat(thrown).isInstanceOf(MessagingException.class)
+                          .hasMessageContaining(String.valueOf(MAX_WAIT));
+        assertThat(transports).hasSize(MAX_TOTAL);
+    }
+
+    @Test
+    @DisplayName("Verbindung wird nur einmal in den Pool zurueckgegeben")
+    void closeTwice() throws MessagingException {
+        // Given
+        final val sender = createSender(MAX_IDLE, VALIDATE_AFTER);
+        final val transport = sender.connectTransport();
+
+        // When
+        transport.close();
+        transport.close();
+
+        // Then
+        assertThat(sender.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Alle unbenutzten Verbindungen beim Herunterfahren schliessen")
+    void destroy() throws MessagingException {
+        // Given
+        final val sender = createSender(MAX_IDLE, VALIDATE_AFTER);
+        final val transport1 = sender.connectTransport();
+        final val transport2 = sender.connectTransport();
+        transport1.close();
+        transport2.close();
+
+        // When
+        sender.destroy();
+
+        // Then
+        assertThat(sender.getIdleCount()).isZero();
+        for (Transport t : transports) {
+            verify(t).close();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Hilfsmethoden fuer Mocking
+    // -------------------------------------------------------------------------
+    private PooledMailSender createSender(long maxIdle, long validateAfter) {
+        return new PooledMailSender(MAX_TOTAL, MAX_WAIT, maxIdle,
+                                    validateAfter) {
+            // Statt einer SMTP-Verbindung ein Mock-Objekt, dessen connect()
+            // nichts tut und dessen isConnected() false liefert
+            @Override
+            protected Transport getTransport(Session session) {
+                final val transport = mock(Transport.class);
+                transports.add(transport);
+                return transport;
+            }
+        };
+    }
+}
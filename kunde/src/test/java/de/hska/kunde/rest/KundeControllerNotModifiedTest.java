@@ -0,0 +1,241 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querydsl.core.types.Predicate;
+import de.hska.kunde.service.GridFsChunkReader;
+import de.hska.kunde.service.KundeBatchService;
+import de.hska.kunde.service.KundeChangeCounter;
+import de.hska.kunde.service.KundeExportService;
+import de.hska.kunde.service.KundeService;
+import de.hska.kunde.service.MediaDerivativeService;
+import javax.validation.Validator;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import static de.hska.kunde.rest.StreamingResources.APPLICATION_NDJSON_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.hateoas.MediaTypes.HAL_JSON_VALUE;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.VARY;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.OK;
+
+@Tag("unit")
+@DisplayName("ETag fuer Suchen mit Mock fuer die Anwendungslogik")
+class KundeControllerNotModifiedTest {
+    private static final long AENDERUNGEN = 42;
+    private static final String NACHNAME_PARAM = "nachname";
+    private static final String NACHNAME = "Alpha";
+    private static final String PLZ_PARAM = "adresse.plz";
+    private static final String PLZ = "12345";
+
+    private KundeController controller;
+
+    @Mock
+    private KundeService service;
+
+    @Mock
+    private KundeBatchService batchService;
+
+    @Mock
+    private KundeExportService exportService;
+
+    @Mock
+    private GridFsChunkReader chunkReader;
+
+    @Mock
+    private MediaDerivativeService derivatives;
+
+    @Mock
+    private KundeChangeCounter changeCounter;
+
+    @Mock
+    private KundeResourceAssembler assembler;
+
+    @Mock
+    private Validator validator;
+
+    @Mock
+    private ObjectMapper objectMapper;
+
+    @Mock
+    private Logger logger;
+
+    @Mock
+    private Predicate predicate;
+
+    @BeforeEach
+    void beforeEach() {
+        initMocks(this);
+        controller = new KundeController(service, batchService, exportService,
+                                         chunkReader, derivatives,
+                                         changeCounter, assembler, validator,
+                                         objectMapper, logger, 100, 60);
+        given(changeCounter.get()).willReturn(AENDERUNGEN);
+    }
+
+    @Test
+    @DisplayName("Erste Suche: 200 mit schwachem ETag")
+    void ohneIfNoneMatch() {
+        // Given
+        final val response = new MockHttpServletResponse();
+
+        // When
+        controller.find(predicate, request(response, null));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(OK.value());
+        assertThat(response.getHeader(ETAG)).startsWith("W/\"")
+                                            .contains(Long.toHexString(
+                                                AENDERUNGEN));
+        verify(service).find(predicate);
+    }
+
+    @Test
+    @DisplayName("Unveraenderte Suche: 304 ohne Zugriff auf die Kunden")
+    void notModified() {
+        // Given
+        final val etag = etag(request(new MockHttpServletResponse(), null));
+        final val response = new MockHttpServletResponse();
+
+        // When
+        final val result = controller.find(predicate,
+                                           request(response, etag));
+
+        // Then
+        assertThat(result).isNull();
+        assertThat(response.getStatus()).isEqualTo(NOT_MODIFIED.value());
+        assertThat(response.getHeader(ETAG)).isEqualTo(etag);
+        assertThat(response.getHeader(VARY)).isEqualTo(ACCEPT);
+        verify(service, never()).find(any(Predicate.class));
+    }
+
+    @Test
+    @DisplayName("Andere Darstellung: 200 mit anderem ETag")
+    void andereDarstellung() {
+        // Given: ETag fuer HAL, danach dieselbe Suche als NDJSON
+        final val halRequest = request(new MockHttpServletResponse(), null);
+        ((MockHttpServletRequest) halRequest.getRequest())
+            .addHeader(ACCEPT, HAL_JSON_VALUE);
+        final val etag = etag(halRequest);
+        final val response = new MockHttpServletResponse();
+        final val request = request(response, etag);
+        ((MockHttpServletRequest) request.getRequest())
+            .addHeader(ACCEPT, APPLICATION_NDJSON_VALUE);
+
+        // When
+        controller.find(predicate, request);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(OK.value());
+        assertThat(response.getHeader(ETAG)).isNotEqualTo(etag);
+        assertThat(response.getHeader(VARY)).isEqualTo(ACCEPT);
+    }
+
+    @Test
+    @DisplayName("Geaenderte Kunden: 200 mit neuem ETag")
+    void geaendert() {
+        // Given
+        final val etag = etag(request(new MockHttpServletResponse(), null));
+        given(changeCounter.get()).willReturn(AENDERUNGEN + 1);
+        final val response = new MockHttpServletResponse();
+
+        // When
+        controller.find(predicate, request(response, etag));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(OK.value());
+        assertThat(response.getHeader(ETAG)).isNotEqualTo(etag);
+        verify(service).find(predicate);
+    }
+
+    @Test
+    @DisplayName("Andere Suchkriterien: 200 mit anderem ETag")
+    void andereSuchkriterien() {
+        // Given
+        final val etag = etag(request(new MockHttpServletResponse(), null));
+        final val response = new MockHttpServletResponse();
+        final val request = request(response, etag);
+        ((MockHttpServletRequest) request.getRequest())
+            .setParameter(PLZ_PARAM, "54321");
+
+        // When
+        controller.find(predicate, request);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(OK.value());
+        assertThat(response.getHeader(ETAG)).isNotEqualTo(etag);
+    }
+
+    @Test
+    @DisplayName("Reihenfolge der Parameter aendert das ETag nicht")
+    void reihenfolge() {
+        // Given
+        final val etag = etag(request(new MockHttpServletResponse(), null));
+        final val servletRequest = new MockHttpServletRequest("GET", "/");
+        servletRequest.setParameter(PLZ_PARAM, PLZ);
+        servletRequest.setParameter(NACHNAME_PARAM, NACHNAME);
+        servletRequest.addHeader(IF_NONE_MATCH, etag);
+        final val response = new MockHttpServletResponse();
+
+        // When
+        controller.find(predicate,
+                        new ServletWebRequest(servletRequest, response));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(NOT_MODIFIED.value());
+    }
+
+    // -------------------------------------------------------------------------
+    // Hilfsmethoden
+    // -------------------------------------------------------------------------
+    private static ServletWebRequest request(MockHttpServletResponse response,
+                                             String ifNoneMatch) {
+        final val request = new MockHttpServletRequest("GET", "/");
+        request.setParameter(NACHNAME_PARAM, NACHNAME);
+        request.setParameter(PLZ_PARAM, PLZ);
+        if (ifNoneMatch != null) {
+            request.addHeader(IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, response);
+    }
+
+    // Das ETag, das der Controller fuer die Suche liefert
+    private String etag(ServletWebRequest request) {
+        controller.find(predicate, request);
+        clearInvocations(service);
+        return request.getResponse().getHeader(ETAG);
+    }
+}
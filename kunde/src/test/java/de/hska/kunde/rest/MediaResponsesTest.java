@@ -0,0 +1,410 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.rest;
+
+import com.mongodb.gridfs.GridFSDBFile;
+import de.hska.kunde.service.GridFsChunkReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation
+       .StreamingResponseBody;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.IF_RANGE;
+import static org.springframework.http.HttpHeaders.RANGE;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.PARTIAL_CONTENT;
+import static org.springframework.http.HttpStatus
+              .REQUESTED_RANGE_NOT_SATISFIABLE;
+
+@Tag("unit")
+@DisplayName("Range Requests fuer multimediale Dateien mit Mock fuer GridFS")
+class MediaResponsesTest {
+    private static final long LENGTH = 1000;
+    private static final String MD5 = "0123456789abcdef";
+    private static final String ETAG = '"' + MD5 + '"';
+    private static final long UPLOAD_DATE = 1_500_000_000_000L;
+    private static final String CONTENT_TYPE = "image/png";
+    private static final CacheControl CACHE_CONTROL = CacheControl.empty();
+
+    @Mock
+    private GridFSDBFile file;
+
+    @Mock
+    private GridFsChunkReader reader;
+
+    private HttpHeaders request;
+
+    @BeforeEach
+    void beforeEach() {
+        initMocks(this);
+        given(file.getLength()).willReturn(LENGTH);
+        given(file.getMD5()).willReturn(MD5);
+        given(file.getUploadDate()).willReturn(new Date(UPLOAD_DATE));
+        given(file.getContentType()).willReturn(CONTENT_TYPE);
+        request = new HttpHeaders();
+    }
+
+    // -------------------------------------------------------------------------
+    // R A N G E
+    // -------------------------------------------------------------------------
+    @Nested
+    class RangeTest {
+        @Test
+        @DisplayName("Ohne Range: die ganze Datei")
+        void ohneRange() throws IOException {
+            // Given: keine Header
+
+            // When
+            final val response = of();
+
+            // Then
+            assertSoftly(softly -> {
+                softly.assertThat(response.getStatusCode()).isEqualTo(OK);
+                softly.assertThat(response.getHeaders().getFirst(ACCEPT_RANGES))
+                      .isEqualTo("bytes");
+                softly.assertThat(response.getHeaders().getContentLength())
+                      .isEqualTo(LENGTH);
+                softly.assertThat(response.getHeaders().getETag())
+                      .isEqualTo(ETAG);
+            });
+            verifyCopy(response, 0, LENGTH - 1);
+        }
+
+        @Test
+        @DisplayName("Ein Bereich: 206 mit Content-Range")
+        void einBereich() throws IOException {
+            // Given
+            request.set(RANGE, "bytes=0-99");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertSoftly(softly -> {
+                softly.assertThat(response.getStatusCode())
+                      .isEqualTo(PARTIAL_CONTENT);
+                softly.assertThat(response.getHeaders().getFirst(CONTENT_RANGE))
+                      .isEqualTo("bytes 0-99/1000");
+                softly.assertThat(response.getHeaders().getContentLength())
+                      .isEqualTo(100);
+            });
+            verifyCopy(response, 0, 99);
+        }
+
+        @Test
+        @DisplayName("Suffix-Bereich: die letzten Bytes")
+        void suffix() throws IOException {
+            // Given
+            request.set(RANGE, "bytes=-100");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(PARTIAL_CONTENT);
+            assertThat(response.getHeaders().getFirst(CONTENT_RANGE))
+                .isEqualTo("bytes 900-999/1000");
+            verifyCopy(response, 900, LENGTH - 1);
+        }
+
+        @Test
+        @DisplayName("Offener Bereich ueber das Dateiende hinaus")
+        void offenerBereich() throws IOException {
+            // Given
+            request.set(RANGE, "bytes=990-");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getHeaders().getFirst(CONTENT_RANGE))
+                .isEqualTo("bytes 990-999/1000");
+            verifyCopy(response, 990, LENGTH - 1);
+        }
+
+        @Test
+        @DisplayName("Kein Bereich innerhalb der Datei: 416")
+        void nichtErfuellbar() {
+            // Given
+            request.set(RANGE, "bytes=1000-1999");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode())
+                .isEqualTo(REQUESTED_RANGE_NOT_SATISFIABLE);
+            assertThat(response.getHeaders().getFirst(CONTENT_RANGE))
+                .isEqualTo("bytes */1000");
+            assertThat(response.getBody()).isNull();
+        }
+
+        @Test
+        @DisplayName("Bereiche ausserhalb der Datei werden ignoriert")
+        void teilweiseErfuellbar() throws IOException {
+            // Given
+            request.set(RANGE, "bytes=0-9,2000-2999");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(PARTIAL_CONTENT);
+            assertThat(response.getHeaders().getFirst(CONTENT_RANGE))
+                .isEqualTo("bytes 0-9/1000");
+            verifyCopy(response, 0, 9);
+        }
+
+        @Test
+        @DisplayName("Mehrere Bereiche: multipart/byteranges")
+        void mehrereBereiche() throws IOException {
+            // Given
+            request.set(RANGE, "bytes=0-9,20-29");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(PARTIAL_CONTENT);
+            assertThat(response.getHeaders().getContentType().toString())
+                .startsWith("multipart/byteranges; boundary=");
+            final val out = new ByteArrayOutputStream();
+            response.getBody().writeTo(out);
+            verify(reader).copy(file, 0, 9, out);
+            verify(reader).copy(file, 20, 29, out);
+            final val body = out.toString("US-ASCII");
+            assertThat(body).contains("Content-Range: bytes 0-9/1000")
+                            .contains("Content-Range: bytes 20-29/1000");
+            assertThat(response.getHeaders().getContentLength())
+                .isEqualTo(out.size() + 10L + 10L);
+        }
+
+        @Test
+        @DisplayName("Syntaktisch falscher Range-Header: die ganze Datei")
+        void syntaxfehler() {
+            // Given
+            request.set(RANGE, "bytes=abc");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+
+        @Test
+        @DisplayName("Zu viele Bereiche: die ganze Datei")
+        void zuVieleBereiche() {
+            // Given
+            final val ranges = new StringBuilder("bytes=0-0");
+            for (int i = 1; i <= 16; i++) {
+                ranges.append(',').append(i * 2).append('-').append(i * 2);
+            }
+            request.set(RANGE, ranges.toString());
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // I F - R A N G E
+    // -------------------------------------------------------------------------
+    @Nested
+    class IfRangeTest {
+        @BeforeEach
+        void beforeEach() {
+            request.set(RANGE, "bytes=0-99");
+        }
+
+        @Test
+        @DisplayName("If-Range mit passendem ETag: Bereich")
+        void etagPasst() {
+            // Given
+            request.set(IF_RANGE, ETAG);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(PARTIAL_CONTENT);
+        }
+
+        @Test
+        @DisplayName("If-Range mit anderem ETag: die ganze Datei")
+        void etagAnders() {
+            // Given
+            request.set(IF_RANGE, "\"alt\"");
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+
+        @Test
+        @DisplayName("If-Range mit schwachem ETag: die ganze Datei")
+        void etagSchwach() {
+            // Given
+            request.set(IF_RANGE, "W/" + ETAG);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+
+        @Test
+        @DisplayName("If-Range mit dem Datum des Hochladens: Bereich")
+        void datumPasst() {
+            // Given
+            request.setDate(IF_RANGE, UPLOAD_DATE);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(PARTIAL_CONTENT);
+        }
+
+        @Test
+        @DisplayName("If-Range mit aelterem Datum: die ganze Datei")
+        void datumAlt() {
+            // Given
+            request.setDate(IF_RANGE, UPLOAD_DATE - 60_000);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // B E D I N G T E   R E Q U E S T S
+    // -------------------------------------------------------------------------
+    @Nested
+    class NotModifiedTest {
+        @Test
+        @DisplayName("If-None-Match mit dem aktuellen ETag: 304")
+        void ifNoneMatch() {
+            // Given
+            request.set(IF_NONE_MATCH, ETAG);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(NOT_MODIFIED);
+            assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+            assertThat(response.getBody()).isNull();
+        }
+
+        @Test
+        @DisplayName("If-None-Match mit schwachem Vergleich: 304")
+        void ifNoneMatchSchwach() {
+            // Given
+            request.set(IF_NONE_MATCH, "W/" + ETAG);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(NOT_MODIFIED);
+        }
+
+        @Test
+        @DisplayName("If-None-Match hat Vorrang vor If-Modified-Since")
+        void ifNoneMatchVorrang() {
+            // Given
+            request.set(IF_NONE_MATCH, "\"alt\"");
+            request.setIfModifiedSince(UPLOAD_DATE);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+
+        @Test
+        @DisplayName("If-Modified-Since nicht vor dem Hochladen: 304")
+        void ifModifiedSince() {
+            // Given
+            request.setIfModifiedSince(UPLOAD_DATE);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(NOT_MODIFIED);
+        }
+
+        @Test
+        @DisplayName("If-Modified-Since vor dem Hochladen: die ganze Datei")
+        void ifModifiedSinceAlt() {
+            // Given
+            request.setIfModifiedSince(UPLOAD_DATE - 60_000);
+
+            // When
+            final val response = of();
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(OK);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Hilfsmethoden
+    // -------------------------------------------------------------------------
+    private ResponseEntity<StreamingResponseBody> of() {
+        return MediaResponses.of(file, request, CACHE_CONTROL, reader);
+    }
+
+    private void verifyCopy(ResponseEntity<StreamingResponseBody> response,
+                            long start, long end) throws IOException {
+        final val out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(reader).copy(file, start, end, out);
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.DBObject;
+import java.time.LocalDateTime;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import static java.util.Collections.singletonMap;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@Tag("service")
+@DisplayName("Postausgang fuer Emails mit Mock fuer DB-Zugriff und Mailserver")
+class KundeMailOutboxTest {
+    private static final long LEASE = 60;
+    private static final long BACKOFF = 30;
+    private static final long MAX_BACKOFF = 3600;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final int BATCH_SIZE = 2;
+    private static final String NAECHSTER_VERSUCH = "naechsterVersuch";
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    @Mock
+    private JavaMailSender mailSender;
+
+    @Mock
+    private KundeMailOutbox outboxMock;
+
+    @Mock
+    private Logger logger;
+
+    private KundeMailOutbox outbox;
+
+    private KundeMailDispatcher dispatcher;
+
+    @BeforeEach
+    void beforeEach() {
+        initMocks(this);
+        outbox = new KundeMailOutbox(mongoOperations, LEASE, BACKOFF,
+                                     MAX_BACKOFF, MAX_ATTEMPTS);
+        dispatcher = new KundeMailDispatcher(mailSender, outboxMock, logger,
+                                             BATCH_SIZE);
+    }
+
+    // -------------------------------------------------------------------------
+    // P O S T A U S G A N G
+    // -------------------------------------------------------------------------
+    @Nested
+    class OutboxTest {
+        @Test
+        @DisplayName("Faellige Email fuer die Dauer der Sperre reservieren")
+        void claim() {
+            // Given
+            final val mail = createMail(0);
+            given(mongoOperations.findAndModify(any(Query.class),
+                                                any(Update.class),
+                                                any(FindAndModifyOptions.class),
+                                                eq(OutboxMail.class)))
+                .willReturn(mail);
+            final val vorher = LocalDateTime.now();
+
+            // When
+            final val result = outbox.claim();
+
+            // Then
+            final val update = ArgumentCaptor.forClass(Update.class);
+            verify(mongoOperations).findAndModify(
+                any(Query.class), update.capture(),
+                any(FindAndModifyOptions.class), eq(OutboxMail.class));
+            assertThat(result).contains(mail);
+            assertThat(naechsterVersuch(update.getValue()))
+                .isAfterOrEqualTo(vorher.plusSeconds(LEASE))
+                .isBeforeOrEqualTo(LocalDateTime.now().plusSeconds(LEASE));
+        }
+
+        @Test
+        @DisplayName("Keine faellige Email im Postausgang")
+        void claimEmpty() {
+            // Given: findAndModify() liefert null
+
+            // When
+            final val result = outbox.claim();
+
+            // Then
+            assertThat(result).isEmpty();
+        }
+
+        @Test
+        @DisplayName("Versendete Email aus dem Postausgang entfernen")
+        void sent() {
+            // Given
+            final val mail = createMail(0);
+
+            // When
+            outbox.sent(mail);
+
+            // Then
+            verify(mongoOperations).remove(mail);
+        }
+
+        @Test
+        @DisplayName("Erster Fehlversuch: Wiederholung nach dem Backoff")
+        void failedRetry() {
+            // Given
+            final val mail = createMail(0);
+            final val vorher = LocalDateTime.now();
+
+            // When
+            final val aufgegeben = outbox.failed(mail, new Exception("x"));
+
+            // Then
+            final val update = captureUpdate();
+            assertSoftly(softly -> {
+                softly.assertThat(aufgegeben).isFalse();
+                softly.assertThat(set(update).get("versuche")).isEqualTo(1);
+                softly.assertThat(naechsterVersuch(update))
+                      .isAfterOrEqualTo(vorher.plusSeconds(BACKOFF))
+                      .isBeforeOrEqualTo(LocalDateTime.now()
+                                                      .plusSeconds(BACKOFF));
+            });
+        }
+
+        @Test
+        @DisplayName("Weitere Fehlversuche: exponentieller Backoff")
+        void failedExponentialBackoff() {
+            // Given: 2 bisherige Versuche -> 3. Versuch -> 30s * 2^2
+            final val mail = createMail(2);
+            final val vorher = LocalDateTime.now();
+
+            // When
+            outbox.failed(mail, new Exception("x"));
+
+            // Then
+            final val update = captureUpdate();
+            assertThat(naechsterVersuch(update))
+                .isAfterOrEqualTo(vorher.plusSeconds(BACKOFF * 4))
+                .isBeforeOrEqualTo(LocalDateTime.now()
+                                                .plusSeconds(BACKOFF * 4));
+        }
+
+        @Test
+        @DisplayName("Backoff wird durch maxBackoff begrenzt")
+        void failedMaxBackoff() {
+            // Given: 30s * 2^8 waeren mehr als maxBackoff
+            final val mail = createMail(MAX_ATTEMPTS - 2);
+            final val vorher = LocalDateTime.now();
+
+            // When
+            final val aufgegeben = outbox.failed(mail, new Exception("x"));
+
+            // Then
+            final val update = captureUpdate();
+            assertThat(aufgegeben).isFalse();
+            assertThat(naechsterVersuch(update))
+                .isAfterOrEqualTo(vorher.plusSeconds(MAX_BACKOFF))
+                .isBeforeOrEqualTo(LocalDateTime.now()
+                                                .plusSeconds(MAX_BACKOFF));
+        }
+
+        @Test
+        @DisplayName("Letzter Fehlversuch: Email wird aufgegeben")
+        void failedDeadLetter() {
+            // Given
+            final val mail = createMail(MAX_ATTEMPTS - 1);
+
+            // When
+            final val aufgegeben =
+                outbox.failed(mail, new Exception("Mailserver"));
+
+            // Then
+            final val update = captureUpdate();
+            assertSoftly(softly -> {
+                softly.assertThat(aufgegeben).isTrue();
+                softly.assertThat(set(update).containsField(NAECHSTER_VERSUCH))
+                      .isTrue();
+                softly.assertThat(naechsterVersuch(update)).isNull();
+                softly.assertThat(set(update).get("versuche"))
+                      .isEqualTo(MAX_ATTEMPTS);
+                softly.assertThat((String) set(update).get("fehler"))
+                      .contains("Mailserver");
+            });
+        }
+
+        private Update captureUpdate() {
+            final val update = ArgumentCaptor.forClass(Update.class);
+            verify(mongoOperations).updateFirst(any(Query.class),
+                                                update.capture(),
+                                                eq(OutboxMail.class));
+            return update.getValue();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // V E R S E N D E N
+    // -------------------------------------------------------------------------
+    @Nested
+    class DispatcherTest {
+        @BeforeEach
+        void beforeEach() {
+            given(mailSender.createMimeMessage())
+                .willAnswer(invocation -> new MimeMessage((Session) null));
+        }
+
+        @Test
+        @DisplayName("Alle Emails ueber eine Verbindung versenden")
+        void dispatch() {
+            // Given
+            final val mail1 = createMail(0);
+            final val mail2 = createMail(0);
+            given(outboxMock.claim()).willReturn(of(mail1), of(mail2), empty());
+
+            // When
+            dispatcher.dispatch();
+
+            // Then
+            verify(outboxMock).sent(mail1);
+            verify(outboxMock).sent(mail2);
+            verify(outboxMock, never()).failed(any(OutboxMail.class),
+                                               any(Exception.class));
+        }
+
+        @Test
+        @DisplayName("Nur die fehlgeschlagene Email erneut einplanen")
+        void dispatchPartialFailure() {
+            // Given
+            final val mail1 = createMail(0);
+            mail1.setSubject("Fehler");
+            final val mail2 = createMail(0);
+            given(outboxMock.claim()).willReturn(of(mail1), of(mail2), empty());
+            final val fehler = new MessagingException("Empfaenger");
+            willAnswer(invocation -> {
+                for (Object msg : invocation.getArguments()) {
+                    if ("Fehler".equals(((MimeMessage) msg).getSubject())) {
+                        throw new MailSendException(singletonMap(msg, fehler));
+                    }
+                }
+                return null;
+            }).given(mailSender).send(ArgumentMatchers.<MimeMessage[]>any());
+
+            // When
+            dispatcher.dispatch();
+
+            // Then
+            verify(outboxMock).failed(mail1, fehler);
+            verify(outboxMock).sent(mail2);
+            verify(outboxMock, never()).sent(mail1);
+        }
+
+        @Test
+        @DisplayName("Verbindungsfehler: alle Emails erneut einplanen")
+        void dispatchConnectionFailure() {
+            // Given
+            final val mail1 = createMail(0);
+            final val mail2 = createMail(MAX_ATTEMPTS - 1);
+            given(outboxMock.claim()).willReturn(of(mail1), of(mail2), empty());
+            given(outboxMock.failed(eq(mail2), any(Exception.class)))
+                .willReturn(true);
+            willThrow(new MailSendException("Keine Verbindung"))
+                .given(mailSender).send(ArgumentMatchers.<MimeMessage[]>any());
+
+            // When
+            dispatcher.dispatch();
+
+            // Then
+            verify(outboxMock).failed(eq(mail1), any(MailSendException.class));
+            verify(outboxMock).failed(eq(mail2), any(MailSendException.class));
+            verify(outboxMock, never()).sent(any(OutboxMail.class));
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Hilfsmethoden
+    // -------------------------------------------------------------------------
+    private static OutboxMail createMail(int versuche) {
+        final val mail = new OutboxMail("absender@test.de", "theo@test.de",
+                                        "Neuer Kunde", "<p>Test</p>");
+        mail.setId(new ObjectId());
+        mail.setVersuche(versuche);
+        return mail;
+    }
+
+    private static DBObject set(Update update) {
+        return (DBObject) update.getUpdateObject().get("$set");
+    }
+
+    private static LocalDateTime naechsterVersuch(Update update) {
+        return (LocalDateTime) set(update).get(NAECHSTER_VERSUCH);
+    }
+}
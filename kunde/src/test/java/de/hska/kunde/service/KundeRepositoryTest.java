@@ -58,6 +58,7 @@ import static java.math.BigDecimal.ONE;
 import static java.util.Locale.GERMAN;
 import static java.util.Locale.GERMANY;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.SoftAssertions.assertSoftly;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
@@ -152,6 +153,23 @@ class KundeRepositoryTest {
                 // Then
                 assertThat(kunde).isNotPresent();
             }
+
+            @Test
+            @DisplayName("Nur die Version mit vorhandener ID suchen")
+            void findVersionById() {
+                // Given
+                final val id = ID_VORHANDEN;
+
+                // When
+                final val version = repo.findVersionById(id);
+
+                // Then
+                assertSoftly(softly -> {
+                    softly.assertThat(version).isPresent();
+                    //noinspection OptionalGetWithoutIsPresent
+                    softly.assertThat(version.get().getVersion()).isNotNull();
+                });
+            }
         }
 
         @Test
@@ -167,6 +185,28 @@ class KundeRepositoryTest {
             }
         }
 
+        @Test
+        @DisplayName("Alle Kunden nur mit Nachname und Email suchen")
+        void streamFelder() {
+            // Given
+            final val felder = KundeFeld.parse("nachname,email");
+
+            // When
+            try (val kunden = repo.stream(null, felder)) {
+
+                // Then
+                final val list = kunden.collect(toList());
+                assertThat(list).isNotEmpty();
+                list.forEach(kunde -> assertSoftly(softly -> {
+                    softly.assertThat(kunde.getId()).isNotNull();
+                    softly.assertThat(kunde.getNachname()).isNotNull();
+                    softly.assertThat(kunde.getEmail()).isNotNull();
+                    softly.assertThat(kunde.getAdresse()).isNull();
+                    softly.assertThat(kunde.getUsername()).isNull();
+                }));
+            }
+        }
+
         @Test
         @DisplayName("Suche mit vorhandener Email")
         void findByEmail() {
@@ -286,6 +326,24 @@ class KundeRepositoryTest {
             }
         }
 
+        @Test
+        @DisplayName("Nachnamen und Emails aller Kunden")
+        void readAllBy() {
+            // When
+            try (val kunden = repo.readAllBy()) {
+                final val liste = kunden.collect(toList());
+
+                // Then
+                assertSoftly(softly -> {
+                    softly.assertThat(liste).isNotEmpty();
+                    liste.forEach(k -> {
+                        softly.assertThat(k.getNachname()).isNotNull();
+                        softly.assertThat(k.getEmail()).isNotNull();
+                    });
+                });
+            }
+        }
+
         @DisplayName("Asynchrone Suche mit vorhandem Nachnamen")
         @TestFactory
         Stream<DynamicTest> readByNachnameAsync()
@@ -16,7 +16,7 @@
  */
 package de.hska.kunde.service;
 
-import com.mongodb.gridfs.GridFSFile;
+import com.mongodb.gridfs.GridFSDBFile;
 import com.querydsl.core.types.Predicate;
 import de.hska.kunde.config.security.AuthService;
 import de.hska.kunde.entity.Account;
@@ -24,8 +24,7 @@ import de.hska.kunde.entity.Adresse;
 import de.hska.kunde.entity.Auditable;
 import de.hska.kunde.entity.Kunde;
 import de.hska.kunde.entity.Umsatz;
-import de.hska.kunde.service.KundeRepository.NachnameProjection;
-import de.hska.kunde.service.KundeRepository.EmailProjection;
+import de.hska.kunde.util.UniqueValueFilter;
 
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -33,6 +32,7 @@ import java.net.URL;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.Currency;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 import javax.mail.MessagingException;
@@ -50,10 +50,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.gridfs.GridFsResource;
-import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.security.core.Authentication;
 
 import static de.hska.kunde.entity.FamilienstandType.LEDIG;
@@ -61,6 +60,7 @@ import static de.hska.kunde.entity.GeschlechtType.WEIBLICH;
 import static de.hska.kunde.entity.InteresseType.LESEN;
 import static de.hska.kunde.entity.InteresseType.REISEN;
 import static java.math.BigDecimal.ONE;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Locale.GERMAN;
 import static java.util.Locale.GERMANY;
@@ -72,9 +72,10 @@ import static org.assertj.core.api.SoftAssertions.assertSoftly;
 import static org.bson.types.ObjectId.get;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -96,6 +97,7 @@ class KundeServiceTest {
     private static final String USERNAME = "test";
     private static final String PREFIX_NACHNAME = "a";
     private static final String PREFIX_EMAIL = "e";
+    private static final int PREFIX_LIMIT = 10;
 
     @InjectMocks
     private KundeService service;
@@ -103,6 +105,21 @@ class KundeServiceTest {
     @Mock
     private KundeRepository repo;
 
+    @Mock
+    private KundePrefixIndex prefixIndex;
+
+    @Mock
+    private KundeTrigramIndex trigramIndex;
+
+    @Mock
+    private KundeIndexTopic indexTopic;
+
+    @Mock
+    private KundeEmailCache emailCache;
+
+    @Mock
+    private UniqueValueFilter emailFilter;
+
     @Mock
     private ApplicationEventPublisher publisher;
     
@@ -117,7 +134,13 @@ class KundeServiceTest {
     private Logger logger;
 
     @Mock
-    private GridFsTemplate gridFsTemplate;
+    private MediaBlobStore mediaStore;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache cache;
 
     @BeforeEach
     void beforeEach() {
@@ -173,6 +196,41 @@ class KundeServiceTest {
                 });
             }
 
+            @Test
+            @DisplayName("Versionsnummer eines Kunden im Cache")
+            void findVersionByIdCache() {
+                // Given
+                final val id = get();
+                final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
+                given(cacheManager.getCache(KundeService.KUNDE_ID))
+                    .willReturn(cache);
+                given(cache.get(id, Kunde.class)).willReturn(kundeMock);
+
+                // When
+                final val version = service.findVersionById(id);
+
+                // Then
+                assertThat(version).contains(0);
+                verify(repo, never()).findVersionById(id);
+            }
+
+            @Test
+            @DisplayName("Versionsnummer eines Kunden ohne Cache-Eintrag")
+            void findVersionByIdDb() {
+                // Given
+                final val id = get();
+                given(cacheManager.getCache(KundeService.KUNDE_ID))
+                    .willReturn(cache);
+                given(repo.findVersionById(id))
+                    .willReturn(of(() -> 1));
+
+                // When
+                final val version = service.findVersionById(id);
+
+                // Then
+                assertThat(version).contains(1);
+            }
+
             @Test
             @DisplayName("Suche mit nicht-vorhandener ID")
             void findByIdNotFound() {
@@ -228,8 +286,7 @@ class KundeServiceTest {
             final val nachname = NACHNAME.toLowerCase(GERMAN);
             final val kundeMock = createKundeMock(get(), EMAIL, nachname, PLZ);
             final val kundenMock = Stream.of(kundeMock);
-            given(repo.findByNachnameContainingIgnoreCase(nachname))
-                .willReturn(kundenMock);
+            given(repo.stream(any(Predicate.class))).willReturn(kundenMock);
 
             // When
             final val kunden =
@@ -242,6 +299,23 @@ class KundeServiceTest {
                                              .isEqualToIgnoringCase(nachname)));
         }
 
+        @Test
+        @DisplayName("Suche mit Teilstring des Nachnamens im Trigramm-Index")
+        void findByNachnameTrigramIndex() {
+            // Given
+            final val nachname = NACHNAME.toLowerCase(GERMAN);
+            final val kundeMock = createKundeMock(get(), EMAIL, NACHNAME, PLZ);
+            given(trigramIndex.find(any()))
+                .willReturn(of(Collections.singletonList(kundeMock)));
+
+            // When
+            final val kunden = service.find(null, nachname, null);
+
+            // Then
+            assertThat(kunden).containsExactly(kundeMock);
+            verify(repo, never()).stream(any(Predicate.class));
+        }
+
         @TestFactory
         @DisplayName("Suche mit vorhandener Emailadresse")
         Stream<DynamicTest> findByEmail() {
@@ -282,7 +356,7 @@ class KundeServiceTest {
             final val plz = PLZ;
             final val kundeMock = createKundeMock(get(), EMAIL, NACHNAME, plz);
             final val kundenMock = Stream.of(kundeMock);
-            given(repo.findByAdresse_Plz(plz)).willReturn(kundenMock);
+            given(repo.stream(any(Predicate.class))).willReturn(kundenMock);
 
             // When
             final val kunden = service.find(null, null, plz);
@@ -301,9 +375,8 @@ class KundeServiceTest {
             final val nachname = NACHNAME.toLowerCase(GERMAN);
             final val plz = PLZ;
             final val kundeMock = createKundeMock(get(), EMAIL, nachname, plz);
-            final val kundenMock = Collections.singletonList(kundeMock);
-            final Predicate pred = any();
-            given(repo.findAll(pred)).willReturn(kundenMock);
+            final val kundenMock = Stream.of(kundeMock);
+            given(repo.stream(any(Predicate.class))).willReturn(kundenMock);
 
             // When
             final val kunden =
@@ -319,6 +392,47 @@ class KundeServiceTest {
                     })));
         }
 
+        @Test
+        @DisplayName("Erste Seite bei der Keyset-Pagination")
+        void findPage() {
+            // Given
+            final val limit = 2;
+            final val kundenMock = asList(
+                createKundeMock(get(), EMAIL, NACHNAME, PLZ),
+                createKundeMock(get(), EMAIL, NACHNAME, PLZ),
+                createKundeMock(get(), EMAIL, NACHNAME, PLZ));
+            given(repo.findKeyset(any(), eq(limit + 1), any()))
+                .willReturn(kundenMock);
+
+            // When
+            final val page = service.find(null, KeysetSort.ID, null, limit);
+
+            // Then
+            assertSoftly(softly -> {
+                softly.assertThat(page.getContent()).hasSize(limit);
+                softly.assertThat(page.getPrev()).isNotPresent();
+                softly.assertThat(page.getNext()).isPresent();
+                //noinspection OptionalGetWithoutIsPresent
+                softly.assertThat(page.getNext().get().getId())
+                      .isEqualTo(kundenMock.get(limit - 1).getId());
+            });
+        }
+
+        @Test
+        @DisplayName("Cursor mit falschem Sortierkriterium")
+        void findPageInvalidCursor() {
+            // Given
+            final val cursor =
+                new KeysetCursor(KeysetSort.ID, get(), null, false);
+
+            // When
+            final val thrown = catchThrowable(
+                () -> service.find(null, KeysetSort.NACHNAME, cursor, 2));
+
+            // Then
+            assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+        }
+
         @Test
         @DisplayName("Suche multimediale Daten")
         void findMedia() {
@@ -326,16 +440,14 @@ class KundeServiceTest {
             final val id = get();
             final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
             given(repo.findById(id)).willReturn(of(kundeMock));
-            // Alternative zu null: Mocking fuer einen InputStream ...
-            final GridFsResource gridFsResourceMock = null;
-            given(gridFsTemplate.getResource(anyString()))
-                .willReturn(gridFsResourceMock);
+            final val fileMock = mock(GridFSDBFile.class);
+            given(mediaStore.find(id)).willReturn(of(fileMock));
 
             // When
-            service.findMedia(id);
+            final val media = service.findMedia(id);
 
             // Then
-            verify(gridFsTemplate).getResource(anyString());
+            assertThat(media).contains(fileMock);
         }
 
         @Test
@@ -349,7 +461,7 @@ class KundeServiceTest {
             service.findMedia(id);
 
             // Then
-            verify(gridFsTemplate, never()).getResource(anyString());
+            verify(mediaStore, never()).find(id);
         }
 
         @TestFactory
@@ -357,16 +469,17 @@ class KundeServiceTest {
         Stream<DynamicTest> findNachnamenByPrefix() {
             // Given
             final val prefix = PREFIX_NACHNAME.toLowerCase(GERMAN);
-            final val nachnamenMock = createNachnameProjections(prefix);
-            given(repo.findByNachnameStartingWithIgnoreCase(prefix))
+            final val nachnamenMock = createNachnamen(prefix);
+            given(prefixIndex.findNachnamen(prefix, PREFIX_LIMIT))
                 .willReturn(nachnamenMock);
 
             // When
             final val nachnamen =
-                service.findNachnamenByPrefix(prefix);
+                service.findNachnamenByPrefix(prefix, PREFIX_LIMIT);
 
             // Then
-            return nachnamen.map(NachnameProjection::getNachname)
+            verify(repo, never()).findByNachnameStartingWithIgnoreCase(prefix);
+            return nachnamen.stream()
                 .map(n -> dynamicTest("Nachname: " + n,
                     () -> assertThat(n).containsIgnoringCase(prefix)));
         }
@@ -376,16 +489,17 @@ class KundeServiceTest {
         Stream<DynamicTest> findEmailsByPrefix() {
             // Given
             final val prefix = PREFIX_EMAIL.toLowerCase(GERMAN);
-            final val emailsMock = createEmailProjections(prefix);
-            given(repo.findByEmailStartingWithIgnoreCase(prefix))
+            final val emailsMock = createEmails(prefix);
+            given(prefixIndex.findEmails(prefix, PREFIX_LIMIT))
                 .willReturn(emailsMock);
 
             // When
             final val emails =
-                service.findEmailsByPrefix(prefix);
+                service.findEmailsByPrefix(prefix, PREFIX_LIMIT);
 
             // Then
-            return emails.map(EmailProjection::getEmail)
+            verify(repo, never()).findByEmailStartingWithIgnoreCase(prefix);
+            return emails.stream()
                 .map(e -> dynamicTest("Email: " + e,
                     () -> assertThat(e).containsIgnoringCase(prefix)));
         }
@@ -406,7 +520,8 @@ class KundeServiceTest {
                                                       PLZ);
                 final val kundeMockResult = createKundeMock(get(), EMAIL,
                                                             NACHNAME, PLZ);
-                given(repo.findByEmail(EMAIL)).willReturn(empty());
+                given(emailFilter.mightContain(EMAIL)).willReturn(true);
+                given(emailCache.findId(EMAIL)).willReturn(empty());
                 // Mocking einer void-Methode
                 doNothing().when(authService).save(any(Account.class));
                 given(repo.save(kundeMock)).willReturn(kundeMockResult);
@@ -426,6 +541,31 @@ class KundeServiceTest {
                 // Auf dem Mock-Objekt publisher wurde die Methode
                 // publishEvent() 1x aufgerufen
                 verify(publisher).publishEvent(any(NeuerKundeEvent.class));
+                verify(prefixIndex).add(kundeMockResult);
+                verify(trigramIndex).add(kundeMockResult);
+                verify(emailCache).put(kundeMockResult);
+                verify(emailFilter).falsePositive();
+                verify(emailFilter).add(EMAIL);
+            }
+
+            @Test
+            @DisplayName("Neuer Kunde mit neuer Email laut Bloom-Filter")
+            void saveEmailFilter() {
+                // Given
+                final val kundeMock = createKundeMock(null, EMAIL, NACHNAME,
+                                                      PLZ);
+                final val kundeMockResult = createKundeMock(get(), EMAIL,
+                                                            NACHNAME, PLZ);
+                given(emailFilter.mightContain(EMAIL)).willReturn(false);
+                given(repo.save(kundeMock)).willReturn(kundeMockResult);
+
+                // When
+                final val result = service.save(kundeMock);
+
+                // Then
+                assertThat(result.getId()).isNotNull();
+                verify(emailCache, never()).findId(EMAIL);
+                verify(repo, never()).findByEmail(EMAIL);
             }
 
             @Test
@@ -452,7 +592,8 @@ class KundeServiceTest {
                 // Given
                 final val kundeMock = createKundeMock(null, EMAIL, NACHNAME,
                                                       PLZ);
-                given(repo.findByEmail(EMAIL)).willReturn(of(kundeMock));
+                given(emailFilter.mightContain(EMAIL)).willReturn(true);
+                given(emailCache.findId(EMAIL)).willReturn(of(get()));
 
                 // When
                 final val thrown =
@@ -474,7 +615,7 @@ class KundeServiceTest {
                 final val id = get();
                 final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
                 given(repo.findById(id)).willReturn(of(kundeMock));
-                given(repo.findByEmail(EMAIL)).willReturn(of(kundeMock));
+                given(emailCache.findId(EMAIL)).willReturn(of(id));
                 given(repo.save(kundeMock)).willReturn(kundeMock);
 
                 // When
@@ -490,6 +631,28 @@ class KundeServiceTest {
                 });
             }
 
+            @Test
+            @DisplayName("Vorhandenen Kunden mit einem ETag aktualisieren")
+            void updateETag() {
+                // Given
+                final val id = get();
+                final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
+                given(repo.findById(id)).willReturn(of(kundeMock));
+                given(emailCache.findId(EMAIL)).willReturn(of(id));
+                given(repo.save(kundeMock)).willReturn(kundeMock);
+                final val version = kundeMock.getVersion();
+
+                // When
+                final val strong = service.update(kundeMock,
+                                                  "\"" + version + '"');
+                final val weak = service.update(kundeMock,
+                                                "W/\"" + version + '"');
+
+                // Then
+                assertThat(strong).isPresent();
+                assertThat(weak).isPresent();
+            }
+
             @Test
             @DisplayName("Nicht-existierenden Kunden aktualisieren")
             void updateEmpty() {
@@ -557,22 +720,18 @@ class KundeServiceTest {
                 final val id = get();
                 final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
                 given(repo.findById(id)).willReturn(of(kundeMock));
-                // gridFsTemplate.delete(query);
-                doNothing().when(gridFsTemplate).delete(any(Query.class));
-                final InputStream inputStreamMock = any(InputStream.class);
-                // final val contentType = "application/json"
-                final GridFSFile gridFSFile = new GridFSFile() {
-                };
-                given(gridFsTemplate.store(inputStreamMock, anyString(),
-                                           anyString()))
-                    .willReturn(gridFSFile);
+                final val inputStreamMock = mock(InputStream.class);
+                final val contentType = "image/png";
+                final val fileId = get();
+                given(mediaStore.store(id, inputStreamMock, contentType))
+                    .willReturn(fileId);
 
                 // When
-                // service.save(inputStreamMock, id, contentType)
+                final val mediaId =
+                    service.save(inputStreamMock, id, contentType);
 
                 // Then
-                // verify(gridFsTemplate).store(inputStreamMock, anyString(),
-                //                              contentType)
+                assertThat(mediaId).contains(fileId);
             }
         }
 
@@ -583,7 +742,8 @@ class KundeServiceTest {
             void delete() {
                 // Given
                 final val id = get();
-                given(repo.exists(id)).willReturn(true);
+                final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
+                given(repo.findById(id)).willReturn(of(kundeMock));
                 given(authentication.getAuthorities()).willReturn(emptySet());
                 given(authentication.getPrincipal()).willReturn(null);
 
@@ -591,8 +751,11 @@ class KundeServiceTest {
                 service.delete(id, authentication);
 
                 // Then
-                verify(repo).exists(id);
+                verify(repo).findById(id);
                 verify(repo).delete(id);
+                verify(prefixIndex).remove(kundeMock);
+                verify(trigramIndex).remove(kundeMock);
+                verify(emailCache).remove(kundeMock);
             }
 
             @Test
@@ -600,7 +763,7 @@ class KundeServiceTest {
             void deleteNotExisting() {
                 // Given
                 final val id = get();
-                given(repo.exists(id)).willReturn(false);
+                given(repo.findById(id)).willReturn(empty());
                 given(authentication.getAuthorities()).willReturn(emptySet());
                 given(authentication.getPrincipal()).willReturn(null);
 
@@ -608,7 +771,7 @@ class KundeServiceTest {
                 service.delete(id, authentication);
 
                 // Then
-                verify(repo).exists(id);
+                verify(repo).findById(id);
                 verify(repo, never()).delete(id);
             }
 
@@ -617,13 +780,14 @@ class KundeServiceTest {
             void deleteNoAuthentication() {
                 // Given
                 final val id = get();
-                given(repo.exists(id)).willReturn(true);
+                final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
+                given(repo.findById(id)).willReturn(of(kundeMock));
 
                 // When
                 service.delete(id, null);
 
                 // Then
-                verify(repo).exists(id);
+                verify(repo).findById(id);
                 verify(repo).delete(id);
             }
 
@@ -634,14 +798,19 @@ class KundeServiceTest {
                 final val email = EMAIL;
                 final val id = get();
                 final val kundeMock = createKundeMock(id, EMAIL, NACHNAME, PLZ);
-                given(repo.findByEmail(email)).willReturn(of(kundeMock));
-                given(repo.exists(id)).willReturn(true);
+                given(emailCache.findId(email)).willReturn(of(id));
+                given(repo.findById(id)).willReturn(of(kundeMock));
 
                 // When
                 service.delete(email, null);
 
                 // Then
                 verify(repo).delete(any(Kunde.class));
+                verify(prefixIndex).remove(kundeMock);
+                verify(trigramIndex).remove(kundeMock);
+                verify(emailCache).remove(kundeMock);
+                // Der Bloom-Filter kennt keine Kunden anderer Instanzen
+                verify(emailFilter, never()).mightContain(email);
             }
         }
     }
@@ -714,12 +883,11 @@ class KundeServiceTest {
         setField(idField, obj, id);
     }
 
-    private Stream<NachnameProjection>
-            createNachnameProjections(String prefix) {
-        return Stream.of(() -> "A" + prefix, () -> "B" + prefix);
+    private List<String> createNachnamen(String prefix) {
+        return asList(prefix + "a", prefix + "b");
     }
 
-    private Stream<EmailProjection> createEmailProjections(String prefix) {
-        return Stream.of(() -> prefix + "@hska.de", () -> prefix + "@test.de");
+    private List<String> createEmails(String prefix) {
+        return asList(prefix + "@hska.de", prefix + "@test.de");
     }
 }
@@ -0,0 +1,370 @@
+/*
+ *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hska.kunde.service;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.val;
+import org.apache.logging.log4j.Logger;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@Tag("service")
+@DisplayName("Fortsetzbares Hochladen mit Mock fuer DB-Zugriff")
+class MediaUploadServiceTest {
+    private static final int CHUNK_SIZE = 4;
+    private static final long LEASE = 300;
+    private static final long EXPIRY = 86_400;
+    private static final String CHUNKS = "fs.chunks";
+    private static final String SPERRE = "sperre";
+
+    private MediaUploadService service;
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    @Mock
+    private KundeRepository repo;
+
+    @Mock
+    private MediaBlobStore mediaStore;
+
+    @Mock
+    private Logger logger;
+
+    @Mock
+    private DBCollection chunks;
+
+    private final ObjectId kundeId = new ObjectId();
+    private final ObjectId uploadId = new ObjectId();
+
+    @BeforeEach
+    void beforeEach() {
+        initMocks(this);
+        service = new MediaUploadService(mongoOperations, repo, mediaStore,
+                                         logger, CHUNK_SIZE, LEASE, EXPIRY);
+        given(mongoOperations.getCollection(CHUNKS)).willReturn(chunks);
+    }
+
+    @Test
+    @DisplayName("Bytes ab Offset 0 in Chunks schreiben")
+    void append() throws IOException {
+        // Given
+        givenLock(createUpload(0, null));
+
+        // When
+        final val result = service.append(kundeId, uploadId, 0,
+                                          bytes(0, 10));
+
+        // Then: 2 volle Chunks und ein angefangener Chunk
+        assertThat(result.map(MediaUpload::getOffset)).contains(10L);
+        final val geschrieben = captureChunks();
+        assertSoftly(softly -> {
+            softly.assertThat(geschrieben).hasSize(3);
+            softly.assertThat(geschrieben.get(0).n).isEqualTo(0);
+            softly.assertThat(geschrieben.get(0).data)
+                  .containsExactly(daten(0, 4));
+            softly.assertThat(geschrieben.get(1).n).isEqualTo(1);
+            softly.assertThat(geschrieben.get(2).n).isEqualTo(2);
+            softly.assertThat(geschrieben.get(2).data)
+                  .containsExactly(daten(8, 2));
+        });
+
+        // Offset nach jedem vollen Chunk, am Ende mit Freigabe der Sperre
+        final val updates = captureUpdates();
+        assertThat(updates.stream()
+                          .map(u -> set(u).get("offset"))
+                          .collect(toList()))
+            .containsExactly(4L, 8L, 10L);
+        assertThat(unset(updates.get(1))).isNull();
+        assertThat(unset(updates.get(2)).containsField(SPERRE)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Fortsetzen innerhalb eines angefangenen Chunks")
+    void appendPartialChunk() throws IOException {
+        // Given: Offset 6, d.h. 2 Bytes in Chunk 1
+        givenLock(createUpload(6, null));
+        given(chunks.findOne(any(DBObject.class)))
+            .willReturn(new BasicDBObject("data", daten(4, 2)));
+
+        // When
+        final val result = service.append(kundeId, uploadId, 6,
+                                          bytes(6, 4));
+
+        // Then: Chunk 1 wird mit den bisherigen Bytes vervollstaendigt
+        assertThat(result.map(MediaUpload::getOffset)).contains(10L);
+        final val query = ArgumentCaptor.forClass(DBObject.class);
+        verify(chunks).findOne(query.capture());
+        assertThat(query.getValue().get("n")).isEqualTo(1);
+        final val geschrieben = captureChunks();
+        assertThat(geschrieben).hasSize(2);
+        assertThat(geschrieben.get(0).n).isEqualTo(1);
+        assertThat(geschrieben.get(0).data).containsExactly(daten(4, 4));
+        assertThat(geschrieben.get(1).n).isEqualTo(2);
+        assertThat(geschrieben.get(1).data).containsExactly(daten(8, 2));
+    }
+
+    @Test
+    @DisplayName("Angefangener Chunk fehlt: Offset zurueck auf Chunk-Grenze")
+    void appendPartialChunkFehlt() {
+        // Given
+        givenLock(createUpload(6, null));
+
+        // When
+        final val thrown = catchThrowable(
+            () -> service.append(kundeId, uploadId, 6, bytes(6, 4)));
+
+        // Then: Offset am Ende von Chunk 0, Sperre freigegeben
+        assertThat(thrown).isInstanceOf(UploadOffsetException.class);
+        assertThat(((UploadOffsetException) thrown).getOffset()).isEqualTo(4);
+        final val updates = captureUpdates();
+        assertThat(updates).hasSize(1);
+        assertThat(set(updates.get(0)).get("offset")).isEqualTo(4L);
+        assertThat(unset(updates.get(0)).containsField(SPERRE)).isTrue();
+        verify(chunks, never()).update(any(DBObject.class),
+                                       any(DBObject.class), anyBoolean(),
+                                       anyBoolean());
+    }
+
+    @Test
+    @DisplayName("Abgebrochener Request: empfangene Bytes bleiben erhalten")
+    void appendAbbruch() {
+        // Given: nach 3 Bytes bricht die Verbindung ab
+        givenLock(createUpload(0, null));
+        final InputStream in = new SequenceInputStream(bytes(0, 3),
+                                                       new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Verbindung abgebrochen");
+            }
+        });
+
+        // When
+        final val thrown = catchThrowable(
+            () -> service.append(kundeId, uploadId, 0, in));
+
+        // Then
+        assertThat(thrown).isInstanceOf(IOException.class);
+        final val geschrieben = captureChunks();
+        assertThat(geschrieben).hasSize(1);
+        assertThat(geschrieben.get(0).data).containsExactly(daten(0, 3));
+        final val updates = captureUpdates();
+        final val letztes = updates.get(updates.size() - 1);
+        assertThat(set(letztes).get("offset")).isEqualTo(3L);
+        assertThat(unset(letztes).containsField(SPERRE)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Mehr Bytes als angekuendigt werden verworfen")
+    void appendZuLang() {
+        // Given
+        givenLock(createUpload(0, 5L));
+
+        // When
+        final val thrown = catchThrowable(
+            () -> service.append(kundeId, uploadId, 0, bytes(0, 8)));
+
+        // Then
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+        final val updates = captureUpdates();
+        assertThat(set(updates.get(updates.size() - 1)).get("offset"))
+            .isEqualTo(5L);
+        final val geschrieben = captureChunks();
+        assertThat(geschrieben.get(geschrieben.size() - 1).data)
+            .containsExactly(daten(4, 1));
+    }
+
+    @Test
+    @DisplayName("Sperre mit erwartetem Offset und Ablaufzeit")
+    void lock() throws IOException {
+        // Given
+        givenLock(createUpload(0, null));
+        final val vorher = LocalDateTime.now();
+
+        // When
+        service.append(kundeId, uploadId, 0, bytes(0, 0));
+
+        // Then
+        final val query = ArgumentCaptor.forClass(Query.class);
+        final val update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations).findAndModify(
+            query.capture(), update.capture(),
+            any(FindAndModifyOptions.class), eq(MediaUpload.class));
+        assertThat(query.getValue().getQueryObject().get("offset"))
+            .isEqualTo(0L);
+        assertThat((LocalDateTime) set(update.getValue()).get(SPERRE))
+            .isAfterOrEqualTo(vorher.plusSeconds(LEASE))
+            .isBeforeOrEqualTo(LocalDateTime.now().plusSeconds(LEASE));
+    }
+
+    @Test
+    @DisplayName("Falscher Offset oder gesperrt: 409 mit aktuellem Offset")
+    void appendKonflikt() {
+        // Given: die Sperre scheitert, die Sitzung hat Offset 8
+        given(mongoOperations.findOne(any(Query.class),
+                                      eq(MediaUpload.class)))
+            .willReturn(createUpload(8, null));
+
+        // When
+        final val thrown = catchThrowable(
+            () -> service.append(kundeId, uploadId, 4, bytes(4, 4)));
+
+        // Then
+        assertThat(thrown).isInstanceOf(UploadOffsetException.class);
+        assertThat(((UploadOffsetException) thrown).getOffset()).isEqualTo(8);
+        verify(chunks, never()).update(any(DBObject.class),
+                                       any(DBObject.class), anyBoolean(),
+                                       anyBoolean());
+    }
+
+    @Test
+    @DisplayName("Keine Sitzung zur ID")
+    void appendNichtVorhanden() throws IOException {
+        // Given: weder Sperre noch Sitzung
+
+        // When
+        final val result = service.append(kundeId, uploadId, 0, bytes(0, 4));
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Abschliessen mit fehlenden Bytes: 409")
+    void finishUnvollstaendig() {
+        // Given
+        givenLock(createUpload(6, 10L));
+
+        // When
+        final val thrown = catchThrowable(
+            () -> service.finish(kundeId, uploadId));
+
+        // Then
+        assertThat(thrown).isInstanceOf(UploadOffsetException.class);
+        assertThat(((UploadOffsetException) thrown).getOffset()).isEqualTo(6);
+        final val updates = captureUpdates();
+        assertThat(unset(updates.get(0)).containsField(SPERRE)).isTrue();
+        verify(mediaStore, never()).link(any(), any(), any());
+    }
+
+    // -------------------------------------------------------------------------
+    // Hilfsmethoden fuer Mocking
+    // -------------------------------------------------------------------------
+    private MediaUpload createUpload(long offset, Long length) {
+        final val upload = new MediaUpload();
+        upload.setId(uploadId);
+        upload.setKundeId(kundeId);
+        upload.setChunkSize(CHUNK_SIZE);
+        upload.setOffset(offset);
+        upload.setLength(length);
+        return upload;
+    }
+
+    private void givenLock(MediaUpload upload) {
+        given(mongoOperations.findAndModify(any(Query.class),
+                                            any(Update.class),
+                                            any(FindAndModifyOptions.class),
+                                            eq(MediaUpload.class)))
+            .willReturn(upload);
+    }
+
+    // Die Bytes start, start + 1, ...
+    private static byte[] daten(int start, int anzahl) {
+        final val data = new byte[anzahl];
+        for (int i = 0; i < anzahl; i++) {
+            data[i] = (byte) (start + i);
+        }
+        return data;
+    }
+
+    // Die Bytes start, start + 1, ... als Request-Body
+    private static InputStream bytes(int start, int anzahl) {
+        return new ByteArrayInputStream(daten(start, anzahl));
+    }
+
+    private List<Chunk> captureChunks() {
+        final val query = ArgumentCaptor.forClass(DBObject.class);
+        final val update = ArgumentCaptor.forClass(DBObject.class);
+        verify(chunks, atLeastOnce()).update(query.capture(), update.capture(),
+                                             eq(true), eq(false));
+        final val queries = query.getAllValues();
+        final val updates = update.getAllValues();
+        final val result = new ArrayList<Chunk>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            final val set = (DBObject) updates.get(i).get("$set");
+            result.add(new Chunk((Integer) queries.get(i).get("n"),
+                                 (byte[]) set.get("data")));
+        }
+        return result;
+    }
+
+    private List<Update> captureUpdates() {
+        final val update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations, atLeastOnce()).updateFirst(
+            any(Query.class), update.capture(), eq(MediaUpload.class));
+        return update.getAllValues();
+    }
+
+    private static DBObject set(Update update) {
+        return (DBObject) update.getUpdateObject().get("$set");
+    }
+
+    private static DBObject unset(Update update) {
+        return (DBObject) update.getUpdateObject().get("$unset");
+    }
+
+    private static final class Chunk {
+        private final int n;
+        private final byte[] data;
+
+        Chunk(int n, byte[] data) {
+            this.n = n;
+            this.data = data;
+        }
+    }
+}